@@ -21,7 +21,15 @@ public class Constants {
         ENDPOINT_MARK_DIAMETER    = 10,
         STANDALONE_POINT_DIAMETER = 14,
         MANIFEST_MARGIN           = 0,
-        MANIFEST_WIDGET_NONLABEL_WIDTH = 100;
+        MANIFEST_WIDGET_NONLABEL_WIDTH = 100,
+        HOVER_DISTANCE            = 8; //how close, in pixels, the mouse has to be to a path to show the point under it
+
+    public static final double
+        LOD_PIXEL_TOLERANCE = 0.5, //simplified paths are drawn no further than this many pixels from the full path
+        LOD_MARKER_SPACING  = 2, //point markers closer than this many pixels already merge into a solid band, so simplified paths leave out the ones in between
+        ZOOM_STEP           = 1.25, //how much one notch of the mouse wheel zooms in or out
+        MIN_ZOOM            = 0.05, //furthest the view can zoom out, relative to fitting the whole scene on screen
+        MAX_ZOOM            = 100000; //furthest the view can zoom in, relative to fitting the whole scene on screen
 
     /**
      * Color Constants
@@ -75,9 +83,9 @@ public class Constants {
      * Socket constants
      */
     public static final int
-        SOCKET_TIMEOUT = 20,
         SOCKET_BUFFER_SIZE = 128000, //128 kB
-        MAX_UNCLAIMED_MESSAGES = 256;
+        TRANSFER_CHUNK_SIZE = 16000, //16 kB. Must match the robot host. Small enough that position updates never wait long behind a chunk.
+        TRANSFER_WINDOW = 4; //number of file chunks that may be in flight at once
 
     /**
      * Message Format constants. These must exactly match their counterparts in the robot host.
@@ -88,12 +96,38 @@ public class Constants {
         SPLIT_SEQUENCE = ":::",
         SUBJECT_SEQUENCE = "---";
 
+    /**
+     * Binary (v2) protocol constants. These must exactly match their counterparts in the robot host.
+     * Binary frames are formatted as such: [magic byte] [type index] [flags] [payload length (int)] [payload]
+     */
+    public static final int
+        TEXT_PROTOCOL_VERSION   = 1,
+        BINARY_PROTOCOL_VERSION = 2,
+        FRAME_HEADER_SIZE       = 7,
+        MAX_FRAME_PAYLOAD       = 64000000, //64 MB. Anything bigger than this is assumed to be a corrupted header.
+        MESSAGE_TYPE_COUNT      = 256, //number of type indices that fit in a frame header
+        FIRST_CUSTOM_MESSAGE_TYPE = 64; //indices below this are kept for built-in MessageTypes. Custom types use the rest
+
+    public static final byte
+        FRAME_MAGIC = (byte) 0xB7; //never valid as the first byte of a text frame, so both framings can share a stream.
+
+    /**
+     * Path loading constants
+     */
+    public static final int
+        MAPPED_PATH_THRESHOLD     = 16000000, //16 MB. Path files bigger than this are memory-mapped and read lazily.
+        MAPPED_PATH_BLOCK_SIZE    = 4096, //number of points that a mapped path reads at a time
+        MAPPED_PATH_CACHED_BLOCKS = 16, //number of read blocks that a mapped path keeps in memory
+        PARALLEL_PARSE_CHUNK_SIZE = 262144, //256 KB. Path files are parsed in chunks of at least this size, one chunk per thread at a time.
+        LOD_MIN_POINTS            = 1000; //paths with fewer points than this are always drawn in full
+
     /**
      * Other constants
      */
     public static final String
         ROBOT_POSITION_NAME          = "Robot Position",
         FILE_SUFFIX                  = ".hpt",
+        BINARY_FILE_SUFFIX           = ".hptb",
         ROBOTBROWSER_DIRECTORY_SUFFIX = ":dir",
         DEFAULT_ROBOT_FILE_NAME      = "points" + FILE_SUFFIX,
         DEFAULT_PC_FILE_NAME         = "path" + FILE_SUFFIX,
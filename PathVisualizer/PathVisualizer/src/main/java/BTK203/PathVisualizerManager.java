@@ -5,26 +5,28 @@ import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
+import BTK203.comm.FileTransfer;
 import BTK203.comm.SocketHelper;
 import BTK203.enumeration.FileOperation;
 import BTK203.enumeration.MessageType;
 import BTK203.ui.PathVisualizerGUI;
+import BTK203.util.BinaryPathFormat;
 import BTK203.util.IRenderable;
 import BTK203.util.Path;
+import BTK203.util.PathWriter;
 import BTK203.util.Point2D;
 
 /**
  * This class' only job is basically to sit around and pass method calls
- * around. And also run a timer. And also start the program.
+ * around. And also start the program.
  */
 public class PathVisualizerManager {
     private PathVisualizerGUI gui;
     private SocketHelper socketHelper;
     private HashMap<String, String> preferences;
     private HashMap<String, Integer> names;
+    private HashMap<String, Path> livePaths; //the last path that the robot sent under each name, for appending to
     private boolean updatedBefore;
     private long lastReconnectTime;
 
@@ -37,6 +39,7 @@ public class PathVisualizerManager {
         readPreferences();
 
         names = new HashMap<String, Integer>();
+        livePaths = new HashMap<String, Path>();
         updatedBefore = false;
         lastReconnectTime = 0;
 
@@ -55,21 +58,8 @@ public class PathVisualizerManager {
     public void start() {
         gui.start();
 
-        //do main loop
-        Timer timer = new Timer();
-        TimerTask updateTask = new TimerTask() {
-            public void run() {
-                try {
-                    update();
-                } catch(Exception ex) {
-                    if(Constants.SHOW_LOWKEY_ERRORS) {
-                        System.err.println("Process encountered an error!");
-                        ex.printStackTrace();
-                    }
-                }
-            }
-        };
-        timer.scheduleAtFixedRate(updateTask, 1, Constants.UPDATE_RATE);
+        //there is no main loop. The SocketHelper handles messages as they arrive and tells us when the connection changes.
+        updateSocketStatus();
     }
 
     /**
@@ -140,6 +130,13 @@ public class PathVisualizerManager {
         gui.promptSaveRenderable();
     }
 
+    /**
+     * Zooms and pans the Visualizer so that everything visible fits on screen.
+     */
+    public void fitView() {
+        gui.fitView();
+    }
+
     /**
      * Prompts the user to save a file to the robot.
      */
@@ -162,14 +159,18 @@ public class PathVisualizerManager {
             }
         }
 
-        final IRenderable finalThingToSave = thingToSave; //this is needed because java complains about using thingToSave in the Thread
-
         //get the file path from the user and return if its wack
         String filePath = gui.runRobotFileDialog(operation, startingDirectory);
         if(filePath == null || !filePath.contains("/") || filePath.equals("")) {
             return;
         }
 
+        //binary files can't be sent as text, which the robot may still be using
+        if(filePath.endsWith(Constants.BINARY_FILE_SUFFIX) && socketHelper.getProtocolVersion() < Constants.BINARY_PROTOCOL_VERSION) {
+            gui.showGeneralAlert("The robot does not support binary files. Use a \"" + Constants.FILE_SUFFIX + "\" file instead.");
+            return;
+        }
+
         //saves last choice to preferences for convenience
         String directoryName = filePath.substring(0, filePath.lastIndexOf("/"));
         if(operation == FileOperation.LOAD) {
@@ -178,39 +179,36 @@ public class PathVisualizerManager {
             setPreference("defaultRobotSaveDirectory", directoryName);
         }
 
-        //do the operation now (separate thread because this involves sendMessageAndGetResponse)
-        new Thread(
-            () -> {
-                if(operation == FileOperation.LOAD) {
-                    String fileName = "Robot: " + filePath.substring(filePath.lastIndexOf("/") + 1);
-                    String pathString = socketHelper.sendMessageAndGetResponse(MessageType.LOAD, filePath);
-                    
-                    if(pathString.isEmpty()) {
-                        return;
-                    }
-
-                    if(pathString.contains("ERR")) {
-                        gui.showGeneralAlert("An Error occurred while grabbing the file.");
-                        return;
-                    }
+        //start the operation. Nothing waits on it; the SocketHelper calls us back when the robot is done.
+        String shortName = filePath.substring(filePath.lastIndexOf("/") + 1);
+        FileTransfer.ProgressListener progressListener = (transferred, total) -> gui.updateTransferProgress(shortName, transferred, total);
+        if(operation == FileOperation.LOAD) {
+            String fileName = "Robot: " + shortName;
+            socketHelper.loadFile(filePath, progressListener).whenComplete((fileContents, ex) -> {
+                gui.updateTransferProgress(shortName, 0, 0);
+                if(ex != null) {
+                    gui.showGeneralAlert("An Error occurred while grabbing the file.");
+                    return;
+                }
 
-                    Path newPath = Path.fromString(pathString, fileName);
-                    if(newPath == null) {
-                        gui.showGeneralAlert("Invalid File!");
-                        return;
-                    }
+                Path newPath = Path.fromBytes(fileContents, 0, fileContents.length, fileName);
+                if(newPath == null) {
+                    gui.showGeneralAlert("Invalid File!");
+                    return;
+                }
 
-                    gui.putPath(newPath);
-                } else { //FileOperation.SAVE
-                    if(finalThingToSave != null) {
-                        String response = socketHelper.sendMessageAndGetResponse(MessageType.SAVE, finalThingToSave.toString(), filePath);
-                        if(!response.equals("OK")) {
-                            gui.showGeneralAlert("An Error occurred while saving \"" + finalThingToSave.getName() + "\" To the robot.");
-                        }
-                    }
+                gui.putPath(newPath);
+            });
+        } else { //FileOperation.SAVE
+            byte[] fileContents = (filePath.endsWith(Constants.BINARY_FILE_SUFFIX) ? BinaryPathFormat.toBytes(thingToSave) : new PathWriter().toBytes(thingToSave));
+            String saveName = thingToSave.getName();
+            socketHelper.saveFile(filePath, fileContents, progressListener).whenComplete((result, ex) -> {
+                gui.updateTransferProgress(shortName, 0, 0);
+                if(ex != null) {
+                    gui.showGeneralAlert("An Error occurred while saving \"" + saveName + "\" To the robot.");
                 }
-            }
-        ).start();
+            });
+        }
     }
 
     /**
@@ -218,6 +216,7 @@ public class PathVisualizerManager {
      * The value of contents must correlate with the value of subject.
      * Quick reference (value of subject : type of contents)
      * PATH : Path
+     * APPEND : Path (just the points to add)
      * POSITION: Point2D
      * @param subject The subject of the message that the robot sent
      * @param contents The contents of the message, ready for handling.
@@ -227,6 +226,7 @@ public class PathVisualizerManager {
         case PATH: {
                 if(contents instanceof Path) {
                     Path path = (Path) contents;
+                    livePaths.put(path.getName(), path);
                     path.setName(getNextName(path.getName()));
                     gui.putPath(path);
                 } else {
@@ -235,6 +235,24 @@ public class PathVisualizerManager {
                 }
             }            
             break;
+        case APPEND: {
+                if(contents instanceof Path) {
+                    //add to the path that the robot last sent under this name. If there isn't one, or the user deleted it, start a new one.
+                    Path points = (Path) contents;
+                    Path path = livePaths.get(points.getName());
+                    if(path == null || !gui.appendToPath(path, points)) {
+                        path = new Path(new double[0], new double[0], new double[0], Path.getNextColor(), points.getName());
+                        path.append(points);
+                        livePaths.put(points.getName(), path);
+                        path.setName(getNextName(path.getName()));
+                        gui.putPath(path);
+                    }
+                } else {
+                    System.out.println("Manager tried to forward path data to GUI, but it was not a path!");
+                    System.out.println("Contents: " + contents.toString());
+                }
+            }
+            break;
         case POSITION: {
                 if(contents instanceof Point2D) {
                     gui.updateRobotPosition((Point2D) contents);
@@ -249,6 +267,14 @@ public class PathVisualizerManager {
         }
     }
 
+    /**
+     * Shows something that the robot sent as a custom message type, in place of whatever it last sent with the same name.
+     * @param renderable The decoded message.
+     */
+    public void showRenderable(IRenderable renderable) {
+        gui.replaceRenderable(renderable);
+    }
+
     /**
      * Gets the desired address and port of the socket, and applies it.
      */
@@ -257,6 +283,7 @@ public class PathVisualizerManager {
         int    port    = gui.getDesiredPort();
 
         socketHelper.startConnectingTo(address, port);
+        updateSocketStatus();
 
         //set preference so that the address is reloaded the next time the app is launched
         setPreference("defaultIPAddress", address);
@@ -336,10 +363,12 @@ public class PathVisualizerManager {
     }
 
     /**
-     * Updates the components of the program that need to be updated
+     * Updates the socket status widget to reflect the state of the connection.
+     * Called by the SocketHelper whenever the robot connects or disconnects.
      */
-    private void update() {
-        socketHelper.update();
-        gui.updateSocketStatus(socketHelper.getConnecting(), socketHelper.getInitalizedAndConnected());
+    public void updateSocketStatus() {
+        if(socketHelper != null) {
+            gui.updateSocketStatus(socketHelper.getConnecting(), socketHelper.getInitalizedAndConnected());
+        }
     }
 }
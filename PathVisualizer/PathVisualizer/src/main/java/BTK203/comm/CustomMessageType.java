@@ -0,0 +1,131 @@
+package BTK203.comm;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import BTK203.Constants;
+import BTK203.enumeration.IMessageType;
+import BTK203.enumeration.MessageType;
+import BTK203.util.IRenderable;
+
+/**
+ * A message type that isn't built into PathVisualizer, such as a vision target or a planned trajectory.
+ * Robot code sends these with its own encoder, and the Codec given here turns them back into something the Visualizer can draw.
+ * The index and code must match the ones that the robot registered.
+ * Custom types only arrive in binary frames, so robots that haven't agreed to the binary protocol never send them.
+ */
+public class CustomMessageType implements IMessageType {
+    private static volatile CustomMessageType[] typesByIndex = new CustomMessageType[Constants.MESSAGE_TYPE_COUNT]; //replaced rather than changed, so the transport thread can read it without locking
+    private static final ConcurrentHashMap<String, CustomMessageType> TYPES_BY_CODE = new ConcurrentHashMap<String, CustomMessageType>();
+
+    private final int index;
+    private final String code;
+    private final Codec codec;
+
+    /**
+     * Turns the body of a custom message into something that can be drawn.
+     */
+    public interface Codec {
+        /**
+         * Decodes a message. Runs on the transport thread, so it should not take long.
+         * @param message The message, with its pieces already put back together.
+         * @return The renderable to show. It replaces whatever was last shown with the same name. Null if the message should be ignored.
+         */
+        public IRenderable decode(Message message);
+    }
+
+    /**
+     * Creates a new CustomMessageType. Use register() instead.
+     * @param index The index of the type.
+     * @param code The code of the type.
+     * @param codec The codec that decodes messages of the type.
+     */
+    private CustomMessageType(int index, String code, Codec codec) {
+        this.index = index;
+        this.code = code;
+        this.codec = codec;
+    }
+
+    /**
+     * Registers a new type, so that messages of that type are decoded and shown as they arrive.
+     * @param index The index of the type, from Constants.FIRST_CUSTOM_MESSAGE_TYPE to Constants.MESSAGE_TYPE_COUNT - 1.
+     * @param code The code of the type. Must not be used by any other type.
+     * @param codec The codec that decodes messages of the type.
+     * @return The registered type, or null if the index or code was invalid or already taken.
+     */
+    public static synchronized CustomMessageType register(int index, String code, Codec codec) {
+        if(index < Constants.FIRST_CUSTOM_MESSAGE_TYPE || index >= Constants.MESSAGE_TYPE_COUNT) {
+            System.out.println("Could not register message type \"" + code + "\": index " + index + " is out of range!");
+            return null;
+        }
+
+        if(typesByIndex[index] != null) {
+            System.out.println("Could not register message type \"" + code + "\": index " + index + " is already used by \"" + typesByIndex[index].getCode() + "\"!");
+            return null;
+        }
+
+        if(code.isEmpty() || code.contains(Constants.SUBJECT_SEQUENCE) || code.contains(Constants.SPLIT_SEQUENCE) || code.contains(Constants.END_SEQUENCE)) {
+            System.out.println("Could not register message type \"" + code + "\": the code is not valid!");
+            return null;
+        }
+
+        if(TYPES_BY_CODE.containsKey(code) || MessageType.fromCode(code) != MessageType.UNKNOWN) {
+            System.out.println("Could not register message type \"" + code + "\": the code is already used!");
+            return null;
+        }
+
+        CustomMessageType type = new CustomMessageType(index, code, codec);
+        TYPES_BY_CODE.put(code, type);
+        CustomMessageType[] types = typesByIndex.clone();
+        types[index] = type;
+        typesByIndex = types;
+        return type;
+    }
+
+    /**
+     * Returns the registered type with an index.
+     * @param index The index of the type.
+     * @return The registered type, or null if there isn't one.
+     */
+    public static CustomMessageType fromIndex(int index) {
+        CustomMessageType[] types = typesByIndex;
+        if(index < 0 || index >= types.length) {
+            return null;
+        }
+
+        return types[index];
+    }
+
+    /**
+     * Returns the registered type with a code.
+     * @param code The code of the type.
+     * @return The registered type, or null if there isn't one.
+     */
+    public static CustomMessageType fromCode(String code) {
+        return TYPES_BY_CODE.get(code);
+    }
+
+    /**
+     * Gets the index of the type.
+     * @return The index, which identifies the type in binary frames.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the code of the type.
+     * @return The code, which identifies the type in text frames and error messages.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Decodes a message of this type.
+     * @param message The message to decode.
+     * @return The renderable to show, or null if the message should be ignored.
+     */
+    public IRenderable decode(Message message) {
+        return codec.decode(message);
+    }
+}
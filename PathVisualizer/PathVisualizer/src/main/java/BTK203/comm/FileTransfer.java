@@ -0,0 +1,279 @@
+package BTK203.comm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import BTK203.Constants;
+import BTK203.enumeration.FileOperation;
+import BTK203.enumeration.MessageType;
+
+/**
+ * Moves a file to or from the robot in chunks of Constants.TRANSFER_CHUNK_SIZE, so that big files never hold up position updates.
+ * Several chunks are kept in flight at once, and each one is numbered so that replies from before a reconnect can be told apart.
+ * If the connection drops, the transfer picks up from the last acknowledged offset once the robot is back.
+ * The transfer only gives up if the robot makes no progress for Constants.MESSAGE_TIMEOUT.
+ * Transfers are driven entirely by the robot's replies, so no thread waits on them.
+ * Chunk formats (all numbers are ints):
+ * ReadChunk request: [transfer id] [sequence] [offset] [length]. Reply: [transfer id] [sequence] [offset] [total length, or -1 on error] [data]
+ * WriteChunk request: [transfer id] [sequence] [offset] [total length] [data]. Reply: [transfer id] [sequence] [bytes written, or -1 on error]
+ */
+public class FileTransfer {
+    /**
+     * Receives updates as a transfer makes progress. Called from the SocketHelper's transport thread.
+     */
+    public interface ProgressListener {
+        /**
+         * Called whenever more of the file has been acknowledged.
+         * @param transferred The number of bytes transferred so far.
+         * @param total The size of the file.
+         */
+        public void progressChanged(int transferred, int total);
+    }
+
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+
+    private SocketHelper socketHelper;
+    private FileOperation operation;
+    private String robotPath;
+    private ProgressListener listener;
+    private CompletableFuture<byte[]> result;
+    private long lastProgressTime;
+    private int id;
+    private byte[] data;
+    private int
+        total,
+        acknowledged,     //everything before this offset has been confirmed by the robot
+        nextOffset,       //offset of the next chunk to request or send
+        nextSequence,     //sequence number of the next chunk to request or send
+        expectedSequence, //sequence number of the oldest chunk in flight
+        inFlight,
+        windowOffset,     //offset that sending was last (re)started from
+        windowSequence;   //sequence number of the first chunk sent from windowOffset
+
+    /**
+     * Creates a new FileTransfer. Use SocketHelper.loadFile() or SocketHelper.saveFile() instead of creating these directly.
+     * @param socketHelper The SocketHelper to send chunks through.
+     * @param operation Whether the file is being loaded from or saved to the robot.
+     * @param robotPath The absolute path of the file on the robot.
+     * @param data The contents of the file to save, or null if loading.
+     * @param listener The listener to notify of progress. May be null.
+     */
+    FileTransfer(SocketHelper socketHelper, FileOperation operation, String robotPath, byte[] data, ProgressListener listener) {
+        this.socketHelper = socketHelper;
+        this.operation = operation;
+        this.robotPath = robotPath;
+        this.data = data;
+        this.listener = listener;
+        result = new CompletableFuture<byte[]>();
+        lastProgressTime = 0;
+        id = nextId.getAndIncrement();
+        total = (operation == FileOperation.SAVE ? data.length : -1); //the size of a loaded file is unknown until the first chunk arrives
+        acknowledged = 0;
+        nextOffset = 0;
+        nextSequence = 0;
+        expectedSequence = 0;
+        inFlight = 0;
+        windowOffset = 0;
+        windowSequence = 0;
+    }
+
+    /**
+     * Returns the id that identifies this transfer's chunks.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Starts the transfer. This method never blocks.
+     * @return A future that completes with the contents of the file once the whole file has been confirmed, or exceptionally if the transfer fails.
+     */
+    synchronized CompletableFuture<byte[]> start() {
+        lastProgressTime = System.currentTimeMillis();
+        restart();
+        socketHelper.schedule(this::checkTimeout, Constants.MESSAGE_TIMEOUT);
+        return result;
+    }
+
+    /**
+     * Called by the SocketHelper when a reply to one of this transfer's chunks arrives.
+     * @param reply The reply.
+     */
+    synchronized void replyReceived(Message reply) {
+        if(result.isDone()) {
+            return;
+        }
+
+        ByteBuffer body = ByteBuffer.wrap(reply.getBody());
+        if(body.remaining() < 8 || body.getInt() != id || body.getInt() != expectedSequence) {
+            return; //not the reply we are waiting for. Probably left over from before a reconnect.
+        }
+
+        int chunkEnd = windowOffset + (expectedSequence - windowSequence + 1) * Constants.TRANSFER_CHUNK_SIZE; //every chunk but the last is full
+        expectedSequence++;
+        inFlight--;
+        boolean success = (operation == FileOperation.LOAD ? handleReadReply(body) : handleWriteReply(body));
+        if(!success) {
+            fail(new IOException("Robot could not transfer \"" + robotPath + "\"."));
+            return;
+        }
+
+        lastProgressTime = System.currentTimeMillis();
+        if(listener != null) {
+            listener.progressChanged(acknowledged, total);
+        }
+
+        if(isFinished()) {
+            result.complete(data);
+        } else if(acknowledged < Math.min(chunkEnd, total)) {
+            restart(); //robot did not take the whole chunk. Go back and resend from where it left off.
+        } else {
+            fillWindow();
+        }
+    }
+
+    /**
+     * Called by the SocketHelper when the connection to the robot has been restored.
+     */
+    synchronized void connectionRestored() {
+        if(!result.isDone()) {
+            restart(); //pick up from the last place that the robot confirmed
+        }
+    }
+
+    /**
+     * Fails the transfer if the robot has not made progress for Constants.MESSAGE_TIMEOUT, or checks again later if it has.
+     */
+    private synchronized void checkTimeout() {
+        if(result.isDone()) {
+            return;
+        }
+
+        long timeLeft = lastProgressTime + Constants.MESSAGE_TIMEOUT - System.currentTimeMillis();
+        if(timeLeft <= 0) {
+            fail(new TimeoutException("Transfer of \"" + robotPath + "\" timed out."));
+        } else {
+            socketHelper.schedule(this::checkTimeout, timeLeft);
+        }
+    }
+
+    /**
+     * Gives up on the transfer.
+     * @param reason Why the transfer failed.
+     */
+    private void fail(Exception reason) {
+        System.out.println(reason.getMessage());
+        result.completeExceptionally(reason);
+    }
+
+    /**
+     * (Re)starts sending from the last place that the robot confirmed. Anything still in flight is forgotten.
+     * Does nothing until the robot has agreed to binary framing; connectionRestored() will be called when it does.
+     */
+    private void restart() {
+        if(socketHelper.getProtocolVersion() < Constants.BINARY_PROTOCOL_VERSION) {
+            return;
+        }
+
+        nextOffset = acknowledged;
+        expectedSequence = nextSequence;
+        inFlight = 0;
+        windowOffset = nextOffset;
+        windowSequence = nextSequence;
+        fillWindow();
+    }
+
+    /**
+     * Returns true if the whole file has been confirmed.
+     */
+    private boolean isFinished() {
+        return total >= 0 && acknowledged >= total && nextSequence > 0;
+    }
+
+    /**
+     * Sends chunks until the window is full or there is nothing left to send.
+     */
+    private void fillWindow() {
+        while(inFlight < Constants.TRANSFER_WINDOW) {
+            int length;
+            if(total < 0) {
+                if(inFlight > 0) {
+                    return; //don't know how big the file is yet. Wait for the first chunk before asking for more.
+                }
+
+                length = Constants.TRANSFER_CHUNK_SIZE;
+            } else if(nextOffset < total || (total == 0 && inFlight == 0)) {
+                length = Math.min(Constants.TRANSFER_CHUNK_SIZE, total - nextOffset);
+            } else {
+                return;
+            }
+
+            if(operation == FileOperation.LOAD) {
+                ByteBuffer request = ByteBuffer.allocate(16);
+                request.putInt(id).putInt(nextSequence).putInt(nextOffset).putInt(length);
+                socketHelper.sendBinary(MessageType.READ_CHUNK, robotPath, request.array());
+            } else {
+                ByteBuffer request = ByteBuffer.allocate(16 + length);
+                request.putInt(id).putInt(nextSequence).putInt(nextOffset).putInt(total).put(data, nextOffset, length);
+                socketHelper.sendBinary(MessageType.WRITE_CHUNK, robotPath, request.array());
+            }
+
+            nextSequence++;
+            nextOffset += length;
+            inFlight++;
+        }
+    }
+
+    /**
+     * Copies a chunk of a file being loaded into the data array.
+     * @param body The reply, positioned after the id and sequence.
+     * @return True if the chunk was valid, false if the robot reported an error.
+     */
+    private boolean handleReadReply(ByteBuffer body) {
+        if(body.remaining() < 8) {
+            return false;
+        }
+
+        int offset = body.getInt();
+        int fileLength = body.getInt();
+        if(fileLength < 0 || (total >= 0 && fileLength != total) || offset != acknowledged) {
+            return false; //robot could not read the file, or the file changed while we were loading it.
+        }
+
+        if(total < 0) {
+            total = fileLength;
+            data = new byte[total];
+        }
+
+        int length = Math.min(body.remaining(), total - offset);
+        if(length == 0 && offset < total) {
+            return false;
+        }
+
+        body.get(data, offset, length);
+        acknowledged += length;
+        return true;
+    }
+
+    /**
+     * Records how much of a file being saved the robot has written.
+     * @param body The reply, positioned after the id and sequence.
+     * @return True if the chunk was valid, false if the robot reported an error.
+     */
+    private boolean handleWriteReply(ByteBuffer body) {
+        if(body.remaining() < 4) {
+            return false;
+        }
+
+        int written = body.getInt();
+        if(written < 0) {
+            return false;
+        }
+
+        acknowledged = written;
+        return true;
+    }
+}
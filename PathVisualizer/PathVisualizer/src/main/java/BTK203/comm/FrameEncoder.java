@@ -0,0 +1,109 @@
+package BTK203.comm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import BTK203.Constants;
+import BTK203.enumeration.IMessageType;
+
+/**
+ * Turns messages into bytes that can be sent to the robot, in either the text (v1) or binary (v2) framing.
+ */
+public class FrameEncoder {
+    private FrameEncoder() {
+    }
+
+    /**
+     * Creates a properly formatted text message for the robot.
+     * Format: "[start sequence] [subject] [subject sequence if there is info] [info] [split sequence] [message] [end sequence]"
+     * @param subject The subject of the message.
+     * @param info Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @param message The contents of the message.
+     * @return The encoded message.
+     */
+    public static byte[] encodeText(IMessageType subject, String info, String message) {
+        return (Constants.START_SEQUENCE + composeSubject(subject, info) + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE).getBytes();
+    }
+
+    /**
+     * Creates a properly formatted binary frame for the robot.
+     * Format: [magic byte] [type index] [flags] [payload length] [info length (short)] [info] [body]
+     * The info length and info are only present if info is not empty.
+     * @param subject The subject of the message.
+     * @param info Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @param body The raw body of the message.
+     * @return The encoded frame.
+     */
+    public static byte[] encodeBinary(IMessageType subject, String info, byte[] body) {
+        return encodeBinary(subject, 0, info, body, body.length);
+    }
+
+    /**
+     * Creates a properly formatted binary frame for the robot.
+     * @param subject The subject of the message.
+     * @param flags Flags describing the body (see Message). FLAG_INFO is added automatically if info is not empty.
+     * @param info Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @param body An array holding the raw body of the message.
+     * @param bodyLength The number of bytes of body to send.
+     * @return The encoded frame.
+     */
+    public static byte[] encodeBinary(IMessageType subject, int flags, String info, byte[] body, int bodyLength) {
+        return encodeBinary(subject, flags, 0, info, body, bodyLength);
+    }
+
+    /**
+     * Creates a properly formatted binary frame for the robot, tagged with a request id.
+     * Format: [magic byte] [type index] [flags] [payload length] [info length (short)] [info] [request id (int)] [body]
+     * @param subject The subject of the message.
+     * @param flags Flags describing the body (see Message). FLAG_INFO and FLAG_REQUEST_ID are added automatically.
+     * @param requestId The id of the request that the message is or answers. If 0, the message is not tagged.
+     * @param info Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @param body An array holding the raw body of the message.
+     * @param bodyLength The number of bytes of body to send.
+     * @return The encoded frame.
+     */
+    public static byte[] encodeBinary(IMessageType subject, int flags, int requestId, String info, byte[] body, int bodyLength) {
+        byte[] infoBytes = info.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = bodyLength;
+        if(infoBytes.length > 0) {
+            flags |= Message.FLAG_INFO;
+            payloadLength += 2 + infoBytes.length;
+        }
+
+        if(requestId != 0) {
+            flags |= Message.FLAG_REQUEST_ID;
+            payloadLength += 4;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(Constants.FRAME_HEADER_SIZE + payloadLength);
+        frame.put(Constants.FRAME_MAGIC);
+        frame.put((byte) subject.getIndex());
+        frame.put((byte) flags);
+        frame.putInt(payloadLength);
+        if(infoBytes.length > 0) {
+            frame.putShort((short) infoBytes.length);
+            frame.put(infoBytes);
+        }
+
+        if(requestId != 0) {
+            frame.putInt(requestId);
+        }
+
+        frame.put(body, 0, bodyLength);
+        return frame.array();
+    }
+
+    /**
+     * Creates the subject of a message as it appears in a text frame.
+     * @param subject The type of the message.
+     * @param info The subject info of the message. May be empty.
+     * @return The subject String.
+     */
+    public static String composeSubject(IMessageType subject, String info) {
+        if(info.isEmpty()) {
+            return subject.getCode();
+        }
+
+        return subject.getCode() + Constants.SUBJECT_SEQUENCE + info;
+    }
+}
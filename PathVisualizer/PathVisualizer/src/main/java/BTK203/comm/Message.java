@@ -0,0 +1,114 @@
+package BTK203.comm;
+
+import java.nio.charset.StandardCharsets;
+
+import BTK203.enumeration.IMessageType;
+import BTK203.enumeration.MessageType;
+
+/**
+ * A single message received from the robot, regardless of which framing it arrived in.
+ */
+public class Message {
+    /**
+     * Frame flags. These must exactly match their counterparts in the robot host.
+     */
+    public static final int
+        FLAG_INFO       = 0x01, //payload starts with [info length (short)] [info]
+        FLAG_KEYFRAME   = 0x02, //quantized position that does not depend on the previous one
+        FLAG_QUANTIZED  = 0x04, //position body is zig-zag varints instead of text (see PositionEncoder)
+        FLAG_PARTIAL    = 0x08, //more of this body follows in the next frame with the same type and info
+        FLAG_REQUEST_ID = 0x10, //info is followed by [request id (int)]. Replies carry the id of the request they answer.
+        FLAG_BATCH      = 0x20; //quantized position body holds several timestamped positions
+
+    private IMessageType type;
+    private int flags;
+    private int requestId;
+    private String info;
+    private byte[] body;
+
+    /**
+     * Creates a new Message.
+     * @param type The type of the message.
+     * @param flags The flags that the message was framed with.
+     * @param info The subject info of the message (for example, the name of a path). Empty if there is none.
+     * @param body The raw body of the message.
+     */
+    public Message(IMessageType type, int flags, String info, byte[] body) {
+        this(type, flags, 0, info, body);
+    }
+
+    /**
+     * Creates a new Message that is part of a request / response pair.
+     * @param type The type of the message.
+     * @param flags The flags that the message was framed with.
+     * @param requestId The id of the request that the message is or answers. 0 if there is none.
+     * @param info The subject info of the message (for example, the name of a path). Empty if there is none.
+     * @param body The raw body of the message.
+     */
+    public Message(IMessageType type, int flags, int requestId, String info, byte[] body) {
+        this.type = type;
+        this.flags = flags;
+        this.requestId = requestId;
+        this.info = info;
+        this.body = body;
+    }
+
+    /**
+     * Returns the type of the message.
+     * @return The built-in type of the message, or UNKNOWN if it has a custom type.
+     */
+    public MessageType getType() {
+        return (type instanceof MessageType ? (MessageType) type : MessageType.UNKNOWN);
+    }
+
+    /**
+     * Returns the type of the message, whether it is built-in or custom.
+     */
+    public IMessageType getSubjectType() {
+        return type;
+    }
+
+    /**
+     * Returns true if the message was framed with the given flag.
+     * @param flag The flag to check.
+     */
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Returns the id of the request that the message is or answers, or 0 if it was not tagged with one.
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns the subject info of the message, or an empty String if there is none.
+     */
+    public String getInfo() {
+        return info;
+    }
+
+    /**
+     * Returns the raw body of the message.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the body of the message decoded as a String.
+     */
+    public String getBodyString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the subject of the message as it would appear in a text frame.
+     * Format: [code] or [code][subject sequence][info]
+     */
+    public String getSubject() {
+        return FrameEncoder.composeSubject(type, info);
+    }
+}
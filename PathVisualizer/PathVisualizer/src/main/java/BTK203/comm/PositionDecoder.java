@@ -0,0 +1,132 @@
+package BTK203.comm;
+
+import BTK203.util.Point2D;
+import BTK203.util.PositionHistory;
+
+/**
+ * Rebuilds robot positions from the compact POSITION frames sent by the robot host's PositionEncoder.
+ * Keyframe body: [linear resolution (float)] [angular resolution (float)] [x] [y] [heading]
+ * Delta body: [x - previous x] [y - previous y] [heading - previous heading]
+ * Frames with the FLAG_BATCH flag hold several timestamped positions: a keyframe or delta, followed by any number of deltas.
+ * Batched keyframe: [linear resolution (float)] [angular resolution (float)] [timestamp] [x] [y] [heading]
+ * Batched delta: [timestamp - previous timestamp] [x - previous x] [y - previous y] [heading - previous heading]
+ * All values except the resolutions are zig-zag varints in units of the resolution. Timestamps are in milliseconds.
+ */
+public class PositionDecoder {
+    private boolean hasKeyframe;
+    private double
+        linearResolution,
+        angularResolution;
+
+    private long
+        timestamp,
+        x,
+        y,
+        heading;
+
+    private byte[] body;
+    private int position;
+
+    /**
+     * Creates a new PositionDecoder.
+     */
+    public PositionDecoder() {
+        reset();
+    }
+
+    /**
+     * Decodes a quantized POSITION message.
+     * Every message must be passed to this method in the order it was received, even if the result is not needed, or later deltas will be applied to the wrong position.
+     * @param message The message to decode. Must have the FLAG_QUANTIZED flag.
+     * @param history The history to add every decoded position to. Positions that were not batched are timestamped with the time they are decoded. May be null.
+     * @return The last position in the message, or null if no keyframe has been received yet or the body was invalid.
+     */
+    public Point2D decode(Message message, PositionHistory history) {
+        body = message.getBody();
+        position = 0;
+        boolean batched = message.hasFlag(Message.FLAG_BATCH);
+        try {
+            if(message.hasFlag(Message.FLAG_KEYFRAME)) {
+                linearResolution = readFloat();
+                angularResolution = readFloat();
+                timestamp = (batched ? readVarLong() : System.currentTimeMillis());
+                x = readVarLong();
+                y = readVarLong();
+                heading = readVarLong();
+                hasKeyframe = true;
+            } else if(hasKeyframe) {
+                readDelta(batched);
+            } else {
+                return null; //nothing to apply the delta to. Wait for the next keyframe.
+            }
+
+            addTo(history);
+            while(batched && position < body.length) {
+                readDelta(true);
+                addTo(history);
+            }
+        } catch(ArrayIndexOutOfBoundsException ex) {
+            hasKeyframe = false; //the chain is broken. Data was invalid!
+            return null;
+        }
+
+        return new Point2D(x * linearResolution, y * linearResolution, heading * angularResolution);
+    }
+
+    /**
+     * Forgets the current position. Use this when the connection is reset.
+     */
+    public void reset() {
+        hasKeyframe = false;
+        timestamp = 0;
+        x = 0;
+        y = 0;
+        heading = 0;
+    }
+
+    /**
+     * Applies a delta from the body to the current position.
+     * @param batched True if the delta carries a timestamp. If not, the current time is used.
+     */
+    private void readDelta(boolean batched) {
+        timestamp = (batched ? timestamp + readVarLong() : System.currentTimeMillis());
+        x += readVarLong();
+        y += readVarLong();
+        heading += readVarLong();
+    }
+
+    /**
+     * Adds the current position to a history.
+     * @param history The history to add to. May be null.
+     */
+    private void addTo(PositionHistory history) {
+        if(history != null) {
+            history.add(timestamp, x * linearResolution, y * linearResolution, heading * angularResolution);
+        }
+    }
+
+    /**
+     * Reads a float from the body.
+     */
+    private float readFloat() {
+        int bits = ((body[position] & 0xFF) << 24) | ((body[position + 1] & 0xFF) << 16) | ((body[position + 2] & 0xFF) << 8) | (body[position + 3] & 0xFF);
+        position += 4;
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * Reads a zig-zag varint from the body.
+     */
+    private long readVarLong() {
+        long zigZag = 0;
+        for(int shift=0; shift<64; shift+=7) {
+            byte b = body[position++];
+            zigZag |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+
+        throw new ArrayIndexOutOfBoundsException("Varint is too long.");
+    }
+}
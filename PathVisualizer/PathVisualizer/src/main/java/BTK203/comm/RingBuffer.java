@@ -0,0 +1,205 @@
+package BTK203.comm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A reusable, growable circular byte buffer.
+ * Bytes are written at the tail and consumed from the head, so reading a message never copies the data that comes after it.
+ */
+public class RingBuffer {
+    private byte[] data;
+    private ByteBuffer view; //wraps data so that channels can read into it without a new wrapper every time
+    private int
+        mask,
+        head, //index of the first readable byte
+        size; //number of readable bytes
+
+    /**
+     * Creates a new RingBuffer.
+     * @param initialCapacity The minimum number of bytes the buffer can hold before it has to grow.
+     */
+    public RingBuffer(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1; //next power of two, so that wrapping is a mask
+        data = new byte[capacity];
+        view = ByteBuffer.wrap(data);
+        mask = capacity - 1;
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the number of readable bytes in the buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes the buffer can hold without growing.
+     */
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * Returns the byte at the given offset from the head of the buffer.
+     * @param offset The offset of the byte. Must be less than size().
+     */
+    public byte get(int offset) {
+        return data[(head + offset) & mask];
+    }
+
+    /**
+     * Returns a big-endian int starting at the given offset from the head of the buffer.
+     * @param offset The offset of the first byte of the int.
+     */
+    public int getInt(int offset) {
+        return
+            ((get(offset) & 0xFF) << 24) |
+            ((get(offset + 1) & 0xFF) << 16) |
+            ((get(offset + 2) & 0xFF) << 8) |
+            (get(offset + 3) & 0xFF);
+    }
+
+    /**
+     * Returns the offset of the first occurrence of value at or after start, or -1 if there is none.
+     * @param value The byte to look for.
+     * @param start The offset to start looking from.
+     */
+    public int indexOf(byte value, int start) {
+        for(int i=start; i<size; i++) {
+            if(data[(head + i) & mask] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Copies bytes out of the buffer without consuming them.
+     * @param offset The offset from the head of the first byte to copy.
+     * @param destination The array to copy into.
+     * @param destinationOffset The index in destination to start copying to.
+     * @param length The number of bytes to copy.
+     */
+    public void copyTo(int offset, byte[] destination, int destinationOffset, int length) {
+        int start = (head + offset) & mask;
+        int firstPart = Math.min(length, data.length - start);
+        System.arraycopy(data, start, destination, destinationOffset, firstPart);
+        System.arraycopy(data, 0, destination, destinationOffset + firstPart, length - firstPart);
+    }
+
+    /**
+     * Consumes bytes from the head of the buffer.
+     * @param count The number of bytes to consume.
+     */
+    public void skip(int count) {
+        head = (head + count) & mask;
+        size -= count;
+        if(size == 0) {
+            head = 0; //keeps the free space contiguous for the next read
+        }
+    }
+
+    /**
+     * Discards all readable bytes.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Appends bytes to the tail of the buffer, growing it if needed.
+     * @param bytes The array holding the bytes to append.
+     * @param offset The index of the first byte to append.
+     * @param length The number of bytes to append.
+     */
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(size + length);
+        int tail = (head + size) & mask;
+        int firstPart = Math.min(length, data.length - tail);
+        System.arraycopy(bytes, offset, data, tail, firstPart);
+        System.arraycopy(bytes, offset + firstPart, data, 0, length - firstPart);
+        size += length;
+    }
+
+    /**
+     * Reads whatever is available from the stream straight into the free space of the buffer.
+     * This will block if the stream blocks.
+     * @param stream The stream to read from.
+     * @return The number of bytes read, or -1 if the stream has ended.
+     */
+    public int readFrom(InputStream stream) throws IOException {
+        int tail = prepareForRead();
+        int bytesRead = stream.read(data, tail, contiguousFree(tail));
+        if(bytesRead > 0) {
+            size += bytesRead;
+        }
+
+        return bytesRead;
+    }
+
+    /**
+     * Reads whatever is available from the channel straight into the free space of the buffer.
+     * This will not block if the channel is non-blocking.
+     * @param channel The channel to read from.
+     * @return The number of bytes read, or -1 if the channel has reached end-of-stream.
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        int tail = prepareForRead();
+        view.limit(tail + contiguousFree(tail));
+        view.position(tail);
+        int bytesRead = channel.read(view);
+        if(bytesRead > 0) {
+            size += bytesRead;
+        }
+
+        return bytesRead;
+    }
+
+    /**
+     * Makes sure that the buffer can hold at least the given number of bytes, growing it if it can't.
+     * @param capacity The number of bytes that the buffer needs to hold.
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity <= data.length) {
+            return;
+        }
+
+        int newCapacity = data.length;
+        while(newCapacity < capacity) {
+            newCapacity <<= 1;
+        }
+
+        byte[] newData = new byte[newCapacity];
+        copyTo(0, newData, 0, size);
+        data = newData;
+        view = ByteBuffer.wrap(data);
+        mask = newCapacity - 1;
+        head = 0;
+    }
+
+    /**
+     * Grows the buffer if it is full, and returns the index that the next received byte should go to.
+     */
+    private int prepareForRead() {
+        if(size == data.length) {
+            ensureCapacity(size + 1);
+        }
+
+        return (head + size) & mask;
+    }
+
+    /**
+     * Returns the number of free bytes that directly follow the tail, without wrapping around.
+     * @param tail The index of the tail.
+     */
+    private int contiguousFree(int tail) {
+        return (tail >= head || size == 0) ? data.length - tail : head - tail;
+    }
+}
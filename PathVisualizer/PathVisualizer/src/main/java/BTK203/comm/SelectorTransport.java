@@ -0,0 +1,316 @@
+package BTK203.comm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import BTK203.Constants;
+
+/**
+ * Event-driven connection to the robot.
+ * A single thread waits on a Selector, so received messages are handed off the moment they arrive and nothing runs while the link is quiet.
+ */
+public class SelectorTransport {
+    /**
+     * Receives everything that happens on the connection. All methods are called from the transport thread.
+     */
+    public interface Listener {
+        /**
+         * Called when a connection to the robot has been established.
+         */
+        public void connected();
+
+        /**
+         * Called when the connection to the robot is lost. The transport will keep trying to reconnect.
+         */
+        public void disconnected();
+
+        /**
+         * Called for every complete message received from the robot.
+         * @param message The received message.
+         */
+        public void messageReceived(Message message);
+    }
+
+    private Listener listener;
+    private Selector selector;
+    private SocketChannel channel;
+    private FrameDecoder decoder;
+    private ConcurrentLinkedQueue<ByteBuffer> outgoing;
+    private ByteBuffer currentWrite; //the buffer that the socket couldn't take all of last time
+
+    private volatile InetSocketAddress address; //left unresolved, so that the host is looked up on the transport thread
+    private volatile boolean
+        addressChanged,
+        connecting,
+        connected;
+
+    private long nextConnectTime;
+
+    /**
+     * Creates a new SelectorTransport. Call start() to begin connecting.
+     * @param listener The listener to notify of connection events and messages.
+     */
+    public SelectorTransport(Listener listener) {
+        this.listener = listener;
+        decoder = new FrameDecoder();
+        outgoing = new ConcurrentLinkedQueue<ByteBuffer>();
+        addressChanged = false;
+        connecting = false;
+        connected = false;
+        nextConnectTime = 0;
+    }
+
+    /**
+     * Starts the transport thread.
+     */
+    public void start() {
+        try {
+            selector = Selector.open();
+        } catch(IOException ex) {
+            System.out.println("SelectorTransport could not open a Selector!");
+            ex.printStackTrace();
+            return;
+        }
+
+        Thread thread = new Thread(this::run, "PathVisualizer Transport");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Drops the current connection (if any) and starts trying to connect to the given address and port.
+     * @param address The ipv4 address of the robot.
+     * @param port The port to connect on.
+     */
+    public void connectTo(String address, int port) {
+        this.address = InetSocketAddress.createUnresolved(address, port); //looking the host up here could block the caller
+        addressChanged = true;
+        connecting = true;
+        wakeup();
+    }
+
+    /**
+     * Returns true if the transport is trying to connect to the robot.
+     */
+    public boolean isConnecting() {
+        return connecting;
+    }
+
+    /**
+     * Returns true if the transport is connected to the robot.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Queues an encoded message to be written to the robot. This method can be called from any thread, and never blocks.
+     * @param message The encoded message.
+     */
+    public void send(byte[] message) {
+        if(connected) {
+            outgoing.add(ByteBuffer.wrap(message));
+            wakeup();
+        }
+    }
+
+    /**
+     * Wakes the transport thread so that it notices new work.
+     */
+    private void wakeup() {
+        if(selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * The transport thread. Sleeps until the socket has something for us, there is something to send, or it is time to reconnect.
+     */
+    private void run() {
+        while(selector.isOpen()) {
+            try {
+                long timeout = 0; //block until woken up
+                if(connecting && channel == null) {
+                    timeout = Math.max(1, nextConnectTime - System.currentTimeMillis());
+                }
+
+                selector.select(timeout);
+
+                if(addressChanged) {
+                    addressChanged = false;
+                    boolean wasConnected = connected;
+                    closeChannel();
+                    nextConnectTime = 0;
+                    if(wasConnected) {
+                        listener.disconnected();
+                    }
+                }
+
+                if(connecting && channel == null && System.currentTimeMillis() >= nextConnectTime) {
+                    openChannel();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()) {
+                        continue;
+                    }
+
+                    if(key.isConnectable()) {
+                        finishConnecting();
+                    } else {
+                        if(key.isReadable()) {
+                            read();
+                        }
+
+                        if(key.isValid() && key.isWritable()) {
+                            flush();
+                        }
+                    }
+                }
+
+                if(connected && (currentWrite != null || !outgoing.isEmpty())) {
+                    flush();
+                }
+            } catch(ClosedSelectorException ex) {
+                return;
+            } catch(IOException ex) {
+                //usually caused by the robot disconnecting or some other comms problem.
+                if(Constants.SHOW_LOWKEY_ERRORS) {
+                    System.out.println("Lost connection to the robot: " + ex.getMessage());
+                }
+
+                dropConnection();
+            }
+        }
+    }
+
+    /**
+     * Starts a non-blocking connection attempt.
+     */
+    private void openChannel() throws IOException {
+        nextConnectTime = System.currentTimeMillis() + Constants.RECONNECT_INTERVAL;
+        InetSocketAddress resolved = new InetSocketAddress(address.getHostString(), address.getPort()); //looked up again every time, in case the robot's name only resolves once it's on the network
+        if(resolved.isUnresolved()) {
+            System.out.println("No host " + resolved.getHostString() + " is known.");
+            return;
+        }
+
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        try {
+            if(channel.connect(resolved)) {
+                finishConnecting();
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT);
+            }
+        } catch(IOException ex) { //not on a network. We don't care about this one because we want it to connect as soon as it is able.
+            closeChannel();
+        }
+    }
+
+    /**
+     * Completes a connection attempt that the Selector says is ready.
+     */
+    private void finishConnecting() throws IOException {
+        try {
+            if(!channel.finishConnect()) {
+                return;
+            }
+        } catch(IOException ex) { //connection refused or timed out. Try again later.
+            closeChannel();
+            return;
+        }
+
+        decoder.reset();
+        outgoing.clear();
+        currentWrite = null;
+        channel.register(selector, SelectionKey.OP_READ);
+        connected = true;
+        connecting = false;
+        listener.connected();
+    }
+
+    /**
+     * Reads everything that is available and hands off every complete message.
+     */
+    private void read() throws IOException {
+        int bytesRead = decoder.readFrom(channel);
+        while(bytesRead > 0) {
+            Message message = decoder.poll();
+            while(message != null) {
+                listener.messageReceived(message);
+                message = decoder.poll();
+            }
+
+            bytesRead = decoder.readFrom(channel);
+        }
+
+        if(bytesRead < 0) {
+            throw new IOException("Robot closed the connection.");
+        }
+    }
+
+    /**
+     * Writes as much queued data as the socket will take, and asks to be woken when it can take more.
+     */
+    private void flush() throws IOException {
+        while(true) {
+            if(currentWrite == null) {
+                currentWrite = outgoing.poll();
+                if(currentWrite == null) {
+                    break;
+                }
+            }
+
+            channel.write(currentWrite);
+            if(currentWrite.hasRemaining()) {
+                break; //socket is full
+            }
+
+            currentWrite = null;
+        }
+
+        int interest = SelectionKey.OP_READ | (currentWrite != null ? SelectionKey.OP_WRITE : 0);
+        channel.keyFor(selector).interestOps(interest);
+    }
+
+    /**
+     * Closes the current connection and schedules a reconnect.
+     */
+    private void dropConnection() {
+        boolean wasConnected = connected;
+        closeChannel();
+        connecting = true;
+        nextConnectTime = System.currentTimeMillis() + Constants.RECONNECT_INTERVAL;
+        if(wasConnected) {
+            listener.disconnected();
+        }
+    }
+
+    /**
+     * Closes the current channel, if there is one.
+     */
+    private void closeChannel() {
+        connected = false;
+        if(channel != null) {
+            try {
+                channel.close();
+            } catch(IOException ex) {
+                ex.printStackTrace();
+            }
+
+            channel = null;
+        }
+    }
+}
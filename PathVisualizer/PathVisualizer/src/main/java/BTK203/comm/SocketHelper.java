@@ -1,35 +1,60 @@
 package BTK203.comm;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.ConnectException;
-import java.net.InetAddress;
-import java.net.NoRouteToHostException;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import BTK203.App;
 import BTK203.Constants;
+import BTK203.enumeration.FileOperation;
 import BTK203.enumeration.MessageType;
+import BTK203.util.IRenderable;
 import BTK203.util.Path;
 import BTK203.util.Point2D;
+import BTK203.util.PointParser;
+import BTK203.util.PositionHistory;
 
 /**
  * A utility that deals with all communication with the robot.
  */
 public class SocketHelper {
-    private Socket socket;
-    private String address;
-    private int port;
-    private boolean
-        connecting,
-        initalized;
-    
+    private SelectorTransport transport;
+    private PositionDecoder positionDecoder; //only touched by the transport thread
+    private PositionHistory positionHistory; //every position the robot has sent
+    private PointParser pointParser; //reads text positions without creating Strings. Only touched by the transport thread
+    private HashMap<String, ByteArrayOutputStream> partialMessages; //big messages that are still arriving in pieces, by request id or subject. Only touched by the transport thread
+    private ConcurrentHashMap<Integer, FileTransfer> transfers; //transfers in progress, by id
+    private ConcurrentHashMap<Integer, CompletableFuture<Message>> pendingRequests; //requests waiting for a reply, by request id
+    private ConcurrentHashMap<String, ConcurrentLinkedQueue<CompletableFuture<Message>>> pendingTextRequests; //requests sent to text-only robots, oldest first by subject
+    private AtomicInteger nextRequestId;
+    private ScheduledExecutorService scheduler; //times out requests and transfers
     private long lastUpdateTime;
-    private HashMap<String, String> unclaimedMessages;
-    private String currentData;
+    private volatile int protocolVersion; //the framing that the robot has agreed to. Text framing until the handshake completes.
+    private MessageHandler[] handlers; //what to do with each type of message, by type index
+
+    /**
+     * Does something with every message of one type.
+     */
+    private interface MessageHandler {
+        /**
+         * Handles a message. Runs on the transport thread.
+         * @param message The whole message.
+         */
+        public void handle(Message message);
+    }
 
     /**
      * Creates a new SocketHelper trying to connect to address and port.
@@ -37,118 +62,100 @@ public class SocketHelper {
      * @param port The port to connect on.
      */
     public SocketHelper(String address, int port) {
-        startConnectingTo(address, port);
         lastUpdateTime = 0;
-        unclaimedMessages = new HashMap<String, String>();
-        currentData = "";
-    }
+        pendingRequests = new ConcurrentHashMap<Integer, CompletableFuture<Message>>();
+        pendingTextRequests = new ConcurrentHashMap<String, ConcurrentLinkedQueue<CompletableFuture<Message>>>();
+        nextRequestId = new AtomicInteger(1);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PathVisualizer Timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        protocolVersion = Constants.TEXT_PROTOCOL_VERSION;
+        positionDecoder = new PositionDecoder();
+        positionHistory = new PositionHistory();
+        pointParser = new PointParser();
+        partialMessages = new HashMap<String, ByteArrayOutputStream>();
+        transfers = new ConcurrentHashMap<Integer, FileTransfer>();
+
+        //every type index has a handler, so dispatch is one array lookup no matter how many types there are.
+        MessageHandler replyHandler = this::completeRequest; //anything not listed below must be a reply to a request
+        MessageHandler customHandler = this::handleCustom;
+        handlers = new MessageHandler[Constants.MESSAGE_TYPE_COUNT];
+        Arrays.fill(handlers, 0, Constants.FIRST_CUSTOM_MESSAGE_TYPE, replyHandler);
+        Arrays.fill(handlers, Constants.FIRST_CUSTOM_MESSAGE_TYPE, handlers.length, customHandler);
+        handlers[MessageType.HANDSHAKE.getIndex()] = this::handleHandshake;
+        handlers[MessageType.POSITION.getIndex()] = this::handlePosition;
+        handlers[MessageType.PATH.getIndex()] = this::handlePath;
+        handlers[MessageType.APPEND.getIndex()] = this::handleAppend;
+        handlers[MessageType.READ_CHUNK.getIndex()] = this::handleTransferReply;
+        handlers[MessageType.WRITE_CHUNK.getIndex()] = this::handleTransferReply;
+
+        transport = new SelectorTransport(new SelectorTransport.Listener() {
+            public void connected() {
+                //offer the binary protocol. Robots that only understand text framing will ignore this and keep talking in text.
+                protocolVersion = Constants.TEXT_PROTOCOL_VERSION;
+                positionDecoder.reset();
+                partialMessages.clear();
+                sendMessage(MessageType.HANDSHAKE, "", Integer.toString(Constants.BINARY_PROTOCOL_VERSION));
+                App.getManager().updateSocketStatus();
+            }
 
-    /**
-     * Updates the SocketHelper.
-     */
-    public void update() {
-        if(getInitalizedAndConnected()) {
-            try {
-                //add previously received data to currentData.
-                byte[] buffer = new byte[Constants.SOCKET_BUFFER_SIZE];
-                socket.getInputStream().read(buffer);
-                currentData += new String(buffer);
-
-                //now that the buffer is cleared, if the user doesn't want to see live data, they will not.
-                if(!App.getManager().dataIsLive()) {
-                    currentData = "";
+            public void disconnected() {
+                //the robot forgets about requests when the connection drops, so nobody should wait for them to time out. Transfers will resume on their own.
+                IOException lostConnection = new IOException("Lost connection to the robot.");
+                for(CompletableFuture<Message> request : pendingRequests.values()) {
+                    request.completeExceptionally(lostConnection);
                 }
 
-                //parse data and look for messages.
-                //message formatted as such: "[start sequence] [subject] [subject sequence if there is one] [subject contents if applicable] [split sequence] [contents of message] [end sequence]"
-                while(currentData.indexOf(Constants.START_SEQUENCE) > -1 && currentData.indexOf(Constants.END_SEQUENCE) > -1) {
-                    int
-                        startSequenceIndex = currentData.indexOf(Constants.START_SEQUENCE),
-                        endSequenceIndex = currentData.indexOf(Constants.END_SEQUENCE);
-                    
-                    String relavantData = "";
-                    try {
-                        relavantData = currentData.substring(startSequenceIndex, endSequenceIndex);
-                    } catch(StringIndexOutOfBoundsException ex) {
-                        System.out.println("SIOOB Error! Data was VERY invalid!");
+                for(ConcurrentLinkedQueue<CompletableFuture<Message>> requests : pendingTextRequests.values()) {
+                    for(CompletableFuture<Message> request : requests) {
+                        request.completeExceptionally(lostConnection);
                     }
-                    currentData = currentData.substring(endSequenceIndex + 1);
-
-                    String[] completedMessages = relavantData.split(Constants.END_SEQUENCE);
-                    for(int i=0; i<completedMessages.length; i++) {
-                        String completedMessage = completedMessages[i];
+                }
 
-                        int splitSequenceIndex = completedMessage.indexOf(Constants.SPLIT_SEQUENCE);
-                        if(splitSequenceIndex > -1) { //now it is defintely a full message
-                            String subject = completedMessage.substring(0, splitSequenceIndex);
-                            String message = completedMessage.substring(splitSequenceIndex + Constants.SPLIT_SEQUENCE.length());
-                            String info = "";
+                App.getManager().updateSocketStatus();
+            }
 
-                            if(subject.startsWith(Constants.START_SEQUENCE)) {
-                                subject = subject.substring(Constants.START_SEQUENCE.length()); //substring off the start sequence
-                            }
+            public void messageReceived(Message message) {
+                handleMessage(message);
+            }
+        });
 
-                            if(subject.contains(Constants.SUBJECT_SEQUENCE)) {
-                                info = subject.substring(subject.indexOf(Constants.SUBJECT_SEQUENCE) + Constants.SUBJECT_SEQUENCE.length());
-                            }
+        transport.start();
+        startConnectingTo(address, port);
+    }
 
-                            handleMessage(subject, message, info);
-                        }
-                    }
-                }
-            } catch(SocketException ex) {
-                redoConnection(); //SocketExceptions are usually caused by the host disconnecting or some other comms problem.
-            } catch(SocketTimeoutException ex) { //to stop if from printing a stack trace every time the read times out
-            } catch(IOException ex) {
-                printIOExceptionMessage(ex);
-            }
-        } 
-        
-        //if there are too many unclaimed messages, clear the buffer to maximize efficency
-        if(unclaimedMessages.size() > Constants.MAX_UNCLAIMED_MESSAGES) {
-            unclaimedMessages.clear();
-        }
+    /**
+     * Sends a request to the robot. This method never blocks.
+     * Each request is tagged with its own id, so any number of requests (even of the same type) can be waiting at once.
+     * @param subject The subject of the request.
+     * @param info Additional info needed for the robot to carry out the request. May be empty.
+     * @param message The body of the request.
+     * @return A future that completes with the body of the robot's reply. It completes exceptionally with a TimeoutException if the robot does not reply within Constants.MESSAGE_TIMEOUT, or with an IOException if the robot is not connected.
+     */
+    public CompletableFuture<String> sendRequest(MessageType subject, String info, String message) {
+        return request(subject, info, message.getBytes(StandardCharsets.UTF_8)).thenApply(Message::getBodyString);
     }
 
+    /**
+     * Sends a message to the robot and returns the robot's response to the message if there is one.
+     * This method will block until either the response is received, or the operation times out. Prefer sendRequest(), which does not block.
+     * @param subject The subject of the message to send.
+     * @param message The body of the message to send.
+     * @param extraInfo Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @return The robot's response to the message, or an empty String if it does not respond.
+     */
     public String sendMessageAndGetResponse(MessageType subject, String message, String extraInfo) {
-        if(!getInitalizedAndConnected()) {
-            return "";
-        }
-        
-        String formattedMessage = "";
-        if(extraInfo.isEmpty()) {
-            formattedMessage = composeMessage(subject, message);
-        } else {
-            formattedMessage = composeMessage(subject, extraInfo, message);
-        }
-        sendMessage(formattedMessage);
-
-        String formattedSubject = "";
         try {
-            formattedSubject = formattedMessage.split(Constants.SPLIT_SEQUENCE)[0].substring(1);
-        } catch(IndexOutOfBoundsException ex) {
-            System.out.println("sendMessageAndGetResponse() encountered an internal error.");
-            return "";
-        }
-
-        //start timer. Method will give up after a certain timeout.
-        long startTime = System.currentTimeMillis();
-        while(System.currentTimeMillis() - startTime < Constants.MESSAGE_TIMEOUT) {
-            //look for a message with the same subject line
-            if(unclaimedMessages.get(formattedSubject) != null) {
-                String returnMessage = unclaimedMessages.get(formattedSubject); //claim the message
-                unclaimedMessages.remove(formattedSubject);
-                return returnMessage;
-            }
-
-            try {
-                Thread.sleep(Constants.UPDATE_RATE);
-            } catch(InterruptedException ex) {
-                ex.printStackTrace();
-            }
+            return sendRequest(subject, extraInfo, message).get();
+        } catch(ExecutionException ex) {
+            System.out.println("sendMessageAndGetResponse() failed: " + ex.getCause().getMessage());
+        } catch(InterruptedException ex) {
+            ex.printStackTrace();
         }
 
-        System.out.println("sendMessageAndGetResponse() timed out.");
         return "";
     }
 
@@ -163,15 +170,80 @@ public class SocketHelper {
         return sendMessageAndGetResponse(subject, message, "");
     }
 
+    /**
+     * Loads a file from the robot. Large files are loaded in chunks if the robot supports it. This method never blocks.
+     * @param robotPath The absolute path of the file on the robot.
+     * @param listener The listener to notify as the file arrives. May be null.
+     * @return A future that completes with the contents of the file, or exceptionally if it could not be loaded.
+     */
+    public CompletableFuture<byte[]> loadFile(String robotPath, FileTransfer.ProgressListener listener) {
+        if(!getInitalizedAndConnected() || protocolVersion < Constants.BINARY_PROTOCOL_VERSION) { //robot only understands whole-file messages
+            if(robotPath.endsWith(Constants.BINARY_FILE_SUFFIX)) {
+                return failedTransfer("Binary file \"" + robotPath + "\" can't be loaded over text messages.");
+            }
+
+            return request(MessageType.LOAD, "", robotPath.getBytes(StandardCharsets.UTF_8)).thenApply(response -> {
+                if(response.getBody().length == 3 && response.getBodyString().equals("ERR")) {
+                    throw new CompletionException(new IOException("Robot could not load \"" + robotPath + "\"."));
+                }
+
+                return response.getBody(); //handed over as-is, so the file can go straight into Path.fromBytes()
+            });
+        }
+
+        return startTransfer(new FileTransfer(this, FileOperation.LOAD, robotPath, null, listener));
+    }
+
+    /**
+     * Saves a file to the robot. Large files are saved in chunks if the robot supports it. This method never blocks.
+     * @param robotPath The absolute path of the file on the robot.
+     * @param contents The contents of the file.
+     * @param listener The listener to notify as the file is sent. May be null.
+     * @return A future that completes once the robot has saved the whole file, or exceptionally if it could not be saved.
+     */
+    public CompletableFuture<Void> saveFile(String robotPath, byte[] contents, FileTransfer.ProgressListener listener) {
+        if(!getInitalizedAndConnected() || protocolVersion < Constants.BINARY_PROTOCOL_VERSION) {
+            if(robotPath.endsWith(Constants.BINARY_FILE_SUFFIX)) { //text frames would mangle bytes that aren't UTF-8
+                return failedTransfer("Binary file \"" + robotPath + "\" can't be saved over text messages.");
+            }
+
+            return sendRequest(MessageType.SAVE, robotPath, new String(contents, StandardCharsets.UTF_8)).thenAccept(response -> {
+                if(!response.equals("OK")) {
+                    throw new CompletionException(new IOException("Robot could not save \"" + robotPath + "\"."));
+                }
+            });
+        }
+
+        return startTransfer(new FileTransfer(this, FileOperation.SAVE, robotPath, contents, listener)).thenAccept(data -> {});
+    }
+
+    /**
+     * Returns a future that has already failed, for a file that can't be transferred.
+     * @param reason Why the file can't be transferred.
+     * @return A future that is completed exceptionally with an IOException.
+     */
+    private static <T> CompletableFuture<T> failedTransfer(String reason) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(new IOException(reason));
+        return future;
+    }
+
+    /**
+     * Used to read and handle messages from the robot, and had to be called periodically.
+     * Messages are now read and handled on the transport thread as soon as they arrive, so this does nothing.
+     * @deprecated No longer needs to be called. It will be removed in a later version.
+     */
+    @Deprecated
+    public void update() {
+    }
+
     /**
      * Starts trying to connect the socket to the given address and port.
      * @param address The new ipv4 address to connect to.
      * @param port The new port to connect on.
      */
     public void startConnectingTo(String address, int port) {
-        this.address = address;
-        this.port = port;
-        attemptToConnectSocket();
+        transport.connectTo(address, port);
     }
 
     /**
@@ -179,7 +251,7 @@ public class SocketHelper {
      * @return true if the socket is connecting, false otherwise.
      */
     public boolean getConnecting() {
-        return connecting;
+        return transport.isConnecting();
     }
 
     /**
@@ -187,11 +259,23 @@ public class SocketHelper {
      * @return true if the socket is initalized, false otherwise.
      */
     public boolean getInitalizedAndConnected() {
-        if(initalized && !connecting) {
-            return socket.isConnected();
-        }
+        return transport.isConnected();
+    }
 
-        return false;
+    /**
+     * Returns the version of the protocol that the robot has agreed to use.
+     * @return Constants.BINARY_PROTOCOL_VERSION if binary frames are being sent, Constants.TEXT_PROTOCOL_VERSION otherwise.
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Returns every position that the robot has sent, including the ones that arrived in batches between screen updates.
+     * @return The position history.
+     */
+    public PositionHistory getPositionHistory() {
+        return positionHistory;
     }
 
     public boolean getUpdated() {
@@ -199,149 +283,282 @@ public class SocketHelper {
     }
 
     /**
-     * Tries to connect the socket to the robot in a separate thread, and keeps trying even when it times out.
+     * Sends a message through the Socket, using binary framing if the robot has agreed to it.
+     * @param subject The subject of the message.
+     * @param info Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @param message The contents of the message.
      */
-    private void attemptToConnectSocket() {
-        if(!connecting) {
-            String currentAddr = address;
-            int currentPort = port;
-
-            if(!initalized && socket != null) {
-                try {
-                    socket.close();
-                } catch(IOException ex) {
-                    printIOExceptionMessage(ex);
-                }
-            }
-
-            initalized = false;
-            this.connecting = true;
-            new Thread(() -> {
-                while(currentAddr.equals(address) && currentPort == port) {
-                    try {
-                        socket = new Socket(InetAddress.getByName(address), port);
-                        socket.setSoTimeout(Constants.SOCKET_TIMEOUT);
-                        initalized = true;
-                        break;
-                    } catch(UnknownHostException ex) {
-                        printUnknownHostExceptionMessage(ex, address);
-                    } catch(ConnectException ex) {       //connection timed out.
-                    } catch(NoRouteToHostException ex) { //not on a network. We don't care about this one because we want it to connect as soon as it is able.
-                    } catch(IOException ex) {
-                        printIOExceptionMessage(ex);
-                        break;
-                    }
-                }
-
-                connecting = false;
-            }).start();
+    private void sendMessage(MessageType subject, String info, String message) {
+        if(protocolVersion >= Constants.BINARY_PROTOCOL_VERSION) {
+            sendMessage(FrameEncoder.encodeBinary(subject, info, message.getBytes(StandardCharsets.UTF_8)));
+        } else {
+            sendMessage(FrameEncoder.encodeText(subject, info, message));
         }
     }
 
     /**
-     * Creates a properly formatted String message for the robot.
+     * Sends a message with a raw body through the Socket. Only use this once the robot has agreed to binary framing.
      * @param subject The subject of the message.
-     * @param message The contents of the message.
-     * @return A properly formatted message.
+     * @param info Additional info needed for the robot to carry out the task depicted by the message. May be empty.
+     * @param body The raw body of the message.
      */
-    private String composeMessage(MessageType subject, String message) {
-        return Constants.START_SEQUENCE + subject.getCode() + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE;
+    void sendBinary(MessageType subject, String info, byte[] body) {
+        sendMessage(FrameEncoder.encodeBinary(subject, info, body));
     }
 
     /**
-     * Creates a properly formatted String message for the robot.
-     * @param subject The subject of the message
-     * @param subjectInfo Additional info needed for the robot to carry out the task depicted by the message
-     * @param message The contents of the message.
-     * @return A properly formatted String message.
+     * Runs a task on the timeout thread after a delay.
+     * @param task The task to run.
+     * @param delay The time to wait before running the task, in milliseconds.
+     * @return The scheduled task, which can be used to cancel it.
      */
-    private String composeMessage(MessageType subject, String subjectInfo, String message) {
-        return Constants.START_SEQUENCE + subject.getCode() + Constants.SUBJECT_SEQUENCE + subjectInfo + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE;
+    ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Sends a message through the Socket.
-     * @param message The message to send.
+     * Sends a request and registers it to be completed by the robot's reply.
+     * @param subject The subject of the request.
+     * @param info Additional info needed for the robot to carry out the request. May be empty.
+     * @param body The raw body of the request.
+     * @return A future that completes with the robot's reply.
      */
-    private void sendMessage(String message) {
-        if(getInitalizedAndConnected()) {
-            try {
-                socket.getOutputStream().write(message.getBytes());
-            } catch(SocketException ex) {
-                redoConnection();
-            } catch(IOException ex) {
-                printIOExceptionMessage(ex);
+    private CompletableFuture<Message> request(MessageType subject, String info, byte[] body) {
+        CompletableFuture<Message> future = new CompletableFuture<Message>();
+        if(!getInitalizedAndConnected()) {
+            future.completeExceptionally(new IOException("Robot is not connected."));
+            return future;
+        }
+
+        if(protocolVersion >= Constants.BINARY_PROTOCOL_VERSION) {
+            int id = nextRequestId.getAndIncrement();
+            if(id == 0) {
+                id = nextRequestId.getAndIncrement(); //0 means "no id", so skip it when the counter wraps around
             }
+
+            final int requestId = id;
+            pendingRequests.put(requestId, future);
+            future.whenComplete((reply, ex) -> pendingRequests.remove(requestId));
+            sendMessage(FrameEncoder.encodeBinary(subject, 0, requestId, info, body, body.length));
+        } else {
+            //text frames can't carry an id, so replies are matched to the oldest request with the same subject.
+            ConcurrentLinkedQueue<CompletableFuture<Message>> requests = pendingTextRequests.computeIfAbsent(FrameEncoder.composeSubject(subject, info), key -> new ConcurrentLinkedQueue<CompletableFuture<Message>>());
+            requests.add(future);
+            future.whenComplete((reply, ex) -> requests.remove(future));
+            sendMessage(FrameEncoder.encodeText(subject, info, new String(body, StandardCharsets.UTF_8)));
         }
+
+        ScheduledFuture<?> timeout = schedule(() -> future.completeExceptionally(new TimeoutException("Robot did not respond to \"" + subject.getCode() + "\".")), Constants.MESSAGE_TIMEOUT);
+        future.whenComplete((reply, ex) -> timeout.cancel(false));
+        return future;
     }
 
     /**
-     * Closes the current socket connection and attempts to re-open it.
-     * Use this when having communication issues.
+     * Starts a transfer, routing the robot's replies to it while it runs.
+     * @param transfer The transfer to start.
+     * @return A future that completes with the transferred data.
      */
-    private void redoConnection() {
-        //this exception is usually thrown because of a connection issue. To handle it, we terminate the current connection and look for a new one
+    private CompletableFuture<byte[]> startTransfer(FileTransfer transfer) {
+        transfers.put(transfer.getId(), transfer);
+        CompletableFuture<byte[]> result = transfer.start();
+        result.whenComplete((data, ex) -> transfers.remove(transfer.getId()));
+        return result;
+    }
+
+    /**
+     * Sends an encoded message through the Socket. This never blocks; the transport thread does the writing.
+     * @param message The message to send.
+     */
+    private void sendMessage(byte[] message) {
+        transport.send(message);
+    }
+
+    /**
+     * Processes a raw message into usable objects and then passes it along to the Manager for further processing.
+     * @param message The message to handle.
+     */
+    private void handleMessage(Message message) {
+        lastUpdateTime = System.currentTimeMillis();
+
+        //big messages arrive in pieces, with positions in between. Hold on to them until the last piece arrives.
+        message = collectFragment(message);
+        if(message == null) {
+            return;
+        }
+
+        int index = message.getSubjectType().getIndex();
+        if(index < 0) {
+            completeRequest(message); //unknown type. Could still be a reply to something we sent
+            return;
+        }
+
+        handlers[index].handle(message);
+    }
+
+    /**
+     * Handles the robot's answer to the handshake. The robot replies with the highest version that both of us understand.
+     * @param message The HANDSHAKE message.
+     */
+    private void handleHandshake(Message message) {
         try {
-            this.socket.close();
-        } catch(IOException ex2) {
-            printIOExceptionMessage(ex2);
+            int robotVersion = Integer.valueOf(message.getBodyString().trim()).intValue();
+            protocolVersion = Math.min(robotVersion, Constants.BINARY_PROTOCOL_VERSION);
+            for(FileTransfer transfer : transfers.values()) {
+                transfer.connectionRestored(); //pick up where we left off
+            }
+        } catch(NumberFormatException ex) {
+            System.out.println("Robot sent an invalid handshake! Staying with text framing.");
         }
-        attemptToConnectSocket();
     }
 
     /**
-     * Prints the generic error message from an UnknownHostException.
+     * Records a position (or a batch of them) from the robot, and shows the latest one if data is live.
+     * @param message The POSITION message.
      */
-    private void printUnknownHostExceptionMessage(UnknownHostException ex, String address) {
-        System.out.println("No host " + address + " is known.");
-        ex.printStackTrace();
+    private void handlePosition(Message message) {
+        Point2D position = null;
+        if(message.hasFlag(Message.FLAG_QUANTIZED)) {
+            position = positionDecoder.decode(message, positionHistory); //always decode so the next delta has something to build on
+            if(position == null) {
+                return; //still waiting for a keyframe
+            }
+        } else {
+            byte[] body = message.getBody();
+            if(pointParser.parse(body, 0, body.length)) {
+                position = new Point2D(pointParser.getX(), pointParser.getY(), pointParser.getHeading());
+                positionHistory.add(System.currentTimeMillis(), position);
+            }
+        }
+
+        if(!App.getManager().dataIsLive()) {
+            return; //if the user doesn't want to see live data, they will not. The history still keeps every position.
+        }
+
+        forward(MessageType.POSITION, position);
     }
 
     /**
-     * Prints the generic error message from an IOException
+     * Shows a path that the robot sent, if data is live.
+     * @param message The PATH message.
      */
-    private void printIOExceptionMessage(IOException ex) {
-        System.out.println("IOException occurred in SocketHelper.");
-        ex.printStackTrace();
+    private void handlePath(Message message) {
+        if(!App.getManager().dataIsLive()) {
+            return;
+        }
+
+        byte[] pathBytes = message.getBody();
+        forward(MessageType.PATH, Path.fromBytes(pathBytes, 0, pathBytes.length, message.getInfo()));
     }
 
     /**
-     * Processes a raw message into usable objects and then passes it along to the Manager for further processing.
-     * @param subject The subject of the message (part after open paren but before colon)
-     * @param message The body of the message (part after colon but before close paren)
+     * Adds points that the robot sent to the end of a path, if data is live.
+     * @param message The APPEND message.
+     */
+    private void handleAppend(Message message) {
+        if(!App.getManager().dataIsLive()) {
+            return;
+        }
+
+        byte[] pointBytes = message.getBody();
+        forward(MessageType.APPEND, Path.fromBytes(pointBytes, 0, pointBytes.length, message.getInfo(), Constants.ROBOT_POSITION_COLOR)); //just the new points. The color is never shown
+    }
+
+    /**
+     * Hands a reply to a file transfer to the transfer. Replies to file transfers start with the transfer id.
+     * @param message The READ_CHUNK or WRITE_CHUNK message.
      */
-    private void handleMessage(String subject, String message, String info) {
-        MessageType type = MessageType.fromString(subject); //the type of message
-        Object contents = null; //the information to pass along to the Manager to forward to another system.
+    private void handleTransferReply(Message message) {
+        byte[] body = message.getBody();
+        if(body.length >= 4) {
+            int id = ((body[0] & 0xFF) << 24) | ((body[1] & 0xFF) << 16) | ((body[2] & 0xFF) << 8) | (body[3] & 0xFF);
+            FileTransfer transfer = transfers.get(id);
+            if(transfer != null) {
+                transfer.replyReceived(message);
+            }
+        }
+    }
 
-        lastUpdateTime = System.currentTimeMillis();
+    /**
+     * Decodes a message of a custom type with its codec, and shows the result if data is live.
+     * @param message A message with a type index of Constants.FIRST_CUSTOM_MESSAGE_TYPE or higher.
+     */
+    private void handleCustom(Message message) {
+        if(!(message.getSubjectType() instanceof CustomMessageType) || !App.getManager().dataIsLive()) {
+            return;
+        }
 
-        switch(type) {
-            case POSITION:
-                contents = Point2D.fromString(message);
-                break;
-            case PATH: {
-                    try {
-                        String pathName = subject.split(Constants.SUBJECT_SEQUENCE)[1];
-                        contents = Path.fromString(message, pathName);
-                    } catch(IndexOutOfBoundsException ex) {
-                        System.out.println("Error parsing Path Message! Message was likely missing a \"-\"");
-                        ex.printStackTrace();
-                    }
-                }
-                break;
-            default: {
-                    if(type != MessageType.UNKNOWN) {
-                        unclaimedMessages.put(subject, message);
-                    }
-                }
-                return;
+        CustomMessageType type = (CustomMessageType) message.getSubjectType();
+        IRenderable renderable = null;
+        try {
+            renderable = type.decode(message);
+        } catch(RuntimeException ex) {
+            System.out.println("Could not decode message of type \"" + type.getCode() + "\": " + ex.getMessage());
+            return;
         }
 
+        if(renderable != null) {
+            App.getManager().showRenderable(renderable);
+        }
+    }
+
+    /**
+     * Hands a reply to whoever sent the request that it answers.
+     * @param message The reply.
+     */
+    private void completeRequest(Message message) {
+        CompletableFuture<Message> request = null;
+        if(message.getRequestId() != 0) {
+            request = pendingRequests.get(message.getRequestId());
+        } else {
+            ConcurrentLinkedQueue<CompletableFuture<Message>> requests = pendingTextRequests.get(message.getSubject());
+            if(requests != null) {
+                request = requests.poll();
+            }
+        }
+
+        if(request != null) {
+            request.complete(message);
+        }
+    }
+
+    /**
+     * Passes the contents of a message along to the Manager.
+     * @param type The type of the message.
+     * @param contents The information to pass along to the Manager to forward to another system.
+     */
+    private void forward(MessageType type, Object contents) {
         if(contents != null) {
             App.getManager().forwardData(type, contents);
         } else {
             System.out.println("Tried to handle message, but there was no body!");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds a piece of a message to the message that it belongs to.
+     * Pieces are matched up by request id, or by subject if the message is not tagged. The robot never mixes up the pieces of two messages with the same subject.
+     * @param message A received message, which may or may not be a piece of a bigger one.
+     * @return The whole message if this was the last piece (or the message was never split up), or null if more pieces are coming.
+     */
+    private Message collectFragment(Message message) {
+        String key = (message.getRequestId() != 0 ? "#" + message.getRequestId() : message.getSubject()); //subjects never start with "#"
+        ByteArrayOutputStream fragments = partialMessages.get(key);
+        if(message.hasFlag(Message.FLAG_PARTIAL)) {
+            if(fragments == null) {
+                fragments = new ByteArrayOutputStream();
+                partialMessages.put(key, fragments);
+            }
+
+            fragments.write(message.getBody(), 0, message.getBody().length);
+            return null;
+        }
+
+        if(fragments == null) {
+            return message; //the whole message fit in one frame
+        }
+
+        partialMessages.remove(key);
+        fragments.write(message.getBody(), 0, message.getBody().length);
+        return new Message(message.getSubjectType(), 0, message.getRequestId(), message.getInfo(), fragments.toByteArray());
+    }
+}
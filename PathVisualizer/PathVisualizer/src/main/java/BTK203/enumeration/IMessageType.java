@@ -0,0 +1,18 @@
+package BTK203.enumeration;
+
+/**
+ * Anything that can be the subject of a message: one of the built-in MessageTypes, or a type that was registered at runtime.
+ */
+public interface IMessageType {
+    /**
+     * Gets the index of the type. This is how binary frames identify their type, and must match the robot host.
+     * @return Index of the type. -1 is unknown.
+     */
+    public int getIndex();
+
+    /**
+     * Gets the string code that represents the type.
+     * @return String code to use. Sent as the subject of text messages.
+     */
+    public String getCode();
+}
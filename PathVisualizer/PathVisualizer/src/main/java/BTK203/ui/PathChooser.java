@@ -52,7 +52,7 @@ public class PathChooser extends JDialog {
             IRenderable option = options[i];
             String name = option.getName();
             if (pathsOnly) {
-                if (option.getPoints().length > 1) {
+                if (option.size() > 1) {
                     optionsList.add(option);
                     namesList.add(name);
                 }
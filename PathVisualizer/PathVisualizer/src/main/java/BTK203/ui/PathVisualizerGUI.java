@@ -12,10 +12,13 @@ import com.sun.java.swing.plaf.windows.WindowsLookAndFeel;
 import BTK203.App;
 import BTK203.Constants;
 import BTK203.enumeration.FileOperation;
+import BTK203.util.BinaryPathFormat;
 import BTK203.util.IRenderable;
 import BTK203.util.Path;
+import BTK203.util.PathWriter;
 import BTK203.util.Point2D;
 import BTK203.util.Position;
+import BTK203.util.Rectangle;
 import BTK203.util.Util;
 
 import java.awt.BorderLayout;
@@ -24,7 +27,8 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowAdapter;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 /**
@@ -105,7 +109,7 @@ public class PathVisualizerGUI extends JFrame {
         if(result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
             String pathString = selectedFile.getAbsolutePath();
-            Path newPath = new Path(pathString, Path.getNextColor());
+            Path newPath = Path.fromFile(pathString, Path.getNextColor());
 
             App.getManager().setPreference("defaultOpenFilePath", pathString.substring(0, pathString.lastIndexOf("\\"))); //set the default directory to the directory of the file (not the file though)
 
@@ -164,14 +168,17 @@ public class PathVisualizerGUI extends JFrame {
             String saveFilePath = fileChooser.getSelectedFile().getAbsolutePath();
             String directory = saveFilePath.substring(0, saveFilePath.lastIndexOf("\\"));
             App.getManager().setPreference("defaultSaveFilePath", directory);
-            if(!saveFilePath.endsWith(Constants.FILE_SUFFIX)) {
+            boolean binary = saveFilePath.endsWith(Constants.BINARY_FILE_SUFFIX);
+            if(!binary && !saveFilePath.endsWith(Constants.FILE_SUFFIX)) {
                 saveFilePath += Constants.FILE_SUFFIX;
             }
 
-            String fileContents = desiredRenderable.toString();
-
-            try {
-                Files.writeString(java.nio.file.Path.of(saveFilePath), fileContents);
+            try(FileChannel file = FileChannel.open(java.nio.file.Path.of(saveFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if(binary) {
+                    BinaryPathFormat.write(desiredRenderable, file);
+                } else {
+                    new PathWriter().write(desiredRenderable, file);
+                }
             } catch(IOException ex) {
                 System.out.println("Could not write file!");
                 ex.printStackTrace();
@@ -209,6 +216,48 @@ public class PathVisualizerGUI extends JFrame {
         }
     }
 
+    /**
+     * Adds points to the end of a path that is on the Visualizer.
+     * @param path The path to add to.
+     * @param points The points to add.
+     * @return True if the points were added, false if the path is no longer on the Visualizer.
+     */
+    public boolean appendToPath(Path path, IRenderable points) {
+        if(!visualizer.getRenderables().contains(path)) {
+            return false;
+        }
+
+        path.append(points);
+        visualizer.pathGrew(path);
+        return true;
+    }
+
+    /**
+     * Shows a renderable on the Visualizer, in place of any renderable with the same name. It keeps the visibility of the one it replaces.
+     * @param renderable The renderable to show.
+     */
+    public void replaceRenderable(IRenderable renderable) {
+        for(IRenderable existing : visualizer.getRenderables()) {
+            if(existing.getName().equals(renderable.getName())) {
+                renderable.setVisible(existing.isVisible());
+                deletePath(existing);
+                break;
+            }
+        }
+
+        if(renderable.isValid()) {
+            visualizer.render(renderable);
+            manifest.addWidget(new RenderableWidget(renderable));
+        }
+    }
+
+    /**
+     * Zooms and pans the Visualizer so that everything visible fits on screen.
+     */
+    public void fitView() {
+        visualizer.fitToScene();
+    }
+
     /**
      * Updates the robot position on the Visualizer.
      * @param newPosition The position to render.
@@ -224,8 +273,9 @@ public class PathVisualizerGUI extends JFrame {
             manifest.addWidget(new RenderableWidget(robotPosition));
         }
 
+        Rectangle previousBounds = robotPosition.getBounds();
         robotPosition.setPosition(newPosition);
-        visualizer.repaint();
+        visualizer.renderableMoved(robotPosition, previousBounds);
     }
 
     /**
@@ -255,6 +305,14 @@ public class PathVisualizerGUI extends JFrame {
         ribbon.setSocketStatus(socketConnecting, socketInitalized);
     }
 
+    /**
+     * Updates the progress of a robot file transfer.
+     * See Ribbon.setTransferProgress() for more information.
+     */
+    public void updateTransferProgress(String name, int transferred, int total) {
+        ribbon.setTransferProgress(name, transferred, total);
+    }
+
     /**
      * Returns the user's desired IPv4 socket address for the robot.
      * See Ribbon.getDesiredSocketAddress() for more information.
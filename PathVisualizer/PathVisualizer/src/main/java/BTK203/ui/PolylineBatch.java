@@ -0,0 +1,262 @@
+package BTK203.ui;
+
+import BTK203.util.IRenderable;
+import BTK203.util.Rectangle;
+import BTK203.Constants;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Draws a path with a few big Java2D calls instead of two small ones per point.
+ * Points are turned into screen coordinates once and collected into int buffers. Unbroken runs of lines are drawn with one drawPolyline() call,
+ * and point markers are stamped from an image of one marker after the lines, skipping markers that land on a pixel that is already marked.
+ * One batch is reused for every path, so its buffers only grow.
+ */
+class PolylineBatch {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private Graphics2D g;
+    private IRenderable renderable;
+    private Rectangle bounds;
+    private double scale;
+    private Rectangle viewport;
+    private int
+        width, //the size of the area being drawn on, in pixels
+        height;
+
+    private int[]
+        lineXs, //the screen coordinates of the current run of lines
+        lineYs,
+        markerXs, //the screen coordinates of the centers of the markers to stamp
+        markerYs;
+
+    private int
+        lineLength,
+        lineEnd, //the index of the point at the end of the current run of lines, or -1 if there isn't one
+        markerCount;
+
+    private long[] marked; //one bit for each pixel that a marker has been centered on
+    private BufferedImage stamp; //one point marker, drawn at the resolution of the device
+    private Color stampColor;
+    private double stampScale;
+
+    /**
+     * Creates a new PolylineBatch.
+     */
+    public PolylineBatch() {
+        lineXs = new int[INITIAL_CAPACITY];
+        lineYs = new int[INITIAL_CAPACITY];
+        markerXs = new int[INITIAL_CAPACITY];
+        markerYs = new int[INITIAL_CAPACITY];
+        marked = new long[0];
+        lineEnd = -1;
+    }
+
+    /**
+     * Starts drawing a path.
+     * @param g The graphics to draw with.
+     * @param renderable The path to draw.
+     * @param bounds The bounds of everything being drawn.
+     * @param scale The number of pixels per path unit.
+     * @param viewport The part of the scene that is on screen, in path units. Lines and markers that are entirely outside it are skipped. Null to draw everything.
+     * @param width The width of the area being drawn on, in pixels.
+     * @param height The height of the area being drawn on, in pixels.
+     */
+    public void begin(Graphics2D g, IRenderable renderable, Rectangle bounds, double scale, Rectangle viewport, int width, int height) {
+        this.g = g;
+        this.renderable = renderable;
+        this.bounds = bounds;
+        this.scale = scale;
+        this.viewport = viewport;
+        this.width = width;
+        this.height = height;
+        lineLength = 0;
+        lineEnd = -1;
+        markerCount = 0;
+
+        int words = (int) (((long) width * height + 63) / 64);
+        if(marked.length < words) {
+            marked = new long[words];
+        } else {
+            Arrays.fill(marked, 0, words, 0);
+        }
+
+        g.setColor(renderable.getColor());
+    }
+
+    /**
+     * Adds the line between two points of the path. It joins the current run of lines if it starts where the run ends.
+     * @param from The index of the point that the line starts at.
+     * @param to The index of the point that the line ends at.
+     * @return True if the line was added, false if it was skipped because a point can't be read or the line is off screen.
+     */
+    public boolean lineTo(int from, int to) {
+        double
+            x1 = renderable.x(from),
+            y1 = renderable.y(from),
+            x2 = renderable.x(to),
+            y2 = renderable.y(to);
+
+        if(Double.isNaN(x1) || Double.isNaN(x2) || (viewport != null && outside(x1, y1, x2, y2, viewport))) {
+            return false;
+        }
+
+        if(lineEnd != from) {
+            flushLine();
+            addLinePoint(screenX(x1), screenY(y1));
+        }
+
+        addLinePoint(screenX(x2), screenY(y2));
+        lineEnd = to;
+        return true;
+    }
+
+    /**
+     * Adds a marker on a point of the path.
+     * @param index The index of the point.
+     */
+    public void mark(int index) {
+        double
+            x = renderable.x(index),
+            y = renderable.y(index);
+
+        if(Double.isNaN(x) || (viewport != null && outside(x, y, x, y, viewport))) {
+            return;
+        }
+
+        int
+            screenX = screenX(x),
+            screenY = screenY(y);
+
+        if(screenX >= 0 && screenY >= 0 && screenX < width && screenY < height) {
+            int pixel = (screenY * width) + screenX;
+            long bit = 1L << pixel;
+            if((marked[pixel >>> 6] & bit) != 0) {
+                return; //an identical marker is already there
+            }
+
+            marked[pixel >>> 6] |= bit;
+        }
+
+        if(markerCount == markerXs.length) {
+            markerXs = Arrays.copyOf(markerXs, markerCount * 2);
+            markerYs = Arrays.copyOf(markerYs, markerCount * 2);
+        }
+
+        markerXs[markerCount] = screenX;
+        markerYs[markerCount] = screenY;
+        markerCount++;
+    }
+
+    /**
+     * Draws what is left of the lines, and then every marker.
+     */
+    public void finish() {
+        flushLine();
+        if(markerCount > 0) {
+            //stamp markers in device space, so that the stamp is never stretched on scaled screens
+            AffineTransform transform = g.getTransform();
+            updateStamp(renderable.getColor(), transform.getScaleX());
+            g.setTransform(new AffineTransform());
+            for(int i=0; i<markerCount; i++) {
+                int
+                    left = markerXs[i] - (Constants.POINT_MARK_DIAMETER / 2),
+                    top = markerYs[i] - (Constants.POINT_MARK_DIAMETER / 2);
+
+                g.drawImage(stamp, (int) Math.floor(transform.getTranslateX() + (left * transform.getScaleX())), (int) Math.floor(transform.getTranslateY() + (top * transform.getScaleY())), null);
+            }
+
+            g.setTransform(transform);
+        }
+
+        markerCount = 0;
+        g = null;
+        renderable = null;
+    }
+
+    /**
+     * Draws the current run of lines, and starts a new one.
+     */
+    private void flushLine() {
+        if(lineLength == 1) {
+            g.drawLine(lineXs[0], lineYs[0], lineXs[0], lineYs[0]); //every line in the run was shorter than a pixel
+        } else if(lineLength > 1) {
+            g.drawPolyline(lineXs, lineYs, lineLength);
+        }
+
+        lineLength = 0;
+        lineEnd = -1;
+    }
+
+    /**
+     * Adds a point to the current run of lines, unless it is on the same pixel as the last one.
+     * The run is drawn and carried on from its last point if the buffers are full.
+     */
+    private void addLinePoint(int x, int y) {
+        if(lineLength > 0 && lineXs[lineLength - 1] == x && lineYs[lineLength - 1] == y) {
+            return;
+        }
+
+        if(lineLength == lineXs.length) {
+            g.drawPolyline(lineXs, lineYs, lineLength);
+            lineXs[0] = lineXs[lineLength - 1];
+            lineYs[0] = lineYs[lineLength - 1];
+            lineLength = 1;
+        }
+
+        lineXs[lineLength] = x;
+        lineYs[lineLength] = y;
+        lineLength++;
+    }
+
+    /**
+     * Draws a new stamp if the color or the device scale has changed.
+     */
+    private void updateStamp(Color color, double deviceScale) {
+        if(stamp != null && color.equals(stampColor) && deviceScale == stampScale) {
+            return;
+        }
+
+        int size = Math.max(1, (int) Math.ceil(Constants.POINT_MARK_DIAMETER * deviceScale));
+        stamp = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D stampGraphics = stamp.createGraphics();
+        stampGraphics.scale(deviceScale, deviceScale);
+        stampGraphics.setColor(color);
+        stampGraphics.fillOval(0, 0, Constants.POINT_MARK_DIAMETER, Constants.POINT_MARK_DIAMETER);
+        stampGraphics.dispose();
+        stampColor = color;
+        stampScale = deviceScale;
+    }
+
+    /**
+     * Returns the screen X-coordinate of a path X-coordinate.
+     */
+    private int screenX(double x) {
+        return (int) (((x - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN);
+    }
+
+    /**
+     * Returns the screen Y-coordinate of a path Y-coordinate.
+     */
+    private int screenY(double y) {
+        return (int) (((y - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN);
+    }
+
+    /**
+     * Returns true if a line is entirely past one edge of a rectangle, so that it can't be seen in it.
+     * @param x1 The X-coordinate of the start of the line.
+     * @param y1 The Y-coordinate of the start of the line.
+     * @param x2 The X-coordinate of the end of the line.
+     * @param y2 The Y-coordinate of the end of the line.
+     * @param rectangle The rectangle.
+     */
+    private static boolean outside(double x1, double y1, double x2, double y2, Rectangle rectangle) {
+        return (x1 < rectangle.getX() && x2 < rectangle.getX())
+            || (y1 < rectangle.getY() && y2 < rectangle.getY())
+            || (x1 > rectangle.getMaxX() && x2 > rectangle.getMaxX())
+            || (y1 > rectangle.getMaxY() && y2 > rectangle.getMaxY());
+    }
+}
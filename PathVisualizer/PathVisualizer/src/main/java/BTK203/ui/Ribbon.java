@@ -6,6 +6,7 @@ import javax.swing.JLabel;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JProgressBar;
 import javax.swing.JTextField;
 import javax.swing.JToggleButton;
 import BTK203.App;
@@ -28,9 +29,11 @@ public class Ribbon extends JPanel {
 
     private JButton
         loadButton,
-        saveButton;
+        saveButton,
+        fitButton;
 
     private SocketWidget socketStatus;
+    private JProgressBar transferProgress;
 
     /**
      * Creates a new Ribbon.
@@ -102,6 +105,22 @@ public class Ribbon extends JPanel {
                 });
 
                 buttonPanel.add(saveButton);
+
+            //undoes any zooming and panning of the visualizer
+            fitButton = new JButton("Fit");
+                fitButton.addActionListener(new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        App.getManager().fitView();
+                    }
+                });
+
+                buttonPanel.add(fitButton);
+
+            //shows how far along a robot file transfer is. Hidden when nothing is transferring.
+            transferProgress = new JProgressBar();
+                transferProgress.setStringPainted(true);
+                transferProgress.setVisible(false);
+                buttonPanel.add(transferProgress);
                 
             add(buttonPanel);
 
@@ -155,6 +174,24 @@ public class Ribbon extends JPanel {
         socketStatus.update(socketConnecting, socketInitalized);
     }
 
+    /**
+     * Updates the transfer progress bar. The bar is hidden once the transfer is complete.
+     * @param name The name of the file being transferred.
+     * @param transferred The number of bytes transferred so far.
+     * @param total The size of the file. If this is not more than 0, the bar will be hidden.
+     */
+    public void setTransferProgress(String name, int transferred, int total) {
+        if(total <= 0 || transferred >= total) {
+            transferProgress.setVisible(false);
+            return;
+        }
+
+        transferProgress.setMaximum(total);
+        transferProgress.setValue(transferred);
+        transferProgress.setString(name + ": " + (int) (100L * transferred / total) + "%");
+        transferProgress.setVisible(true);
+    }
+
     /**
      * Gets the contents of the "IPv4 address" field.
      * @return The user's desired IP address.
@@ -156,7 +156,7 @@ public class RobotFileDialog extends JDialog {
 
     /**
      * Populates fileList by making contact with the robot and querying it's path files.
-     * This method should be run in a separate thread.
+     * The list is filled in when the robot replies, so this method returns right away.
      */
     private void populateList(String directory) {
         directoryBox.setText(directory);
@@ -166,13 +166,11 @@ public class RobotFileDialog extends JDialog {
             return;
         }
 
-        new Thread(
-            () -> {
-                fileSystem.setCurrentDirectory(directory);
-                String[] paths = fileSystem.onlyNames(fileSystem.getPaths()); //returns only the names of the files in the directory.
-                generateFileList(paths);
+        fileSystem.setCurrentDirectory(directory).thenAccept(paths -> {
+            if(directory.equals(fileSystem.getCurrentDirectory())) { //user may have moved on to another directory already
+                generateFileList(fileSystem.onlyNames(paths)); //only the names of the files in the directory.
             }
-        ).start();
+        });
     }
 
     /**
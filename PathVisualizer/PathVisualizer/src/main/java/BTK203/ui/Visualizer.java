@@ -1,13 +1,26 @@
 package BTK203.ui;
 
 import BTK203.util.IRenderable;
+import BTK203.util.Path;
+import BTK203.util.PathPyramid;
 import BTK203.util.Point2D;
+import BTK203.util.Position;
 import BTK203.util.Rectangle;
+import BTK203.util.SegmentGrid;
 import BTK203.Constants;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import java.awt.BorderLayout;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class that renders paths onto an area of the screen.
@@ -16,6 +29,24 @@ public class Visualizer extends JPanel {
     private static final long serialVersionUID = 1L;
     
     private ArrayList<IRenderable> renderables;
+    private Rectangle paintedBounds; //the bounds and scale of the last paint, for turning mouse positions into path coordinates
+    private double paintedScale;
+    private Rectangle sceneBounds; //the bounds of every visible renderable. Null when they have to be measured again
+    private BufferedImage staticLayer; //every visible path drawn over the background, so that they aren't drawn again every time the robot moves
+    private volatile boolean staticLayerStale; //set when renderables are added, removed, hidden or shown
+    private Rectangle layerBounds; //the bounds and scale that the layer was drawn with
+    private double layerScale;
+    private int[] layerSizes; //the number of points of each renderable that have been drawn onto the layer
+    private PolylineBatch batch; //draws the paths onto the layer
+    private boolean fitToScene; //true to fit everything on screen. False once the user has zoomed or panned
+    private double
+        viewX, //the path coordinates at the top left margin, and the number of pixels per path unit, when the user has zoomed or panned
+        viewY,
+        viewScale,
+        fittedScale; //the scale that fits the whole scene on screen, as of the last paint
+    private int
+        dragX, //where the mouse was when it was last pressed or dragged
+        dragY;
 
     /**
      * Creates a new Visualizer.
@@ -24,19 +55,165 @@ public class Visualizer extends JPanel {
         super(new BorderLayout());
         setMinimumSize(Constants.MINIMUM_VISUALIZER_SIZE);
         renderables = new ArrayList<IRenderable>();
+        paintedBounds = null;
+        paintedScale = 0;
+        sceneBounds = null;
+        staticLayer = null;
+        staticLayerStale = true;
+        layerSizes = new int[0];
+        batch = new PolylineBatch();
+        fitToScene = true;
+        setToolTipText(""); //registers with the tooltip manager. Nothing is shown until the mouse is over a point.
+        addMouseMotionListener(new MouseMotionAdapter() {
+            public void mouseMoved(MouseEvent e) {
+                setToolTipText(describePointAt(e.getX(), e.getY()));
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                panBy(e.getX() - dragX, e.getY() - dragY);
+                dragX = e.getX();
+                dragY = e.getY();
+            }
+        });
+
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragY = e.getY();
+            }
+
+            public void mouseClicked(MouseEvent e) {
+                if(e.getClickCount() == 2) {
+                    fitToScene();
+                }
+            }
+        });
+
+        addMouseWheelListener(new MouseWheelListener() {
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAt(e.getX(), e.getY(), Math.pow(Constants.ZOOM_STEP, -e.getPreciseWheelRotation()));
+            }
+        });
+    }
+
+    /**
+     * Goes back to fitting every visible renderable on screen, undoing any zooming and panning.
+     */
+    public void fitToScene() {
+        fitToScene = true;
+        repaint();
+    }
+
+    /**
+     * Zooms the view in or out, keeping the point under the mouse where it is.
+     * @param pixelX The X-coordinate of the mouse on the Visualizer.
+     * @param pixelY The Y-coordinate of the mouse on the Visualizer.
+     * @param factor How much to zoom in. Less than 1 zooms out.
+     */
+    public void zoomAt(int pixelX, int pixelY, double factor) {
+        if(!holdView()) {
+            return;
+        }
+
+        double
+            x = ((pixelX - Constants.DEFAULT_HORIZONTAL_MARGIN) / viewScale) + viewX,
+            y = ((pixelY - Constants.DEFAULT_VERTICAL_MARGIN) / viewScale) + viewY,
+            scale = Math.max(fittedScale * Constants.MIN_ZOOM, Math.min(fittedScale * Constants.MAX_ZOOM, viewScale * factor));
+
+        viewScale = scale;
+        viewX = x - ((pixelX - Constants.DEFAULT_HORIZONTAL_MARGIN) / scale);
+        viewY = y - ((pixelY - Constants.DEFAULT_VERTICAL_MARGIN) / scale);
+        repaint();
+    }
+
+    /**
+     * Moves the view, so that the paths move with the mouse.
+     * @param pixelsX How far to move the paths to the right, in pixels.
+     * @param pixelsY How far to move the paths down, in pixels.
+     */
+    public void panBy(int pixelsX, int pixelsY) {
+        if(!holdView()) {
+            return;
+        }
+
+        viewX -= pixelsX / viewScale;
+        viewY -= pixelsY / viewScale;
+        repaint();
+    }
+
+    /**
+     * Stops fitting the scene, keeping the view where it was last painted, so that it can be zoomed or panned from there.
+     * @return True if there is a view to hold, false if nothing has been painted yet.
+     */
+    private boolean holdView() {
+        if(fitToScene) {
+            if(paintedBounds == null || !(paintedScale > 0) || Double.isInfinite(paintedScale)) {
+                return false;
+            }
+
+            viewX = paintedBounds.getX();
+            viewY = paintedBounds.getY();
+            viewScale = paintedScale;
+            fitToScene = false;
+        }
+
+        return true;
     }
 
     /**
      * Adds the passed renderable to the list of renderables to render.
+     * Paths start building their segment grid in the background, for hit-testing. Big paths also build their level-of-detail pyramid,
+     * and are drawn in full until it is ready.
      * @param renderable The IRenderable to render.
      */
     public void render(IRenderable renderable) {
         if(renderable != null && renderable.isValid()) {
             renderables.add(renderable);
+            includeInScene(renderable);
+            staticLayerStale = true;
+            if(renderable instanceof Path) {
+                redrawWhenBuilt(((Path) renderable).buildSegmentGrid());
+            }
+
+            if(renderable instanceof Path && renderable.size() >= Constants.LOD_MIN_POINTS) {
+                redrawWhenBuilt(((Path) renderable).buildPyramid());
+            }
+
             repaint();
         }
     }
 
+    /**
+     * Catches up with points that were added to the end of a path being rendered: indexes the new segments,
+     * rebuilds the pyramid in the background if the path has outgrown it, and repaints.
+     * @param path The path that grew.
+     */
+    public void pathGrew(Path path) {
+        includeInScene(path); //paths only ever grow
+        path.buildSegmentGrid().thenAccept(SegmentGrid::update);
+        if(path.size() >= Constants.LOD_MIN_POINTS) {
+            redrawWhenBuilt(path.buildPyramid());
+        }
+
+        repaint();
+    }
+
+    /**
+     * Draws the layer of static paths again once a pyramid or segment grid has been built, because the layer was drawn without it.
+     * Builds that are already done are the ones the layer was drawn with, so nothing is redrawn for them.
+     * @param build The future of the build.
+     */
+    private void redrawWhenBuilt(CompletableFuture<?> build) {
+        if(build.isDone()) {
+            return;
+        }
+
+        build.thenRun(() -> {
+            staticLayerStale = true;
+            repaint();
+        });
+    }
+
     /**
      * Removes the passed renderable from the list of renderables to render.
      * @param renderable The IRenderable to stop rendering.
@@ -44,6 +221,7 @@ public class Visualizer extends JPanel {
     public void stopRendering(IRenderable renderable) {
         if(renderables.contains(renderable)) {
             renderables.remove(renderable);
+            invalidateScene();
             repaint();
         }
     }
@@ -53,6 +231,76 @@ public class Visualizer extends JPanel {
      */
     public void stopRenderingAll() {
         renderables.clear();
+        invalidateScene();
+    }
+
+    /**
+     * Catches up with a renderable that has moved, such as the robot position, and repaints it.
+     * The scene only has to be measured again if the renderable was on its edge, because then the scene might shrink.
+     * While the scene and view stay the same, only the area around the old and new places of the renderable is repainted; the rest is copied from the layer of static paths.
+     * The area is worked out on the event dispatch thread, which is the thread that paints, so it always matches what is on screen.
+     * @param renderable The renderable that moved.
+     * @param previousBounds The bounds of the renderable before it moved.
+     */
+    public synchronized void renderableMoved(IRenderable renderable, Rectangle previousBounds) {
+        if(!renderable.isVisible() || !renderables.contains(renderable)) {
+            return;
+        }
+
+        boolean sceneChanged = true;
+        if(sceneBounds != null) {
+            if(previousBounds == null || previousBounds.getX() <= sceneBounds.getX() || previousBounds.getY() <= sceneBounds.getY() || previousBounds.getMaxX() >= sceneBounds.getMaxX() || previousBounds.getMaxY() >= sceneBounds.getMaxY()) {
+                sceneBounds = null;
+            } else {
+                Rectangle grown = sceneBounds.union(renderable.getBounds());
+                sceneChanged = grown.getX() != sceneBounds.getX() || grown.getY() != sceneBounds.getY() || grown.getMaxX() != sceneBounds.getMaxX() || grown.getMaxY() != sceneBounds.getMaxY();
+                sceneBounds = grown;
+            }
+        }
+
+        boolean fitToChangedScene = sceneChanged;
+        Rectangle currentBounds = renderable.getBounds();
+        SwingUtilities.invokeLater(() -> {
+            if(fitToChangedScene && fitToScene) {
+                repaint(); //everything is about to be fitted to a different scene
+            } else {
+                repaintAround(previousBounds, currentBounds);
+            }
+        });
+    }
+
+    /**
+     * Repaints the part of the Visualizer that covers the marker of a dynamic renderable in two places, using the bounds and scale of the last paint.
+     * Must be called on the event dispatch thread.
+     * @param previousBounds The bounds of the renderable before it moved.
+     * @param currentBounds The bounds of the renderable now.
+     */
+    private void repaintAround(Rectangle previousBounds, Rectangle currentBounds) {
+        Rectangle bounds = paintedBounds;
+        double scale = paintedScale;
+        if(bounds == null || previousBounds == null || currentBounds == null) {
+            repaint();
+            return;
+        }
+
+        //the marker is drawn around the point, so leave room for all of it
+        Rectangle moved = previousBounds.union(currentBounds);
+        int padding = (Constants.STANDALONE_POINT_DIAMETER / 2) + 1;
+        double
+            left = ((moved.getX() - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN - padding,
+            top = ((moved.getY() - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN - padding,
+            right = ((moved.getMaxX() - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN + padding + 1,
+            bottom = ((moved.getMaxY() - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN + padding + 1;
+
+        if(right < 0 || bottom < 0 || left > getWidth() || top > getHeight()) {
+            return; //off screen both times
+        }
+
+        int
+            x = (int) Math.max(0, left),
+            y = (int) Math.max(0, top);
+
+        repaint(x, y, (int) Math.min(getWidth(), right) - x, (int) Math.min(getHeight(), bottom) - y);
     }
 
     /**
@@ -65,84 +313,302 @@ public class Visualizer extends JPanel {
 
     /**
      * Paints the object. This method called by Swing internal methods.
+     * Static paths are drawn from a cached layer, so moving the robot position costs about one image copy no matter how many paths are loaded.
      */
     public void paint(Graphics g) {
-        //fill in the background
-        g.setColor(Constants.SECONDARY_BACKGROUND);
-        g.fillRect(0, 0, getWidth(), getHeight());
-        g.setColor(Constants.PRIMARY_TEXT);
-
         if(renderables.size() == 0) {
+            //fill in the background
+            g.setColor(Constants.SECONDARY_BACKGROUND);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setColor(Constants.PRIMARY_TEXT);
             byte[] message = new String("Nothing to Draw!").getBytes();
             g.drawBytes(message, 0, message.length, 25, 25);
             return;
         }
 
         //figure out scale of rendering (pixels per unit)
-        Rectangle bounds = getBounds(renderables);
+        Rectangle bounds = getSceneBounds();
         double xScale = (getWidth() - (3 * Constants.DEFAULT_HORIZONTAL_MARGIN)) / bounds.getWidth();
         double yScale = (getHeight() - (3 * Constants.DEFAULT_VERTICAL_MARGIN)) / bounds.getHeight();
         double finalScale =  (xScale < yScale ? xScale : yScale); //the final scale is the smaller of the x and y scales
+        fittedScale = finalScale;
+        if(!fitToScene) {
+            //only the origin of the bounds is used for drawing. The rest describes what is on screen
+            finalScale = viewScale;
+            bounds = new Rectangle(viewX, viewY, (getWidth() - (3 * Constants.DEFAULT_HORIZONTAL_MARGIN)) / viewScale, (getHeight() - (3 * Constants.DEFAULT_VERTICAL_MARGIN)) / viewScale);
+        }
 
+        double deviceScale = (g instanceof Graphics2D ? ((Graphics2D) g).getTransform().getScaleX() : 1); //the layer is drawn at the screen's resolution, so it stays sharp on scaled displays
+        paintedBounds = bounds;
+        paintedScale = finalScale;
+
+        g.drawImage(updateStaticLayer(bounds, finalScale, deviceScale), 0, 0, getWidth(), getHeight(), null);
+
+        //things that change often are drawn over the layer every time
         for(int i=0; i<renderables.size(); i++) {
             IRenderable renderable = renderables.get(i);
             if(renderable.isVisible()) {
-                Point2D[] points = renderable.getPoints();
-                g.setColor(renderable.getColor());
-
-                if(points.length > 1) {
-                    for(int k=1; k<points.length; k++) {
-                        Point2D p1 = points[k-1];
-                        Point2D p2 = points[k];
-
-                        if(p1 == null || p2 == null) {
-                            continue;
-                        }
-                        
-                        //define locations of points in image space
-                        double 
-                            p1ImageX = ((p1.getX() - bounds.getX()) * finalScale) + Constants.DEFAULT_HORIZONTAL_MARGIN,
-                            p1ImageY = ((p1.getY() - bounds.getY()) * finalScale) + Constants.DEFAULT_VERTICAL_MARGIN,
-                            p2ImageX = ((p2.getX() - bounds.getX()) * finalScale) + Constants.DEFAULT_HORIZONTAL_MARGIN,
-                            p2ImageY = ((p2.getY() - bounds.getY()) * finalScale) + Constants.DEFAULT_VERTICAL_MARGIN;
-
-                        g.drawLine((int) p1ImageX, (int) p1ImageY, (int) p2ImageX, (int) p2ImageY);
-
-                        //highlight points with a filled circle
-                        int pointHighLightX = (int) p2ImageX - (Constants.POINT_MARK_DIAMETER / 2);
-                        int pointHighLightY = (int) p2ImageY - (Constants.POINT_MARK_DIAMETER / 2);
-                        g.fillOval(pointHighLightX, pointHighLightY, Constants.POINT_MARK_DIAMETER, Constants.POINT_MARK_DIAMETER);
-                    }
+                if(isDynamic(renderable)) {
+                    g.setColor(renderable.getColor());
+                    paintStandalonePoint(g, renderable, bounds, finalScale);
+                } else if(renderable.size() > 1) {
+                    paintEndpoints(g, renderable, bounds, finalScale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the layer of static paths up to date, and returns it.
+     * The layer is drawn again from scratch when renderables have been added, removed, hidden or shown, or the size, bounds or scale have changed.
+     * Otherwise, only points that have been appended to paths since the last paint are drawn onto it.
+     * @param bounds The bounds of everything being drawn.
+     * @param scale The number of pixels per path unit.
+     * @param deviceScale The number of screen pixels per pixel.
+     * @return The layer, which covers the whole Visualizer.
+     */
+    private BufferedImage updateStaticLayer(Rectangle bounds, double scale, double deviceScale) {
+        int width = Math.max(1, (int) Math.ceil(getWidth() * deviceScale));
+        int height = Math.max(1, (int) Math.ceil(getHeight() * deviceScale));
+        boolean redraw = staticLayerStale
+            || staticLayer == null
+            || staticLayer.getWidth() != width
+            || staticLayer.getHeight() != height
+            || layerScale != scale
+            || layerBounds.getX() != bounds.getX()
+            || layerBounds.getY() != bounds.getY()
+            || layerSizes.length != renderables.size();
+
+        staticLayerStale = false; //cleared before drawing, so that anything that changes while we draw is caught next time
+        Graphics2D layer = null;
+        if(redraw) {
+            if(staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height) {
+                staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+
+            layer = staticLayer.createGraphics();
+            layer.scale(deviceScale, deviceScale);
+            layer.setColor(Constants.SECONDARY_BACKGROUND);
+            layer.fillRect(0, 0, getWidth(), getHeight());
+            layerSizes = new int[renderables.size()];
+            layerBounds = bounds;
+            layerScale = scale;
+        }
+
+        //the part of the scene that is on screen, with room for point markers that poke in from outside
+        double
+            tolerance = Constants.LOD_PIXEL_TOLERANCE / scale, //how far a drawn point may be from its real place, in path units
+            overhang = Constants.STANDALONE_POINT_DIAMETER / scale,
+            viewportX = bounds.getX() - overhang - (Constants.DEFAULT_HORIZONTAL_MARGIN / scale),
+            viewportY = bounds.getY() - overhang - (Constants.DEFAULT_VERTICAL_MARGIN / scale);
+
+        Rectangle viewport = new Rectangle(viewportX, viewportY, (getWidth() / scale) + (2 * overhang), (getHeight() / scale) + (2 * overhang));
+        for(int i=0; i<layerSizes.length; i++) {
+            IRenderable renderable = renderables.get(i);
+            int pointCount = renderable.size();
+            if(!renderable.isVisible() || isDynamic(renderable) || pointCount <= layerSizes[i]) {
+                continue;
+            }
+
+            Rectangle renderableBounds = renderable.getBounds();
+            if(renderableBounds == null || !overlaps(renderableBounds, viewport)) {
+                layerSizes[i] = pointCount; //nothing to see
+                continue;
+            }
 
-                    //mark start point with special dot
-                    g.setColor(Constants.START_POINT_COLOR);
-                    int startMarkX = (int) ((points[0].getX() - bounds.getX()) * finalScale) + Constants.DEFAULT_HORIZONTAL_MARGIN;
-                    int startMarkY = (int) ((points[0].getY() - bounds.getY()) * finalScale) + Constants.DEFAULT_VERTICAL_MARGIN;
-                    int endpointRadius = Constants.ENDPOINT_MARK_DIAMETER / 2;
-                    startMarkX -= endpointRadius;
-                    startMarkY -= endpointRadius;
-                    g.fillOval(startMarkX, startMarkY, Constants.ENDPOINT_MARK_DIAMETER, Constants.ENDPOINT_MARK_DIAMETER);
-
-                    //mark end point with special dot
-                    g.setColor(Constants.END_POINT_COLOR);
-                    int endMarkX = (int) ((points[points.length - 1].getX() - bounds.getX()) * finalScale) + Constants.DEFAULT_HORIZONTAL_MARGIN;
-                    int endMarkY = (int) ((points[points.length - 1].getY() - bounds.getY()) * finalScale) + Constants.DEFAULT_VERTICAL_MARGIN;
-                    endMarkX -= endpointRadius;
-                    endMarkY -= endpointRadius;
-                    g.fillOval(endMarkX, endMarkY, Constants.ENDPOINT_MARK_DIAMETER, Constants.ENDPOINT_MARK_DIAMETER);
-                } else if(points.length == 1) {
-                    int 
-                        standalonePointRadius = Constants.STANDALONE_POINT_DIAMETER / 2,
-                        pointX = (int) ((points[0].getX() - bounds.getX()) * finalScale) + Constants.DEFAULT_HORIZONTAL_MARGIN,
-                        pointY = (int) ((points[0].getY() - bounds.getY()) * finalScale) + Constants.DEFAULT_VERTICAL_MARGIN;
-
-                    pointX -= standalonePointRadius;
-                    pointY -= standalonePointRadius;
-                    
-                    g.fillOval(pointX, pointY, Constants.STANDALONE_POINT_DIAMETER, Constants.STANDALONE_POINT_DIAMETER);
+            if(layer == null) {
+                layer = staticLayer.createGraphics();
+                layer.scale(deviceScale, deviceScale);
+            }
+
+            Rectangle cull = (contains(viewport, renderableBounds) ? null : viewport); //only look for segments to skip if some are off screen
+            if(layerSizes[i] > 0 || pointCount > 1) {
+                batch.begin(layer, renderable, bounds, scale, cull, getWidth(), getHeight());
+                if(layerSizes[i] > 0) {
+                    paintFull(renderable, layerSizes[i], pointCount); //points appended since the last paint
+                } else {
+                    PathPyramid pyramid = (renderable instanceof Path ? ((Path) renderable).getPyramid() : null);
+                    SegmentGrid grid = (renderable instanceof Path ? ((Path) renderable).getSegmentGrid() : null);
+                    int level = (pyramid != null ? pyramid.levelFor(tolerance) : -1);
+                    if(level >= 0) {
+                        paintSimplified(pyramid.getLine(level), pyramid.getMarkers(level));
+                        paintFull(renderable, pyramid.getSize(), pointCount); //points added since the pyramid was built
+                    } else if(cull != null && grid != null) {
+                        //zoomed in on part of the path. Only look at the segments on screen, however long the path is
+                        int indexedSize = grid.getIndexedSize();
+                        paintSegments(grid.query(viewport.getX(), viewport.getY(), viewport.getMaxX(), viewport.getMaxY()));
+                        paintFull(renderable, indexedSize, pointCount); //points added since the grid was updated
+                    } else {
+                        paintFull(renderable, 1, pointCount);
+                    }
                 }
+
+                batch.finish();
+            } else {
+                layer.setColor(renderable.getColor());
+                paintStandalonePoint(layer, renderable, bounds, scale);
+            }
+
+            layerSizes[i] = pointCount;
+        }
+
+        if(layer != null) {
+            layer.dispose();
+        }
+
+        return staticLayer;
+    }
+
+    /**
+     * Returns true if a renderable changes too often to be kept in the layer of static paths, like the robot position.
+     * @param renderable The renderable.
+     */
+    private boolean isDynamic(IRenderable renderable) {
+        return renderable instanceof Position;
+    }
+
+    /**
+     * Marks the start and end of a path with special dots.
+     * @param g The graphics to draw with.
+     * @param renderable The path to mark.
+     * @param bounds The bounds of everything being drawn.
+     * @param scale The number of pixels per path unit.
+     */
+    private void paintEndpoints(Graphics g, IRenderable renderable, Rectangle bounds, double scale) {
+        int pointCount = renderable.size();
+        int endpointRadius = Constants.ENDPOINT_MARK_DIAMETER / 2;
+
+        //mark start point with special dot
+        g.setColor(Constants.START_POINT_COLOR);
+        int startMarkX = (int) ((renderable.x(0) - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN;
+        int startMarkY = (int) ((renderable.y(0) - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN;
+        startMarkX -= endpointRadius;
+        startMarkY -= endpointRadius;
+        g.fillOval(startMarkX, startMarkY, Constants.ENDPOINT_MARK_DIAMETER, Constants.ENDPOINT_MARK_DIAMETER);
+
+        //mark end point with special dot
+        g.setColor(Constants.END_POINT_COLOR);
+        int endMarkX = (int) ((renderable.x(pointCount - 1) - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN;
+        int endMarkY = (int) ((renderable.y(pointCount - 1) - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN;
+        endMarkX -= endpointRadius;
+        endMarkY -= endpointRadius;
+        g.fillOval(endMarkX, endMarkY, Constants.ENDPOINT_MARK_DIAMETER, Constants.ENDPOINT_MARK_DIAMETER);
+    }
+
+    /**
+     * Draws a renderable that is only a single point, like the robot position.
+     * @param g The graphics to draw with, set to the renderable's color.
+     * @param renderable The renderable to draw.
+     * @param bounds The bounds of everything being drawn.
+     * @param scale The number of pixels per path unit.
+     */
+    private void paintStandalonePoint(Graphics g, IRenderable renderable, Rectangle bounds, double scale) {
+        int 
+            standalonePointRadius = Constants.STANDALONE_POINT_DIAMETER / 2,
+            pointX = (int) ((renderable.x(0) - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN,
+            pointY = (int) ((renderable.y(0) - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN;
+
+        pointX -= standalonePointRadius;
+        pointY -= standalonePointRadius;
+        
+        g.fillOval(pointX, pointY, Constants.STANDALONE_POINT_DIAMETER, Constants.STANDALONE_POINT_DIAMETER);
+    }
+
+    /**
+     * Adds the lines and point markers of part of a path to the batch.
+     * @param renderable The path being drawn.
+     * @param from The index of the first point to draw a line to. The line comes from the point before it.
+     * @param to The index after the last point to draw.
+     */
+    private void paintFull(IRenderable renderable, int from, int to) {
+        for(int k=Math.max(1, from); k<to; k++) {
+            if(batch.lineTo(k-1, k)) {
+                batch.mark(k);
+            }
+        }
+    }
+
+    /**
+     * Adds the lines and point markers of some of the segments of a path to the batch.
+     * @param segments The indices of the segments to draw. Segment i joins point i to point i + 1.
+     */
+    private void paintSegments(int[] segments) {
+        for(int i=0; i<segments.length; i++) {
+            if(batch.lineTo(segments[i], segments[i] + 1)) {
+                batch.mark(segments[i] + 1);
+            }
+        }
+    }
+
+    /**
+     * Adds the lines and point markers of a simplified level of a path to the batch, exactly like the full path is drawn but with fewer points.
+     * @param line The indices of the points to join with lines.
+     * @param markers The indices of the points to mark.
+     */
+    private void paintSimplified(int[] line, int[] markers) {
+        for(int k=1; k<line.length; k++) {
+            batch.lineTo(line[k-1], line[k]);
+        }
+
+        for(int k=0; k<markers.length; k++) {
+            batch.mark(markers[k]);
+        }
+    }
+
+    /**
+     * Returns true if two rectangles overlap.
+     */
+    private static boolean overlaps(Rectangle a, Rectangle b) {
+        return a.getX() <= b.getMaxX() && b.getX() <= a.getMaxX() && a.getY() <= b.getMaxY() && b.getY() <= a.getMaxY();
+    }
+
+    /**
+     * Returns true if the outer rectangle completely contains the inner one.
+     */
+    private static boolean contains(Rectangle outer, Rectangle inner) {
+        return inner.getX() >= outer.getX() && inner.getY() >= outer.getY() && inner.getMaxX() <= outer.getMaxX() && inner.getMaxY() <= outer.getMaxY();
+    }
+
+    /**
+     * Describes the point of a visible path that is under the mouse, using each path's segment grid.
+     * @param pixelX The X-coordinate of the mouse on the Visualizer.
+     * @param pixelY The Y-coordinate of the mouse on the Visualizer.
+     * @return The name of the path and the point, or null if there is no point within Constants.HOVER_DISTANCE pixels.
+     */
+    public String describePointAt(int pixelX, int pixelY) {
+        if(paintedBounds == null || !(paintedScale > 0)) {
+            return null;
+        }
+
+        double
+            x = ((pixelX - Constants.DEFAULT_HORIZONTAL_MARGIN) / paintedScale) + paintedBounds.getX(),
+            y = ((pixelY - Constants.DEFAULT_VERTICAL_MARGIN) / paintedScale) + paintedBounds.getY(),
+            closestDistance = Constants.HOVER_DISTANCE / paintedScale;
+
+        String description = null;
+        for(int i=0; i<renderables.size(); i++) {
+            IRenderable renderable = renderables.get(i);
+            SegmentGrid grid = (renderable instanceof Path ? ((Path) renderable).getSegmentGrid() : null);
+            if(!renderable.isVisible() || grid == null) {
+                continue;
+            }
+
+            int[] nearest = grid.nearest(x, y, 1);
+            if(nearest.length == 0 || grid.distanceTo(nearest[0], x, y) > closestDistance) {
+                continue;
             }
+
+            int segment = nearest[0];
+            double
+                startDistance = Math.hypot(renderable.x(segment) - x, renderable.y(segment) - y),
+                endDistance = Math.hypot(renderable.x(segment + 1) - x, renderable.y(segment + 1) - y);
+
+            int point = (startDistance <= endDistance ? segment : segment + 1);
+            closestDistance = grid.distanceTo(segment, x, y);
+            description = renderable.getName() + ", point " + point + ": " + new Point2D(renderable.x(point), renderable.y(point), renderable.heading(point)).toString();
         }
+
+        return description;
     }
 
     /**
@@ -154,56 +620,69 @@ public class Visualizer extends JPanel {
         for(int i=0; i<renderables.size(); i++) {
             if(renderables.get(i).equals(path)) {
                 renderables.get(i).setVisible(visible);
+                invalidateScene();
                 repaint();
             }
         }
     }
 
     /**
-     * Returns a Rectangle that denotes the bounds of the passed paths
-     * @param renderables A list of paths.
-     * @return A bounding rectangle that fits all points in paths.
+     * Returns a Rectangle that denotes the bounds of every visible renderable. It is only measured again after something has been removed,
+     * hidden or shown, or has moved in from the edge; otherwise it is grown as renderables are added.
+     * @return A bounding rectangle that fits all points in visible renderables.
      */
-    private Rectangle getBounds(ArrayList<IRenderable> renderables) {
-        double
-            smallestX = Double.MAX_VALUE,
-            greatestX = Double.MIN_VALUE,
-            smallestY = Double.MAX_VALUE,
-            greatestY = Double.MIN_VALUE;
+    private synchronized Rectangle getSceneBounds() {
+        if(sceneBounds == null) {
+            sceneBounds = measureScene();
+        }
 
-        for(int i=0; i<renderables.size(); i++) {
-            if(renderables.get(i).isVisible()) {
-                Point2D[] points = renderables.get(i).getPoints();
-                if(points == null) {
-                    continue;
-                }
+        return sceneBounds;
+    }
 
-                for(int k=0; k<points.length; k++) {
-                    if(points[k] == null) {
-                        continue;
-                    }
+    /**
+     * Grows the scene to fit a renderable that was added or grew.
+     * @param renderable The renderable.
+     */
+    private synchronized void includeInScene(IRenderable renderable) {
+        if(sceneBounds != null && renderable.isVisible()) {
+            sceneBounds = sceneBounds.union(renderable.getBounds());
+        }
+    }
 
-                    double
-                        x = points[k].getX(),
-                        y = points[k].getY();
+    /**
+     * Makes the scene be measured again before the next paint.
+     */
+    private synchronized void invalidateScene() {
+        sceneBounds = null;
+        staticLayerStale = true;
+    }
 
-                    if(x < smallestX) {
-                        smallestX = x;
-                    }
+    /**
+     * Measures the bounds of every visible renderable, from the bounds that each one keeps.
+     * @return A bounding rectangle that fits all points in visible renderables.
+     */
+    private Rectangle measureScene() {
+        double
+            smallestX = Double.MAX_VALUE,
+            greatestX = -Double.MAX_VALUE,
+            smallestY = Double.MAX_VALUE,
+            greatestY = -Double.MAX_VALUE;
 
-                    if(x > greatestX) {
-                        greatestX = x;
-                    }
+        for(int i=0; i<renderables.size(); i++) {
+            IRenderable renderable = renderables.get(i);
+            Rectangle bounds = (renderable.isVisible() ? renderable.getBounds() : null);
+            if(bounds == null) {
+                continue;
+            }
 
-                    if(y < smallestY) {
-                        smallestY = y;
-                    }
+            smallestX = Math.min(smallestX, bounds.getX());
+            greatestX = Math.max(greatestX, bounds.getMaxX());
+            smallestY = Math.min(smallestY, bounds.getY());
+            greatestY = Math.max(greatestY, bounds.getMaxY());
+        }
 
-                    if(y > greatestY) {
-                        greatestY = y;
-                    }
-                }
-            }
+        if(smallestX > greatestX) {
+            return new Rectangle(0, 0, 0, 0); //nothing is visible
         }
 
         //figure out the width and height and return
@@ -0,0 +1,276 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes the binary path format (.hptb), which stores points as raw doubles so they can be read, or memory-mapped, without any parsing.
+ * Everything is little-endian. The file starts with a fixed-size header:
+ * [magic (4 bytes)] [version (short)] [channel flags (short)] [point count (int)] [record size (int)] [min x] [min y] [max x] [max y]
+ * followed by one fixed-size record per point: [x] [y] [heading, if FLAG_HEADING is set]. All coordinates are doubles.
+ * The bounds only cover points that could be read. Points that could not be read are stored as NaN, so nothing is lost going from text to binary.
+ * Readers must use the record size from the header, so that later versions can add channels to the end of each record.
+ */
+public class BinaryPathFormat {
+    public static final byte[] MAGIC = { (byte) 0x89, 'H', 'P', 'B' }; //0x89 can never start a text point, so the formats can't be confused
+    public static final int
+        VERSION      = 1,
+        HEADER_SIZE  = 48,
+        FLAG_HEADING = 0x01; //records have a heading after x and y
+
+    private static final int
+        VERSION_OFFSET     = 4,
+        FLAGS_OFFSET       = 6,
+        COUNT_OFFSET       = 8,
+        RECORD_SIZE_OFFSET = 12,
+        BOUNDS_OFFSET      = 16,
+        WRITE_BUFFER_SIZE  = 8192;
+
+    /**
+     * Returns true if the data starts with the binary path magic.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     */
+    public static boolean isBinary(byte[] data, int offset, int length) {
+        if(length < MAGIC.length) {
+            return false;
+        }
+
+        for(int i=0; i<MAGIC.length; i++) {
+            if(data[offset + i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if a buffer starts with the binary path magic. The position of the buffer is not changed.
+     * @param buffer The buffer holding the file contents, from its position onwards.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        if(buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+
+        for(int i=0; i<MAGIC.length; i++) {
+            if(buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Encodes a renderable in the binary format.
+     * @param renderable The renderable to encode.
+     * @return The file contents.
+     */
+    public static byte[] toBytes(IRenderable renderable) {
+        int size = renderable.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (size * recordSize(FLAG_HEADING))).order(ByteOrder.LITTLE_ENDIAN);
+        putHeader(buffer, renderable);
+        for(int i=0; i<size; i++) {
+            putRecord(buffer, renderable, i);
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Writes a renderable in the binary format to a channel, such as a FileChannel, through a small buffer.
+     * @param renderable The renderable to write.
+     * @param channel Where to write it. Must be in blocking mode.
+     * @throws IOException If the channel can't be written to.
+     */
+    public static void write(IRenderable renderable, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        putHeader(buffer, renderable);
+        int size = renderable.size();
+        for(int i=0; i<size; i++) {
+            if(buffer.remaining() < recordSize(FLAG_HEADING)) {
+                flush(buffer, channel);
+            }
+
+            putRecord(buffer, renderable, i);
+        }
+
+        flush(buffer, channel);
+    }
+
+    /**
+     * Creates a new Path from the contents of a binary path file.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     * @param name The name of the path.
+     * @param color The color of the path.
+     * @return A Path containing the points in the file, or null if the file is not a valid binary path.
+     */
+    public static Path fromBytes(byte[] data, int offset, int length, String name, Color color) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+        int count = checkHeader(buffer, name);
+        if(count < 0) {
+            return null;
+        }
+
+        int recordSize = getRecordSize(buffer);
+        boolean hasHeading = (getFlags(buffer) & FLAG_HEADING) != 0;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] headings = new double[count];
+        for(int i=0; i<count; i++) {
+            int record = HEADER_SIZE + (i * recordSize);
+            xs[i] = buffer.getDouble(record);
+            ys[i] = buffer.getDouble(record + 8);
+            headings[i] = (hasHeading ? buffer.getDouble(record + 16) : 0);
+        }
+
+        return new Path(xs, ys, headings, color, name);
+    }
+
+    /**
+     * Checks that a buffer holds a binary path that this version can read, and that it is long enough for all of its points.
+     * Problems are printed to the console.
+     * @param buffer The file contents, starting at index 0, in little-endian order.
+     * @param name The name of the file, for error messages.
+     * @return The number of points in the file, or -1 if it can't be read.
+     */
+    static int checkHeader(ByteBuffer buffer, String name) {
+        if(buffer.limit() < HEADER_SIZE || !isBinary(buffer)) {
+            System.out.println(name + ": not a binary path file.");
+            return -1;
+        }
+
+        int version = buffer.getShort(VERSION_OFFSET) & 0xFFFF;
+        if(version > VERSION) {
+            System.out.println(name + ": binary path version " + version + " is newer than this program understands (" + VERSION + ").");
+            return -1;
+        }
+
+        int count = buffer.getInt(COUNT_OFFSET);
+        int recordSize = getRecordSize(buffer);
+        if(count < 0 || recordSize < recordSize(getFlags(buffer)) || (long) HEADER_SIZE + ((long) count * recordSize) > buffer.limit()) {
+            System.out.println(name + ": binary path file is corrupted or cut short.");
+            return -1;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the channel flags from a binary path header.
+     * @param buffer The file contents, starting at index 0, in little-endian order.
+     */
+    static int getFlags(ByteBuffer buffer) {
+        return buffer.getShort(FLAGS_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Returns the record size from a binary path header.
+     * @param buffer The file contents, starting at index 0, in little-endian order.
+     */
+    static int getRecordSize(ByteBuffer buffer) {
+        return buffer.getInt(RECORD_SIZE_OFFSET);
+    }
+
+    /**
+     * Returns the bounds stored in a binary path header, or null if no point could be read.
+     * @param buffer The file contents, starting at index 0, in little-endian order.
+     */
+    static Rectangle getBounds(ByteBuffer buffer) {
+        double
+            minX = buffer.getDouble(BOUNDS_OFFSET),
+            minY = buffer.getDouble(BOUNDS_OFFSET + 8),
+            maxX = buffer.getDouble(BOUNDS_OFFSET + 16),
+            maxY = buffer.getDouble(BOUNDS_OFFSET + 24);
+
+        if(Double.isNaN(minX)) {
+            return null;
+        }
+
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Returns the size of a record with the given channels.
+     * @param flags The channel flags.
+     */
+    private static int recordSize(int flags) {
+        return 16 + ((flags & FLAG_HEADING) != 0 ? 8 : 0);
+    }
+
+    /**
+     * Writes the header for a renderable, working out its bounds.
+     * @param buffer The buffer to write to, which must have room for the header.
+     * @param renderable The renderable being written.
+     */
+    private static void putHeader(ByteBuffer buffer, IRenderable renderable) {
+        double
+            minX = Double.NaN,
+            minY = Double.NaN,
+            maxX = Double.NaN,
+            maxY = Double.NaN;
+
+        int size = renderable.size();
+        for(int i=0; i<size; i++) {
+            double x = renderable.x(i);
+            double y = renderable.y(i);
+            if(Double.isNaN(x)) {
+                continue;
+            }
+
+            if(Double.isNaN(minX)) {
+                minX = maxX = x;
+                minY = maxY = y;
+            } else {
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+        }
+
+        buffer.put(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) FLAG_HEADING);
+        buffer.putInt(size);
+        buffer.putInt(recordSize(FLAG_HEADING));
+        buffer.putDouble(minX);
+        buffer.putDouble(minY);
+        buffer.putDouble(maxX);
+        buffer.putDouble(maxY);
+    }
+
+    /**
+     * Writes the record for one point.
+     * @param buffer The buffer to write to, which must have room for the record.
+     * @param renderable The renderable being written.
+     * @param index The index of the point.
+     */
+    private static void putRecord(ByteBuffer buffer, IRenderable renderable, int index) {
+        buffer.putDouble(renderable.x(index));
+        buffer.putDouble(renderable.y(index));
+        buffer.putDouble(renderable.heading(index));
+    }
+
+    /**
+     * Writes everything in a buffer to a channel and empties it.
+     * @param buffer The buffer to write.
+     * @param channel The channel to write to.
+     */
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
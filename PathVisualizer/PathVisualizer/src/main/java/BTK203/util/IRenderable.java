@@ -4,12 +4,27 @@ import java.awt.Color;
 
 /**
  * This interface should be implemented by anything that can be rendered by the {@code Visualizer}.
+ * Points are read one coordinate at a time through size(), x(), y() and heading(), so that renderers never need to create Point2D objects.
+ * A point that could not be read has NaN coordinates, and should be skipped.
  */
 public interface IRenderable {
     public Point2D[] getPoints();
+    public int       size();
+    public double    x(int index);
+    public double    y(int index);
+    public double    heading(int index);
     public Color     getColor();
     public boolean   isVisible();
     public boolean   isValid();
     public void      setVisible(boolean visible);
     public String    getName();
+
+    /**
+     * Returns the smallest rectangle that contains every point. Implementations should remember this rather than measure it every time,
+     * because the Visualizer asks for it whenever the scene changes.
+     * @return The bounds, or null if no point could be read.
+     */
+    public default Rectangle getBounds() {
+        return Rectangle.around(this);
+    }
 }
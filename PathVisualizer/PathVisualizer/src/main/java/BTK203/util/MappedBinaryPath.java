@@ -0,0 +1,120 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A Path that reads its points straight out of a memory-mapped binary path file (.hptb).
+ * Records have a fixed size, so any point can be read directly from the map without parsing or indexing, and opening the file only reads its header.
+ * Reads don't change any state, so a MappedBinaryPath can be read from any thread.
+ */
+public class MappedBinaryPath extends Path {
+    private MappedByteBuffer map;
+    private int
+        size,
+        recordSize;
+
+    private boolean
+        hasHeading,
+        valid;
+
+    private Rectangle bounds;
+
+    /**
+     * Opens a binary path file.
+     * @param file The path to the file to read from.
+     * @param color The color of the path.
+     */
+    public MappedBinaryPath(String file, Color color) {
+        super(color, Path.fileName(file));
+        this.size = 0;
+        this.recordSize = 0;
+        this.hasHeading = false;
+        this.valid = false;
+        this.bounds = null;
+
+        try(FileChannel channel = FileChannel.open(java.nio.file.Path.of(file), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if(length > Integer.MAX_VALUE) {
+                System.out.println("Path file is too big to open: " + file);
+                return;
+            }
+
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length); //the mapping stays valid after the channel is closed
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            int count = BinaryPathFormat.checkHeader(map, getName());
+            if(count < 0) {
+                return;
+            }
+
+            size = count;
+            recordSize = BinaryPathFormat.getRecordSize(map);
+            hasHeading = (BinaryPathFormat.getFlags(map) & BinaryPathFormat.FLAG_HEADING) != 0;
+            bounds = BinaryPathFormat.getBounds(map);
+            valid = true;
+        } catch(IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the number of points in the Path, including ones that could not be read.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the X-coordinate of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public double x(int index) {
+        return map.getDouble(recordOffset(index));
+    }
+
+    /**
+     * Returns the Y-coordinate of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public double y(int index) {
+        return map.getDouble(recordOffset(index) + 8);
+    }
+
+    /**
+     * Returns the heading of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public double heading(int index) {
+        return (hasHeading ? map.getDouble(recordOffset(index) + 16) : 0);
+    }
+
+    /**
+     * Returns the bounds stored in the file's header, or null if no point could be read.
+     */
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns true if the file could be opened, false otherwise.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Returns the byte offset of a point's record in the file.
+     * @param index The index of the point.
+     */
+    private int recordOffset(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Point " + index + " is out of bounds for a path of " + size + " points");
+        }
+
+        return BinaryPathFormat.HEADER_SIZE + (index * recordSize);
+    }
+}
@@ -0,0 +1,217 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import BTK203.Constants;
+
+/**
+ * A Path that reads its points straight out of a memory-mapped path file, a block at a time, as they are asked for.
+ * Opening the file only scans it once to find where each block of points starts, so it takes about as long as reading the file from disk.
+ * The heap only ever holds that index and a few parsed blocks, no matter how big the file is. The file itself stays in the operating system's page cache.
+ * Blocks are parsed again when they fall out of the cache, so walking the whole path costs about as much as parsing it.
+ * Points are read through a shared cache, so reads are synchronized. That lets its pyramid be built in the background while it is being drawn.
+ */
+public class MappedPath extends Path {
+    private static final int BLOCK_SIZE = Constants.MAPPED_PATH_BLOCK_SIZE;
+    private static final int SCAN_CHUNK_SIZE = 65536;
+
+    private MappedByteBuffer map;
+    private int size;
+    private int[] blockOffsets; //byte offset of the first line of each block, followed by the end of the last line
+    private int[] cachedBlocks; //the block held in each cache slot, or -1 if the slot is empty
+    private double[][]
+        cachedXs,
+        cachedYs,
+        cachedHeadings;
+
+    private byte[] blockBytes; //the text of the block being parsed
+    private PointParser parser;
+    private boolean valid;
+
+    /**
+     * Opens a path file and indexes it. No points are parsed until they are asked for.
+     * @param file The path to the file to read from.
+     * @param color The color of the path.
+     */
+    public MappedPath(String file, Color color) {
+        super(color, Path.fileName(file));
+        this.size = 0;
+        this.valid = false;
+        this.blockOffsets = new int[] { 0, 0 };
+        this.cachedBlocks = new int[Constants.MAPPED_PATH_CACHED_BLOCKS];
+        this.cachedXs = new double[cachedBlocks.length][];
+        this.cachedYs = new double[cachedBlocks.length][];
+        this.cachedHeadings = new double[cachedBlocks.length][];
+        this.blockBytes = new byte[0];
+        this.parser = new PointParser();
+        for(int i=0; i<cachedBlocks.length; i++) {
+            cachedBlocks[i] = -1;
+        }
+
+        try(FileChannel channel = FileChannel.open(java.nio.file.Path.of(file), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if(length > Integer.MAX_VALUE) {
+                System.out.println("Path file is too big to open: " + file);
+                return;
+            }
+
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length); //the mapping stays valid after the channel is closed
+            buildIndex((int) length);
+            valid = true;
+        } catch(IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the number of points in the Path, including ones that could not be read.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the X-coordinate of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public synchronized double x(int index) {
+        return cachedXs[slotOf(index)][index % BLOCK_SIZE];
+    }
+
+    /**
+     * Returns the Y-coordinate of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public synchronized double y(int index) {
+        return cachedYs[slotOf(index)][index % BLOCK_SIZE];
+    }
+
+    /**
+     * Returns the heading of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public synchronized double heading(int index) {
+        return cachedHeadings[slotOf(index)][index % BLOCK_SIZE];
+    }
+
+    /**
+     * Returns true if the file could be opened, false otherwise.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Scans the file for line breaks, counting the points and noting where each block of them starts.
+     * Lines are split the same way as Path.fromBytes(), so trailing empty lines are ignored.
+     * @param length The length of the file.
+     */
+    private void buildIndex(int length) {
+        int end = length;
+        while(end > 0 && map.get(end - 1) == '\n') {
+            end--;
+        }
+
+        int[] offsets = new int[16];
+        int blocks = 1; //the first block starts at 0
+        int lines = (end > 0 || length == 0 ? 1 : 0); //like String.split(), an empty file is one empty line
+        byte[] chunk = new byte[SCAN_CHUNK_SIZE]; //copying the file out in chunks is much faster than reading the map a byte at a time
+        ByteBuffer view = map.duplicate();
+        for(int chunkStart=0; chunkStart<end; chunkStart+=chunk.length) {
+            int chunkLength = Math.min(chunk.length, end - chunkStart);
+            view.get(chunk, 0, chunkLength);
+            for(int i=0; i<chunkLength; i++) {
+                if(chunk[i] != '\n') {
+                    continue;
+                }
+
+                if(lines % BLOCK_SIZE == 0) {
+                    if(blocks + 1 >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+
+                    offsets[blocks++] = chunkStart + i + 1;
+                }
+
+                lines++;
+            }
+        }
+
+        offsets[blocks] = end;
+        blockOffsets = Arrays.copyOf(offsets, blocks + 1);
+        size = lines;
+    }
+
+    /**
+     * Returns the cache slot holding a point, parsing its block first if needed.
+     * @param index The index of the point.
+     */
+    private int slotOf(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Point " + index + " is out of bounds for a path of " + size + " points");
+        }
+
+        int block = index / BLOCK_SIZE;
+        int slot = block % cachedBlocks.length;
+        if(cachedBlocks[slot] != block) {
+            loadBlock(block, slot);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Parses a block of points into a cache slot.
+     * @param block The index of the block.
+     * @param slot The slot to put it in.
+     */
+    private void loadBlock(int block, int slot) {
+        if(cachedXs[slot] == null) {
+            cachedXs[slot] = new double[BLOCK_SIZE];
+            cachedYs[slot] = new double[BLOCK_SIZE];
+            cachedHeadings[slot] = new double[BLOCK_SIZE];
+        }
+
+        int start = blockOffsets[block];
+        int length = blockOffsets[block + 1] - start;
+        if(blockBytes.length < length) {
+            blockBytes = new byte[length];
+        }
+
+        ByteBuffer view = map.duplicate();
+        view.position(start);
+        view.get(blockBytes, 0, length);
+
+        double[] xs = cachedXs[slot];
+        double[] ys = cachedYs[slot];
+        double[] headings = cachedHeadings[slot];
+        int count = Math.min(BLOCK_SIZE, size - (block * BLOCK_SIZE));
+        int lineStart = 0;
+        for(int p=0; p<count; p++) {
+            int lineEnd = lineStart;
+            while(lineEnd < length && blockBytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            if(parser.parse(blockBytes, lineStart, lineEnd)) {
+                xs[p] = parser.getX();
+                ys[p] = parser.getY();
+                headings[p] = parser.getHeading();
+            } else {
+                xs[p] = Double.NaN;
+                ys[p] = Double.NaN;
+                headings[p] = Double.NaN;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        cachedBlocks[slot] = block;
+    }
+}
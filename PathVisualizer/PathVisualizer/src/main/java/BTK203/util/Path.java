@@ -1,7 +1,11 @@
 package BTK203.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 import BTK203.Constants;
 
@@ -11,10 +15,21 @@ import java.awt.Color;
  * Represents a Path that can be rendered on the screen.
  */
 public class Path implements IRenderable {
-    private static final int MAX_ALLOWED_NULL_POINTS = 5;
+    static final int MAX_ALLOWED_NULL_POINTS = 5;
     private static float currentHue = 0;
 
-    private Point2D[] points;
+    private double[]
+        xs,
+        ys,
+        headings;
+
+    private volatile int size; //the columns may be longer than this, so that append() has room to grow
+    private Point2D[] pointsView; //built the first time getPoints() is called
+    private PathPyramid pyramid; //the last pyramid that finished building
+    private CompletableFuture<PathPyramid> pyramidBuild; //started the first time buildPyramid() is called
+    private CompletableFuture<SegmentGrid> segmentGrid; //started the first time buildSegmentGrid() is called
+    private Rectangle bounds; //measured the first time getBounds() is called, then grown by append()
+    private boolean boundsMeasured;
     private Color color;
     private boolean
         valid,
@@ -28,18 +43,15 @@ public class Path implements IRenderable {
      * @param color The color of the path.
      */
     public Path(String file, Color color) {
-        this.name = file.substring(file.lastIndexOf('\\') + 1); //name is JUST the file name, not the absolute file path.
+        this.name = fileName(file);
         this.color = color;
         this.valid = false;
         this.visible = true;
+        setColumns(new double[0], new double[0], new double[0]);
         try {
-            String fileContents = Files.readString(java.nio.file.Path.of(file));
-            String[] pointStrings = fileContents.split("\n");
-            points = new Point2D[pointStrings.length];
-            for(int i=0; i<pointStrings.length; i++) {
-                points[i] = Point2D.fromString(pointStrings[i]);
-            }
-
+            byte[] fileContents = Files.readAllBytes(java.nio.file.Path.of(file));
+            double[][] columns = PathParser.parse(fileContents, 0, fileContents.length, name, Integer.MAX_VALUE);
+            setColumns(columns[0], columns[1], columns[2]);
             valid = true;
         } catch (IOException ex) {
             ex.printStackTrace();
@@ -50,11 +62,21 @@ public class Path implements IRenderable {
 
     /**
      * Creates a new Path.
-     * @param points An array of points describing the path.
+     * @param points An array of points describing the path. Null points are kept as points with NaN coordinates.
      * @param color The color of the path.
      */
     public Path(Point2D[] points, Color color, String name) {
-        this.points = points;
+        double[] xs = new double[points.length];
+        double[] ys = new double[points.length];
+        double[] headings = new double[points.length];
+        for(int i=0; i<points.length; i++) {
+            Point2D point = points[i];
+            xs[i] = (point == null ? Double.NaN : point.getX());
+            ys[i] = (point == null ? Double.NaN : point.getY());
+            headings[i] = (point == null ? Double.NaN : point.getHeading());
+        }
+
+        setColumns(xs, ys, headings);
         this.color = color;
         this.name = name;
         this.valid = points.length > 0;
@@ -62,12 +84,185 @@ public class Path implements IRenderable {
     }
 
     /**
-     * Returns the Path's points.
+     * Creates a new Path from columns of coordinates. The arrays are used as-is, not copied.
+     * @param xs The X-coordinates of the points.
+     * @param ys The Y-coordinates of the points. Must be the same length as xs.
+     * @param headings The headings of the points. Must be the same length as xs.
+     * @param color The color of the path.
+     * @param name The name of the path.
+     */
+    public Path(double[] xs, double[] ys, double[] headings, Color color, String name) {
+        setColumns(xs, ys, headings);
+        this.color = color;
+        this.name = name;
+        this.valid = xs.length > 0;
+        this.visible = true;
+    }
+
+    /**
+     * Creates a new Path whose points are supplied by a subclass, which must override size(), x(), y(), heading() and isValid().
+     * @param color The color of the path.
+     * @param name The name of the path.
+     */
+    protected Path(Color color, String name) {
+        setColumns(new double[0], new double[0], new double[0]);
+        this.color = color;
+        this.name = name;
+        this.valid = false;
+        this.visible = true;
+    }
+
+    /**
+     * Returns the Path's points. The array is built from the coordinates the first time it is asked for, so prefer size(), x(), y() and heading() where possible.
+     * Points that could not be read are null.
      */
     public Point2D[] getPoints() {
+        Point2D[] points = pointsView;
+        if(points == null) {
+            points = new Point2D[size()];
+            for(int i=0; i<points.length; i++) {
+                double x = x(i);
+                if(!Double.isNaN(x)) {
+                    points[i] = new Point2D(x, y(i), heading(i));
+                }
+            }
+
+            pointsView = points;
+        }
+
         return points;
     }
 
+    /**
+     * Returns the number of points in the Path, including ones that could not be read.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the X-coordinate of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public double x(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the Y-coordinate of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public double y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Returns the heading of a point, or NaN if the point could not be read.
+     * @param index The index of the point.
+     */
+    public double heading(int index) {
+        return headings[index];
+    }
+
+    /**
+     * Starts building the Path's level-of-detail pyramid on the common ForkJoinPool, if it hasn't been started already.
+     * A path that has grown to twice the size of its pyramid gets a new one, so a growing path is rebuilt a logarithmic number of times.
+     * Until the new one is ready, getPyramid() returns the old one, which covers the start of the path.
+     * @return A future that completes with the pyramid once it is built.
+     */
+    public synchronized CompletableFuture<PathPyramid> buildPyramid() {
+        boolean outgrown = (pyramid != null && size() >= pyramid.getSize() * 2);
+        if(pyramidBuild == null || (outgrown && pyramidBuild.isDone())) {
+            pyramidBuild = CompletableFuture.supplyAsync(() -> new PathPyramid(this)).thenApply(built -> {
+                synchronized(this) {
+                    pyramid = built;
+                }
+
+                return built;
+            });
+        }
+
+        return pyramidBuild;
+    }
+
+    /**
+     * Returns the Path's level-of-detail pyramid, or null if it hasn't finished building. It may cover fewer points than the path has, if the path has grown.
+     */
+    public synchronized PathPyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * Adds points to the end of the Path, growing its columns by half again whenever they fill up, so that adding a point takes amortized constant time.
+     * Paths that are being drawn can be appended to from any thread: size() only grows once the new points are in place, so a reader that asks for size() first
+     * always sees whole points. Paths read from a mapped file can't be appended to.
+     * @param points The points to add. Points that could not be read are added as they are, and break the path.
+     */
+    public synchronized void append(IRenderable points) {
+        int count = points.size();
+        int oldSize = size;
+        int newSize = oldSize + count;
+        double[] xs = this.xs;
+        double[] ys = this.ys;
+        double[] headings = this.headings;
+        if(newSize > xs.length) {
+            int capacity = Math.max(newSize, xs.length + (xs.length >> 1) + 16);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            headings = Arrays.copyOf(headings, capacity);
+        }
+
+        for(int i=0; i<count; i++) {
+            xs[oldSize + i] = points.x(i);
+            ys[oldSize + i] = points.y(i);
+            headings[oldSize + i] = points.heading(i);
+        }
+
+        this.xs = xs;
+        this.ys = ys;
+        this.headings = headings;
+        this.pointsView = null;
+        if(boundsMeasured) {
+            Rectangle added = Rectangle.around(points);
+            bounds = (bounds == null ? added : bounds.union(added));
+        }
+
+        this.valid = (valid || newSize > 0);
+        this.size = newSize; //publishes everything above
+    }
+
+    /**
+     * Returns the smallest rectangle that contains every point of the Path. It is measured once, and kept up to date as points are appended.
+     * @return The bounds, or null if no point could be read.
+     */
+    public synchronized Rectangle getBounds() {
+        if(!boundsMeasured) {
+            bounds = Rectangle.around(this);
+            boundsMeasured = true;
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Starts building the Path's segment grid on the common ForkJoinPool, if it hasn't been started already.
+     * @return A future that completes with the grid once it is built.
+     */
+    public synchronized CompletableFuture<SegmentGrid> buildSegmentGrid() {
+        if(segmentGrid == null) {
+            segmentGrid = CompletableFuture.supplyAsync(() -> new SegmentGrid(this));
+        }
+
+        return segmentGrid;
+    }
+
+    /**
+     * Returns the Path's segment grid, or null if it hasn't finished building.
+     */
+    public synchronized SegmentGrid getSegmentGrid() {
+        return (segmentGrid == null ? null : segmentGrid.getNow(null));
+    }
+
     /**
      * Returns true if this Path was initalized correctly, false otherwise.
      */
@@ -113,16 +308,59 @@ public class Path implements IRenderable {
     }
 
     /**
-     * Converts the Path into a user (and computer) readable String.
+     * Converts the Path into a user (and computer) readable String. To write a Path to a file or the network, use a PathWriter instead.
      * @return The string representation of the Path.
      */
     public String toString() {
-        String pathString = "";
-        for(Point2D point : points) {
-            pathString += point.toString() + "\n";
+        int size = size();
+        StringBuilder pathString = new StringBuilder(size * 24);
+        for(int i=0; i<size; i++) {
+            double x = x(i);
+            if(Double.isNaN(x)) {
+                continue; //the point could not be read, so there is nothing to write
+            }
+
+            PathWriter.appendPoint(pathString, x, y(i), heading(i));
+            pathString.append('\n');
         }
 
-        return pathString;
+        return pathString.toString();
+    }
+
+    /**
+     * Opens a path file, in either the text (.hpt) or the binary (.hptb) format.
+     * Files bigger than Constants.MAPPED_PATH_THRESHOLD are memory-mapped and read lazily, so they open quickly and don't fill the heap.
+     * @param file The path to the file to read from.
+     * @param color The color of the path.
+     * @return The Path. Check isValid() to see if the file could be read.
+     */
+    public static Path fromFile(String file, Color color) {
+        java.nio.file.Path location = java.nio.file.Path.of(file);
+        try {
+            boolean big = Files.size(location) > Constants.MAPPED_PATH_THRESHOLD;
+            byte[] magic;
+            try(InputStream input = Files.newInputStream(location)) {
+                magic = input.readNBytes(BinaryPathFormat.MAGIC.length);
+            }
+
+            if(BinaryPathFormat.isBinary(magic, 0, magic.length)) {
+                if(big) {
+                    return new MappedBinaryPath(file, color);
+                }
+
+                byte[] contents = Files.readAllBytes(location);
+                Path path = BinaryPathFormat.fromBytes(contents, 0, contents.length, fileName(file), color);
+                return (path != null ? path : new Path(color, fileName(file)));
+            }
+
+            if(big) {
+                return new MappedPath(file, color);
+            }
+        } catch(IOException ex) {
+            //the text constructor will report it
+        }
+
+        return new Path(file, color);
     }
 
     /**
@@ -131,20 +369,66 @@ public class Path implements IRenderable {
      * @return A Path containing the information in the String.
      */
     public static Path fromString(String string, String name) {
-        String[] pointStrings = string.split("\n");
-        Point2D[] points = new Point2D[pointStrings.length];
-        int nullPoints = 0;
-        for(int p=0; p<points.length; p++) {
-            points[p] = Point2D.fromString(pointStrings[p]);
-            if(points[p] == null) {
-                nullPoints++;
-                if(nullPoints > MAX_ALLOWED_NULL_POINTS) {
-                    return null;
-                }
-            }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        return fromBytes(bytes, 0, bytes.length, name);
+    }
+
+    /**
+     * Creates a new Path straight from the raw contents of a path file, without turning the whole thing into a String first.
+     * Binary (.hptb) files are recognized by their magic. For text files, lines are split the same way as fromString(), so trailing empty lines are ignored.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     * @param name The name of the path.
+     * @return A Path containing the information in the data, or null if too many lines were invalid or the binary file is corrupted.
+     */
+    public static Path fromBytes(byte[] data, int offset, int length, String name) {
+        return fromBytes(data, offset, length, name, null);
+    }
+
+    /**
+     * Creates a new Path straight from the raw contents of a path file, in either format, with a chosen color.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     * @param name The name of the path.
+     * @param color The color of the path, or null to give it the next color.
+     * @return A Path containing the information in the data, or null if too many lines were invalid or the binary file is corrupted.
+     */
+    public static Path fromBytes(byte[] data, int offset, int length, String name, Color color) {
+        if(BinaryPathFormat.isBinary(data, offset, length)) {
+            return BinaryPathFormat.fromBytes(data, offset, length, name, (color != null ? color : Path.getNextColor()));
         }
 
-        return new Path(points, Path.getNextColor(), name);
+        double[][] columns = PathParser.parse(data, offset, length, name, MAX_ALLOWED_NULL_POINTS);
+        if(columns == null) {
+            return null;
+        }
+
+        return new Path(columns[0], columns[1], columns[2], (color != null ? color : Path.getNextColor()), name);
+    }
+
+    /**
+     * Returns the name of a path file, which is JUST the file name, not the absolute file path.
+     * @param file The path to the file.
+     */
+    static String fileName(String file) {
+        return file.substring(file.lastIndexOf('\\') + 1);
+    }
+
+    /**
+     * Replaces the coordinates of the Path.
+     * @param xs The X-coordinates of the points.
+     * @param ys The Y-coordinates of the points.
+     * @param headings The headings of the points.
+     */
+    private void setColumns(double[] xs, double[] ys, double[] headings) {
+        this.xs = xs;
+        this.ys = ys;
+        this.headings = headings;
+        this.pointsView = null;
+        this.boundsMeasured = false;
+        this.size = xs.length;
     }
 
     /**
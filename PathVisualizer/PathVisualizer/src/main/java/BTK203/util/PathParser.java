@@ -0,0 +1,274 @@
+package BTK203.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import BTK203.Constants;
+
+/**
+ * Reads whole text path files into columns of coordinates, using every core.
+ * The file is cut into chunks at line breaks. The lines in each chunk are counted in parallel, which says where each chunk's points go,
+ * and then the chunks are parsed in parallel straight into their part of the columns, so nothing has to be stitched together afterwards.
+ * Files smaller than Constants.PARALLEL_PARSE_CHUNK_SIZE are parsed on the calling thread.
+ */
+public class PathParser {
+    private static final int MAX_REPORTED_LINES = Path.MAX_ALLOWED_NULL_POINTS; //don't flood the console with a file that isn't a path at all
+    private static final int CHUNKS_PER_THREAD = 4; //a few chunks per thread, so that a slow chunk doesn't leave the other threads waiting
+
+    /**
+     * Reads the lines of a path file into columns of coordinates, on the common ForkJoinPool.
+     * Lines are split the same way as String.split("\n"), so trailing empty lines are ignored. Lines that are not valid points become NaN.
+     * The first few invalid lines are printed to the console.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     * @param name The name of the path, used when reporting invalid lines.
+     * @param maxNullPoints The most lines that may be invalid before giving up.
+     * @return The X-coordinates, Y-coordinates and headings of the points, in that order, or null if too many lines were invalid.
+     */
+    public static double[][] parse(byte[] data, int offset, int length, String name, int maxNullPoints) {
+        return parse(data, offset, length, name, maxNullPoints, ForkJoinPool.commonPool(), Constants.PARALLEL_PARSE_CHUNK_SIZE);
+    }
+
+    /**
+     * Reads the lines of a path file into columns of coordinates.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     * @param name The name of the path, used when reporting invalid lines.
+     * @param maxNullPoints The most lines that may be invalid before giving up.
+     * @param pool The pool to parse on.
+     * @param chunkSize The smallest number of bytes worth handing to another thread.
+     * @return The X-coordinates, Y-coordinates and headings of the points, in that order, or null if too many lines were invalid.
+     */
+    static double[][] parse(byte[] data, int offset, int length, String name, int maxNullPoints, ForkJoinPool pool, int chunkSize) {
+        int end = offset + length;
+        while(end > offset && data[end - 1] == '\n') {
+            end--;
+        }
+
+        Chunk[] chunks = split(data, offset, end, pool.getParallelism() * CHUNKS_PER_THREAD, chunkSize);
+        chunks[chunks.length - 1].lastLine = (end > offset || length == 0); //like String.split(), an empty file is one empty line
+        AtomicInteger nullPoints = new AtomicInteger();
+        if(chunks.length == 1) {
+            chunks[0].count(data);
+        } else {
+            pool.invoke(new ChunkTask(chunks, 0, chunks.length, true, data, null, nullPoints, maxNullPoints));
+        }
+
+        int lineCount = 0;
+        for(Chunk chunk : chunks) {
+            chunk.firstLine = lineCount;
+            lineCount += chunk.lineCount;
+        }
+
+        double[][] columns = new double[][] { new double[lineCount], new double[lineCount], new double[lineCount] };
+        if(chunks.length == 1) {
+            chunks[0].parse(data, columns, nullPoints, maxNullPoints);
+        } else {
+            pool.invoke(new ChunkTask(chunks, 0, chunks.length, false, data, columns, nullPoints, maxNullPoints));
+        }
+
+        int reported = 0;
+        for(int c=0; c<chunks.length && reported < MAX_REPORTED_LINES; c++) {
+            Chunk chunk = chunks[c];
+            for(int i=0; i<chunk.invalidCount && reported < MAX_REPORTED_LINES; i++) {
+                System.out.println((name == null ? "Path" : name) + ": line " + (chunk.invalidLines[i] + 1) + " is not a valid point (" + chunk.invalidErrors[i] + ")");
+                reported++;
+            }
+        }
+
+        if(nullPoints.get() > maxNullPoints) {
+            System.out.println((name == null ? "Path" : name) + ": too many invalid points, giving up.");
+            return null;
+        }
+
+        return columns;
+    }
+
+    /**
+     * Cuts a file into chunks of whole lines, of roughly equal size.
+     * @param data The array holding the file contents.
+     * @param start The index of the first byte of the file.
+     * @param end The index after the last byte of the file, not counting trailing line breaks.
+     * @param maxChunks The most chunks to cut the file into.
+     * @param chunkSize The smallest size of a chunk, in bytes.
+     */
+    private static Chunk[] split(byte[] data, int start, int end, int maxChunks, int chunkSize) {
+        int count = Math.max(1, Math.min(maxChunks, (end - start) / Math.max(1, chunkSize)));
+        Chunk[] chunks = new Chunk[count];
+        int chunkCount = 0;
+        int chunkStart = start;
+        for(int c=1; c<=count && chunkStart < end; c++) {
+            int chunkEnd = (c == count ? end : Math.max(chunkStart + 1, start + (int) ((long) (end - start) * c / count)));
+            while(chunkEnd < end && data[chunkEnd - 1] != '\n') { //move the cut forward to just after a line break
+                chunkEnd++;
+            }
+
+            if(chunkEnd > chunkStart) {
+                chunks[chunkCount++] = new Chunk(chunkStart, chunkEnd);
+                chunkStart = chunkEnd;
+            }
+        }
+
+        if(chunkCount == 0) {
+            chunks[chunkCount++] = new Chunk(start, end); //nothing but line breaks
+        }
+
+        Chunk[] trimmed = new Chunk[chunkCount];
+        System.arraycopy(chunks, 0, trimmed, 0, chunkCount);
+        return trimmed;
+    }
+
+    /**
+     * A run of whole lines in a path file, and what was found in it.
+     */
+    private static class Chunk {
+        private int
+            start,
+            end,
+            firstLine,
+            lineCount,
+            invalidCount;
+
+        private boolean lastLine; //true if the chunk ends with a line that has no line break after it
+
+        private int[] invalidLines; //the first few invalid lines in the chunk, counted from the start of the file
+        private String[] invalidErrors;
+
+        /**
+         * Creates a new Chunk.
+         * @param start The index of the first byte of the chunk.
+         * @param end The index after the last byte of the chunk. Every chunk but the last ends with a line break.
+         */
+        public Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.invalidLines = new int[MAX_REPORTED_LINES];
+            this.invalidErrors = new String[MAX_REPORTED_LINES];
+        }
+
+        /**
+         * Counts the lines in the chunk.
+         * @param data The array holding the file contents.
+         */
+        public void count(byte[] data) {
+            int lines = (lastLine ? 1 : 0);
+            for(int i=start; i<end; i++) {
+                if(data[i] == '\n') {
+                    lines++;
+                }
+            }
+
+            lineCount = lines;
+        }
+
+        /**
+         * Parses the lines in the chunk into their place in the columns. Stops early if the whole file has too many invalid lines.
+         * @param data The array holding the file contents.
+         * @param columns The columns to fill in.
+         * @param nullPoints The number of invalid lines found in the whole file so far.
+         * @param maxNullPoints The most lines that may be invalid before giving up.
+         */
+        public void parse(byte[] data, double[][] columns, AtomicInteger nullPoints, int maxNullPoints) {
+            double[] xs = columns[0];
+            double[] ys = columns[1];
+            double[] headings = columns[2];
+            PointParser parser = new PointParser();
+            int lineStart = start;
+            for(int p=firstLine; p<firstLine + lineCount; p++) {
+                int lineEnd = lineStart;
+                while(lineEnd < end && data[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+
+                if(parser.parse(data, lineStart, lineEnd)) {
+                    xs[p] = parser.getX();
+                    ys[p] = parser.getY();
+                    headings[p] = parser.getHeading();
+                } else {
+                    xs[p] = Double.NaN;
+                    ys[p] = Double.NaN;
+                    headings[p] = Double.NaN;
+                    if(invalidCount < MAX_REPORTED_LINES) {
+                        invalidLines[invalidCount] = p;
+                        invalidErrors[invalidCount] = parser.getError();
+                        invalidCount++;
+                    }
+
+                    if(nullPoints.incrementAndGet() > maxNullPoints) {
+                        return;
+                    }
+                }
+
+                if((p & 0xFFF) == 0 && nullPoints.get() > maxNullPoints) {
+                    return; //another chunk has already given up
+                }
+
+                lineStart = lineEnd + 1;
+            }
+        }
+    }
+
+    /**
+     * Counts or parses a range of chunks, splitting the range in half until there is one chunk left.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Chunk[] chunks;
+        private int
+            from,
+            to,
+            maxNullPoints;
+
+        private boolean counting;
+        private byte[] data;
+        private double[][] columns;
+        private AtomicInteger nullPoints;
+
+        /**
+         * Creates a new ChunkTask.
+         * @param chunks All of the chunks in the file.
+         * @param from The index of the first chunk to handle.
+         * @param to The index after the last chunk to handle.
+         * @param counting True to count the lines in the chunks, false to parse them.
+         * @param data The array holding the file contents.
+         * @param columns The columns to parse into, or null if counting.
+         * @param nullPoints The number of invalid lines found in the whole file so far.
+         * @param maxNullPoints The most lines that may be invalid before giving up.
+         */
+        public ChunkTask(Chunk[] chunks, int from, int to, boolean counting, byte[] data, double[][] columns, AtomicInteger nullPoints, int maxNullPoints) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.counting = counting;
+            this.data = data;
+            this.columns = columns;
+            this.nullPoints = nullPoints;
+            this.maxNullPoints = maxNullPoints;
+        }
+
+        /**
+         * Handles the chunks.
+         */
+        protected void compute() {
+            if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new ChunkTask(chunks, from, middle, counting, data, columns, nullPoints, maxNullPoints),
+                    new ChunkTask(chunks, middle, to, counting, data, columns, nullPoints, maxNullPoints)
+                );
+
+                return;
+            }
+
+            if(counting) {
+                chunks[from].count(data);
+            } else {
+                chunks[from].parse(data, columns, nullPoints, maxNullPoints);
+            }
+        }
+    }
+}
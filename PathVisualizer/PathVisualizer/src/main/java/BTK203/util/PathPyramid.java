@@ -0,0 +1,311 @@
+package BTK203.util;
+
+import java.util.Arrays;
+
+import BTK203.Constants;
+
+/**
+ * Simplified copies of a renderable's points at a range of tolerances, so that a zoomed-out path can be drawn with about as many points as there are pixels.
+ * Each level holds the indices of the points that are still needed at its tolerance:
+ * the line follows Ramer-Douglas-Peucker simplification, so no point is ever further than the tolerance from the simplified line,
+ * and a point marker is only dropped if another marker is drawn close enough that they would merge anyway (Constants.LOD_MARKER_SPACING).
+ * The renderer picks the coarsest level whose tolerance is still under a fraction of a pixel, so the simplified path looks the same as the full one.
+ * Every tolerance shares one Ramer-Douglas-Peucker pass, so building a pyramid costs about as much as simplifying the path once.
+ * A PathPyramid never changes once it is built, so it can be read from any thread.
+ */
+public class PathPyramid {
+    private static final int MAX_LEVELS = 48; //tolerances go down to 2^-48 of the path's size. Nothing is ever zoomed in that far.
+
+    private int size; //the number of points in the renderable when the pyramid was built
+    private double[] tolerances; //coarsest first
+    private int[][]
+        lines,
+        markers;
+
+    /**
+     * Builds a pyramid for a renderable. This reads every point a few times, so it should be done in the background for big paths.
+     * @param renderable The renderable to simplify. Points may be added to it while the pyramid is built, but they won't be in it.
+     */
+    public PathPyramid(IRenderable renderable) {
+        int size = renderable.size();
+        this.size = size;
+        float[] xs = new float[size]; //a float relative to the first point is far more precise than a pixel, and takes half the memory
+        float[] ys = new float[size];
+        double
+            originX = Double.NaN,
+            originY = Double.NaN,
+            minX = Double.MAX_VALUE,
+            minY = Double.MAX_VALUE,
+            maxX = -Double.MAX_VALUE,
+            maxY = -Double.MAX_VALUE;
+
+        for(int i=0; i<size; i++) {
+            double x = renderable.x(i);
+            double y = renderable.y(i);
+            if(Double.isNaN(x)) {
+                xs[i] = Float.NaN;
+                ys[i] = Float.NaN;
+                continue;
+            }
+
+            if(Double.isNaN(originX)) {
+                originX = x;
+                originY = y;
+            }
+
+            xs[i] = (float) (x - originX);
+            ys[i] = (float) (y - originY);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+
+        float[] importance = importance(xs, ys);
+        double extent = Math.max(maxX - minX, maxY - minY);
+        buildLevels(xs, ys, importance, (extent > 0 ? extent : 1));
+    }
+
+    /**
+     * Returns the number of points that the pyramid covers. Points added to the renderable after the pyramid was built have to be drawn in full.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of simplified levels. Level 0 is the coarsest. The full path is not counted.
+     */
+    public int getLevelCount() {
+        return tolerances.length;
+    }
+
+    /**
+     * Returns the coarsest level that is no further than a tolerance from the full path, or -1 if only the full path is close enough.
+     * @param tolerance The largest distance, in path units, that a drawn point may be from where it really is.
+     */
+    public int levelFor(double tolerance) {
+        for(int level=0; level<tolerances.length; level++) {
+            if(tolerances[level] <= tolerance) {
+                return level;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the tolerance of a level, in path units.
+     * @param level The level.
+     */
+    public double getTolerance(int level) {
+        return tolerances[level];
+    }
+
+    /**
+     * Returns the indices of the points to join with lines at a level, in order. Points that could not be read are included where they break the path.
+     * @param level The level.
+     */
+    public int[] getLine(int level) {
+        return lines[level];
+    }
+
+    /**
+     * Returns the indices of the points to mark at a level, in order.
+     * Like the full path, only points that are joined to the point before them are marked.
+     * @param level The level.
+     */
+    public int[] getMarkers(int level) {
+        return markers[level];
+    }
+
+    /**
+     * Works out, for every point, the largest tolerance at which Ramer-Douglas-Peucker simplification keeps it.
+     * A point is capped at the importance of the point that split its range, so the points kept at any tolerance are exactly the ones more important than it.
+     * The ends of every unbroken run of points, and the first unreadable point after a run, are always kept.
+     * @param xs The X-coordinates of the points, NaN if unreadable.
+     * @param ys The Y-coordinates of the points.
+     */
+    private static float[] importance(float[] xs, float[] ys) {
+        int size = xs.length;
+        float[] importance = new float[size];
+        int[] stack = new int[64]; //pairs of start and end indices still to be split. An explicit stack, because a spiral would recurse once per point.
+        for(int runStart=0; runStart<size; ) {
+            if(Float.isNaN(xs[runStart])) {
+                importance[runStart] = (runStart == 0 || !Float.isNaN(xs[runStart - 1]) ? Float.POSITIVE_INFINITY : 0); //keep one unreadable point to break the line
+                runStart++;
+                continue;
+            }
+
+            int runEnd = runStart;
+            while(runEnd + 1 < size && !Float.isNaN(xs[runEnd + 1])) {
+                runEnd++;
+            }
+
+            importance[runStart] = Float.POSITIVE_INFINITY;
+            importance[runEnd] = Float.POSITIVE_INFINITY;
+            int top = 0;
+            stack[top++] = runStart;
+            stack[top++] = runEnd;
+            while(top > 0) {
+                int end = stack[--top];
+                int start = stack[--top];
+                if(end - start < 2) {
+                    continue;
+                }
+
+                float cap = Math.min(importance[start], importance[end]); //the smaller end is the one that split this range
+                int farthest = start + 1;
+                float farthestDistance = -1;
+                for(int i=start + 1; i<end; i++) {
+                    float distance = distanceToSegment(xs[i], ys[i], xs[start], ys[start], xs[end], ys[end]);
+                    if(distance > farthestDistance) {
+                        farthest = i;
+                        farthestDistance = distance;
+                    }
+                }
+
+                importance[farthest] = Math.min(farthestDistance, cap);
+                if(top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+
+            runStart = runEnd + 1;
+        }
+
+        return importance;
+    }
+
+    /**
+     * Builds the levels, halving the tolerance each time, and keeps the ones that are worth having.
+     * A level is only kept if it has at most half as many points as the next finer level that was kept, so the pyramid never holds more indices than the path has points.
+     * @param xs The X-coordinates of the points, NaN if unreadable.
+     * @param ys The Y-coordinates of the points.
+     * @param importance The importance of each point.
+     * @param extent The width or height of the path, whichever is bigger.
+     */
+    private void buildLevels(float[] xs, float[] ys, float[] importance, double extent) {
+        double[] candidates = new double[MAX_LEVELS];
+        for(int k=0; k<MAX_LEVELS; k++) {
+            candidates[k] = extent / (2L << k);
+        }
+
+        int[] sizes = new int[MAX_LEVELS]; //first the number of points that appear first at each level, then the number at each level
+        for(float value : importance) {
+            if(!(value > candidates[MAX_LEVELS - 1])) {
+                continue;
+            }
+
+            int k = Math.max(0, Math.min(MAX_LEVELS - 1, Math.getExponent(extent / value) - 1)); //a guess that is at most one level off
+            while(k > 0 && value > candidates[k - 1]) {
+                k--;
+            }
+
+            while(!(value > candidates[k])) {
+                k++;
+            }
+
+            sizes[k]++;
+        }
+
+        for(int k=1; k<MAX_LEVELS; k++) {
+            sizes[k] += sizes[k - 1];
+        }
+
+        boolean[] keep = new boolean[MAX_LEVELS];
+        int levelCount = 0;
+        int finerSize = importance.length;
+        for(int k=MAX_LEVELS - 1; k>=0 && importance.length >= Constants.LOD_MIN_POINTS; k--) {
+            if(sizes[k] <= finerSize / 2) {
+                keep[k] = true;
+                finerSize = sizes[k];
+                levelCount++;
+            }
+        }
+
+        tolerances = new double[levelCount];
+        lines = new int[levelCount][];
+        markers = new int[levelCount][];
+        int level = 0;
+        for(int k=0; k<MAX_LEVELS; k++) {
+            if(!keep[k]) {
+                continue;
+            }
+
+            tolerances[level] = candidates[k];
+            lines[level] = new int[sizes[k]];
+            int count = 0;
+            for(int i=0; i<importance.length; i++) {
+                if(importance[i] > candidates[k]) {
+                    lines[level][count++] = i;
+                }
+            }
+
+            markers[level] = thinMarkers(xs, ys, (float) (candidates[k] * Constants.LOD_MARKER_SPACING / Constants.LOD_PIXEL_TOLERANCE));
+            level++;
+        }
+    }
+
+    /**
+     * Picks the point markers to draw. Walking along the path, a marker is skipped if it is within the spacing of the last one drawn.
+     * @param xs The X-coordinates of the points, NaN if unreadable.
+     * @param ys The Y-coordinates of the points.
+     * @param spacing The smallest distance between drawn markers, in path units.
+     */
+    private static int[] thinMarkers(float[] xs, float[] ys, float spacing) {
+        int[] kept = new int[64];
+        int count = 0;
+        float
+            lastX = Float.NaN,
+            lastY = Float.NaN,
+            spacingSquared = spacing * spacing;
+
+        for(int i=1; i<xs.length; i++) {
+            if(Float.isNaN(xs[i]) || Float.isNaN(xs[i - 1])) {
+                continue;
+            }
+
+            float dx = xs[i] - lastX;
+            float dy = ys[i] - lastY;
+            if(!Float.isNaN(lastX) && (dx * dx) + (dy * dy) <= spacingSquared) {
+                continue;
+            }
+
+            if(count == kept.length) {
+                kept = Arrays.copyOf(kept, kept.length * 2);
+            }
+
+            kept[count++] = i;
+            lastX = xs[i];
+            lastY = ys[i];
+        }
+
+        return Arrays.copyOf(kept, count);
+    }
+
+    /**
+     * Returns the distance from a point to a line segment.
+     * @param x The X-coordinate of the point.
+     * @param y The Y-coordinate of the point.
+     * @param x1 The X-coordinate of the start of the segment.
+     * @param y1 The Y-coordinate of the start of the segment.
+     * @param x2 The X-coordinate of the end of the segment.
+     * @param y2 The Y-coordinate of the end of the segment.
+     */
+    private static float distanceToSegment(float x, float y, float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float lengthSquared = (dx * dx) + (dy * dy);
+        float t = (lengthSquared == 0 ? 0 : (((x - x1) * dx) + ((y - y1) * dy)) / lengthSquared);
+        t = Math.max(0, Math.min(1, t));
+        float offsetX = x - (x1 + (t * dx));
+        float offsetY = y - (y1 + (t * dy));
+        return (float) Math.sqrt((offsetX * offsetX) + (offsetY * offsetY));
+    }
+}
@@ -0,0 +1,162 @@
+package BTK203.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes renderables in the path file format ([x],[y],[heading] per line, as in Point2D.toString()) straight to where they are going,
+ * without building a String for every point or for the whole file.
+ * Paths end every point with a newline and leave out points that could not be read, exactly like Path.toString().
+ * A Position is written as a lone point with no newline, exactly like Position.toString().
+ * An exact PathWriter writes x and y at full precision instead of rounding them to hundredths. Its output is still a normal text path,
+ * and reads back as exactly the same doubles, so converting a binary path to text with it loses nothing.
+ * A PathWriter reuses its buffers between calls, so it is not thread safe. Give each thread its own.
+ */
+public class PathWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private StringBuilder line; //the point being written
+    private ByteBuffer buffer; //created the first time a channel is written to
+    private boolean exact;
+
+    /**
+     * Creates a new PathWriter that writes the same text as toString().
+     */
+    public PathWriter() {
+        this(false);
+    }
+
+    /**
+     * Creates a new PathWriter.
+     * @param exact True to write x and y at full precision, false to round them to hundredths like toString().
+     */
+    public PathWriter(boolean exact) {
+        this.line = new StringBuilder(64);
+        this.buffer = null;
+        this.exact = exact;
+    }
+
+    /**
+     * Writes a renderable to an Appendable, such as a StringBuilder or a Writer.
+     * @param renderable The renderable to write.
+     * @param out Where to write it.
+     * @throws IOException If the Appendable can't be written to.
+     */
+    public void write(IRenderable renderable, Appendable out) throws IOException {
+        int size = renderable.size();
+        for(int i=0; i<size; i++) {
+            if(formatLine(renderable, i)) {
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Writes a renderable to a channel, such as a FileChannel, through a reusable buffer.
+     * @param renderable The renderable to write.
+     * @param channel Where to write it. Must be in blocking mode.
+     * @throws IOException If the channel can't be written to.
+     */
+    public void write(IRenderable renderable, WritableByteChannel channel) throws IOException {
+        if(buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        buffer.clear();
+        int size = renderable.size();
+        for(int i=0; i<size; i++) {
+            if(!formatLine(renderable, i)) {
+                continue;
+            }
+
+            if(buffer.remaining() < line.length()) {
+                flush(channel);
+            }
+
+            for(int k=0; k<line.length(); k++) {
+                buffer.put((byte) line.charAt(k)); //the format is plain ASCII
+            }
+        }
+
+        flush(channel);
+    }
+
+    /**
+     * Writes a renderable into a new byte array, for sending it somewhere that needs the whole file at once.
+     * @param renderable The renderable to write.
+     * @return The file contents, exactly as long as they need to be.
+     */
+    public byte[] toBytes(IRenderable renderable) {
+        int size = renderable.size();
+        byte[] bytes = new byte[Math.max(64, size * 24)]; //a typical line is about 24 bytes
+        int length = 0;
+        for(int i=0; i<size; i++) {
+            if(!formatLine(renderable, i)) {
+                continue;
+            }
+
+            if(length + line.length() > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + line.length()));
+            }
+
+            for(int k=0; k<line.length(); k++) {
+                bytes[length++] = (byte) line.charAt(k);
+            }
+        }
+
+        return (length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * Appends a point to a StringBuilder in the format used by Point2D.toString(). Appending a double formats it exactly like Double.toString(), without creating a String.
+     * @param builder The StringBuilder to append to.
+     * @param x The X-coordinate of the point.
+     * @param y The Y-coordinate of the point.
+     * @param heading The heading of the point.
+     */
+    public static void appendPoint(StringBuilder builder, double x, double y, double heading) {
+        builder.append(Util.roundTo(x, 2)).append(',').append(Util.roundTo(y, 2)).append(',').append(heading);
+    }
+
+    /**
+     * Formats one line of a renderable into the line buffer.
+     * @param renderable The renderable being written.
+     * @param index The index of the point to format.
+     * @return True if the line should be written, false if the point could not be read and should be left out.
+     */
+    private boolean formatLine(IRenderable renderable, int index) {
+        boolean path = (renderable instanceof Path);
+        double x = renderable.x(index);
+        if(path && Double.isNaN(x)) {
+            return false;
+        }
+
+        line.setLength(0);
+        if(exact) {
+            line.append(x).append(',').append(renderable.y(index)).append(',').append(renderable.heading(index));
+        } else {
+            appendPoint(line, x, renderable.y(index), renderable.heading(index));
+        }
+
+        if(path) {
+            line.append('\n');
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes everything in the buffer to a channel and empties it.
+     * @param channel The channel to write to.
+     */
+    private void flush(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
@@ -76,23 +76,20 @@ public class Point2D {
      * The output from this method can be used in the Point2D.fromString() method.
      */
     public String toString() {
-        double roundedX = Util.roundTo(this.getX(), 2);
-        double roundedY = Util.roundTo(this.getY(), 2);
-        return Double.valueOf(roundedX).toString() + "," + Double.valueOf(roundedY).toString() + "," + Double.valueOf(heading).toString();
+        StringBuilder builder = new StringBuilder(32);
+        PathWriter.appendPoint(builder, x, y, heading);
+        return builder.toString();
     }
 
     /**
      * Returns a Point2D from a given String input
      * - Expected Format: [x],[y],[heading]
+     * @return The point, or null if the input is not a valid point.
      */
     public static Point2D fromString(String input) {
-        String[] parts = input.split(",");
-        try {
-            double x = Double.valueOf(parts[0]).doubleValue();
-            double y = Double.valueOf(parts[1]).doubleValue();
-            double heading = Double.valueOf(parts[2]).doubleValue();
-            return new Point2D(x, y, heading);
-        } catch(NumberFormatException ex) {
+        PointParser parser = new PointParser();
+        if(parser.parse(input, 0, input.length())) {
+            return new Point2D(parser.getX(), parser.getY(), parser.getHeading());
         }
         
         return null;
@@ -0,0 +1,373 @@
+package BTK203.util;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads points in the format written by Point2D.toString() ([x],[y],[heading]) straight out of a byte array or CharSequence, without creating any Strings.
+ * Numbers are read the same way as Double.valueOf(): surrounding whitespace is ignored, and anything after a third comma is ignored, just like String.split(",").
+ * Plain decimal numbers with up to 18 significant digits (which covers everything Double.toString() writes) are converted by hand, exactly:
+ * numbers whose digits fit in a double are simply multiplied or divided by a power of ten, and longer ones use the Eisel-Lemire algorithm.
+ * Anything else (more digits, huge exponents, NaN, hex, ...) is handed to Double.parseDouble(), so the result is always identical to Double.valueOf().
+ * A PointParser holds the result of the last parse, so it is not thread safe. Give each thread its own.
+ */
+public class PointParser {
+    private static final long MAX_EXACT_MANTISSA = 1L << 53; //every long up to this fits in a double exactly
+    private static final int MAX_FAST_DIGITS = 18; //more significant digits than this might overflow a long
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 //the largest powers of ten that a double holds exactly
+    };
+
+    private static final int
+        MIN_TABLE_EXPONENT = -64, //exponents outside of this range go to Double.parseDouble(). Paths never get close.
+        MAX_TABLE_EXPONENT = 64;
+
+    private static final long[]
+        POWER_HIGH_BITS = new long[MAX_TABLE_EXPONENT - MIN_TABLE_EXPONENT + 1], //top 128 bits of each power of ten, rounded down
+        POWER_LOW_BITS  = new long[MAX_TABLE_EXPONENT - MIN_TABLE_EXPONENT + 1];
+
+    static {
+        for(int exponent=MIN_TABLE_EXPONENT; exponent<=MAX_TABLE_EXPONENT; exponent++) {
+            BigInteger power = BigInteger.TEN.pow(Math.abs(exponent));
+            BigInteger bits;
+            if(exponent >= 0) {
+                bits = (power.bitLength() > 128 ? power.shiftRight(power.bitLength() - 128) : power.shiftLeft(128 - power.bitLength()));
+            } else {
+                bits = BigInteger.ONE.shiftLeft(127 + power.bitLength()).divide(power);
+                if(bits.bitLength() > 128) {
+                    bits = bits.shiftRight(1);
+                }
+            }
+
+            POWER_HIGH_BITS[exponent - MIN_TABLE_EXPONENT] = bits.shiftRight(64).longValue();
+            POWER_LOW_BITS[exponent - MIN_TABLE_EXPONENT] = bits.longValue();
+        }
+    }
+
+    private byte[] bytes;
+    private CharSequence chars;
+    private double
+        x,
+        y,
+        heading;
+
+    private String error;
+
+    /**
+     * Creates a new PointParser.
+     */
+    public PointParser() {
+        error = null;
+    }
+
+    /**
+     * Reads a point from part of a byte array holding ASCII or UTF-8 text.
+     * @param data The array to read from.
+     * @param start The index of the first byte of the point.
+     * @param end The index after the last byte of the point.
+     * @return True if a point was read, false if the text was not a valid point. In that case, getError() says why.
+     */
+    public boolean parse(byte[] data, int start, int end) {
+        bytes = data;
+        chars = null;
+        return parsePoint(start, end);
+    }
+
+    /**
+     * Reads a point from part of a CharSequence.
+     * @param text The text to read from.
+     * @param start The index of the first character of the point.
+     * @param end The index after the last character of the point.
+     * @return True if a point was read, false if the text was not a valid point. In that case, getError() says why.
+     */
+    public boolean parse(CharSequence text, int start, int end) {
+        bytes = null;
+        chars = text;
+        return parsePoint(start, end);
+    }
+
+    /**
+     * Returns the X-coordinate of the last point read.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Returns the Y-coordinate of the last point read.
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Returns the heading of the last point read.
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * Returns a description of why the last parse failed, or null if it succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Reads the three numbers of a point from the current source.
+     * @param start The index of the first character of the point.
+     * @param end The index after the last character of the point.
+     * @return True if all three numbers were read.
+     */
+    private boolean parsePoint(int start, int end) {
+        error = null;
+        int xEnd = indexOfComma(start, end);
+        int yEnd = (xEnd < end ? indexOfComma(xEnd + 1, end) : end);
+        if(yEnd >= end) {
+            error = "expected 3 comma-separated numbers";
+            return false;
+        }
+
+        int headingEnd = indexOfComma(yEnd + 1, end); //anything after a third comma is ignored
+        try {
+            x = parseNumber(start, xEnd);
+            y = parseNumber(xEnd + 1, yEnd);
+            heading = parseNumber(yEnd + 1, headingEnd);
+            return true;
+        } catch(NumberFormatException ex) {
+            error = ex.getMessage();
+            return false;
+        }
+    }
+
+    /**
+     * Reads one number, in the same way as Double.valueOf().
+     * @param start The index of the first character of the number.
+     * @param end The index after the last character of the number.
+     * @return The number.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    private double parseNumber(int start, int end) {
+        //ignore surrounding whitespace, like String.trim()
+        while(start < end && charAt(start) <= ' ') {
+            start++;
+        }
+
+        while(end > start && charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if(i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+            negative = (charAt(i) == '-');
+            i++;
+        }
+
+        long mantissa = 0;
+        int
+            exponent = 0,
+            digits = 0,
+            significantDigits = 0;
+
+        boolean seenPoint = false;
+        for(; i<end; i++) {
+            int c = charAt(i);
+            if(c == '.' && !seenPoint) {
+                seenPoint = true;
+                continue;
+            }
+
+            if(c < '0' || c > '9') {
+                break;
+            }
+
+            digits++;
+            if(mantissa == 0 && c == '0') {
+                if(seenPoint) {
+                    exponent--; //leading zeros after the point only move the exponent
+                }
+
+                continue;
+            }
+
+            if(++significantDigits > MAX_FAST_DIGITS) {
+                return parseSlowly(start, end);
+            }
+
+            mantissa = (mantissa * 10) + (c - '0');
+            if(seenPoint) {
+                exponent--;
+            }
+        }
+
+        if(digits == 0) {
+            return parseSlowly(start, end); //NaN, Infinity, hex, or not a number at all
+        }
+
+        if(i < end && (charAt(i) == 'e' || charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if(i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+                negativeExponent = (charAt(i) == '-');
+                i++;
+            }
+
+            int exponentStart = i;
+            int explicitExponent = 0;
+            for(; i<end && charAt(i) >= '0' && charAt(i) <= '9'; i++) {
+                if(explicitExponent < 100000) { //far past the range of a double, so stop before overflowing
+                    explicitExponent = (explicitExponent * 10) + (charAt(i) - '0');
+                }
+            }
+
+            if(i == exponentStart) {
+                return parseSlowly(start, end);
+            }
+
+            exponent += (negativeExponent ? -explicitExponent : explicitExponent);
+        }
+
+        if(i < end && (charAt(i) == 'd' || charAt(i) == 'D' || charAt(i) == 'f' || charAt(i) == 'F')) {
+            i++; //Double.valueOf() allows a type suffix
+        }
+
+        if(i != end) {
+            return parseSlowly(start, end);
+        }
+
+        double value;
+        if(mantissa == 0) {
+            value = 0;
+        } else if(mantissa <= MAX_EXACT_MANTISSA && exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent]; //both numbers are exact, so the one rounding step matches Double.valueOf()
+        } else if(mantissa <= MAX_EXACT_MANTISSA && exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            value = eiselLemire(mantissa, exponent);
+            if(Double.isNaN(value)) {
+                return parseSlowly(start, end);
+            }
+        }
+
+        return (negative ? -value : value);
+    }
+
+    /**
+     * Converts mantissa * 10^exponent to the nearest double using the Eisel-Lemire algorithm, which multiplies by a 128-bit approximation of the power of ten
+     * and can tell when that approximation is good enough to round correctly. See Lemire, "Number Parsing at a Gigabyte per Second" (2021).
+     * @param mantissa The decimal digits of the number. Must be positive.
+     * @param exponent The power of ten to multiply the digits by.
+     * @return The number, or NaN if it can't be converted this way (the answer is too close to call, or out of range).
+     */
+    private static double eiselLemire(long mantissa, int exponent) {
+        if(exponent < MIN_TABLE_EXPONENT || exponent > MAX_TABLE_EXPONENT) {
+            return Double.NaN;
+        }
+
+        int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        mantissa <<= leadingZeros;
+        long binaryExponent = (((217706L * exponent) >> 16) + 64 + 1023) - leadingZeros; //217706 / 2^16 is log2(10)
+
+        long powerHigh = POWER_HIGH_BITS[exponent - MIN_TABLE_EXPONENT];
+        long productHigh = unsignedMultiplyHigh(mantissa, powerHigh);
+        long productLow = mantissa * powerHigh;
+        if((productHigh & 0x1FF) == 0x1FF && Long.compareUnsigned(productLow + mantissa, mantissa) < 0) {
+            //the truncated bits might matter, so bring in the low half of the power too
+            long powerLow = POWER_LOW_BITS[exponent - MIN_TABLE_EXPONENT];
+            long lowHigh = unsignedMultiplyHigh(mantissa, powerLow);
+            long lowLow = mantissa * powerLow;
+            long mergedLow = productLow + lowHigh;
+            if(Long.compareUnsigned(mergedLow, productLow) < 0) {
+                productHigh++;
+            }
+
+            if((productHigh & 0x1FF) == 0x1FF && mergedLow == -1 && Long.compareUnsigned(lowLow + mantissa, mantissa) < 0) {
+                return Double.NaN;
+            }
+
+            productLow = mergedLow;
+        }
+
+        long topBit = productHigh >>> 63;
+        long bits = productHigh >>> (topBit + 9); //54 bits, one more than a double holds, for rounding
+        binaryExponent -= 1 ^ topBit;
+        if(productLow == 0 && (productHigh & 0x1FF) == 0 && (bits & 3) == 1) {
+            return Double.NaN; //exactly halfway between two doubles, which needs the exact value to break the tie
+        }
+
+        bits += bits & 1; //round to 53 bits
+        bits >>>= 1;
+        if((bits >>> 53) != 0) {
+            bits >>>= 1;
+            binaryExponent++;
+        }
+
+        if(Long.compareUnsigned(binaryExponent - 1, 0x7FF - 1) >= 0) {
+            return Double.NaN; //subnormal or infinite
+        }
+
+        return Double.longBitsToDouble((binaryExponent << 52) | (bits & 0x000FFFFFFFFFFFFFL));
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned 128-bit product of two longs.
+     * @param a The first number, treated as unsigned.
+     * @param b The second number, treated as unsigned.
+     */
+    private static long unsignedMultiplyHigh(long a, long b) {
+        long
+            aLow = a & 0xFFFFFFFFL,
+            aHigh = a >>> 32,
+            bLow = b & 0xFFFFFFFFL,
+            bHigh = b >>> 32;
+
+        long lowLow = aLow * bLow;
+        long highLow = aHigh * bLow;
+        long lowHigh = aLow * bHigh;
+        long middle = (lowLow >>> 32) + (highLow & 0xFFFFFFFFL) + lowHigh;
+        return (aHigh * bHigh) + (highLow >>> 32) + (middle >>> 32);
+    }
+
+    /**
+     * Reads a number that the fast path can't convert exactly, using Double.parseDouble(). This is the only place that creates a String.
+     * @param start The index of the first character of the number.
+     * @param end The index after the last character of the number.
+     * @return The number.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    private double parseSlowly(int start, int end) {
+        String number = (bytes != null ? new String(bytes, start, end - start, StandardCharsets.UTF_8) : chars.subSequence(start, end).toString());
+        try {
+            return Double.parseDouble(number);
+        } catch(NumberFormatException ex) {
+            throw new NumberFormatException("\"" + number + "\" is not a number");
+        }
+    }
+
+    /**
+     * Returns the index of the next comma.
+     * @param start The index to start looking at.
+     * @param end The index to stop looking at.
+     * @return The index of the comma, or end if there isn't one.
+     */
+    private int indexOfComma(int start, int end) {
+        for(int i=start; i<end; i++) {
+            if(charAt(i) == ',') {
+                return i;
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Returns a character of the current source.
+     * @param index The index of the character.
+     */
+    private int charAt(int index) {
+        return (bytes != null ? bytes[index] & 0xFF : chars.charAt(index));
+    }
+}
@@ -40,6 +40,48 @@ public class Position implements IRenderable {
         return new Point2D[] { position };
     }
 
+    /**
+     * Returns the number of points in the Position, which is always 1.
+     */
+    public int size() {
+        return 1;
+    }
+
+    /**
+     * Returns the X-coordinate of the position.
+     * @param index Ignored, as there is only one point.
+     */
+    public double x(int index) {
+        return position.getX();
+    }
+
+    /**
+     * Returns the Y-coordinate of the position.
+     * @param index Ignored, as there is only one point.
+     */
+    public double y(int index) {
+        return position.getY();
+    }
+
+    /**
+     * Returns the heading of the position.
+     * @param index Ignored, as there is only one point.
+     */
+    public double heading(int index) {
+        return position.getHeading();
+    }
+
+    /**
+     * Returns a rectangle with no size at the position.
+     */
+    public Rectangle getBounds() {
+        if(Double.isNaN(position.getX())) {
+            return null;
+        }
+
+        return new Rectangle(position.getX(), position.getY(), 0, 0);
+    }
+
     /**
      * Gets the color of the point.
      * @return The color of the Position
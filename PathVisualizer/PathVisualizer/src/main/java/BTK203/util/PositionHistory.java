@@ -0,0 +1,130 @@
+package BTK203.util;
+
+/**
+ * Every robot position received since the history was last cleared, oldest first.
+ * Samples are stored in parallel primitive arrays rather than as objects, so a long session does not fill the heap with Point2Ds.
+ * Positions arrive on the SocketHelper's transport thread and are read from the GUI, so every method is synchronized.
+ */
+public class PositionHistory {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] timestamps;
+    private double[]
+        xs,
+        ys,
+        headings;
+
+    private int size;
+
+    /**
+     * Creates a new, empty PositionHistory.
+     */
+    public PositionHistory() {
+        timestamps = new long[INITIAL_CAPACITY];
+        xs = new double[INITIAL_CAPACITY];
+        ys = new double[INITIAL_CAPACITY];
+        headings = new double[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Adds a sample to the end of the history.
+     * @param timestamp The time that the robot was at the position, in milliseconds.
+     * @param x The x coordinate of the robot.
+     * @param y The y coordinate of the robot.
+     * @param heading The heading of the robot.
+     */
+    public synchronized void add(long timestamp, double x, double y, double heading) {
+        if(size == timestamps.length) {
+            grow();
+        }
+
+        timestamps[size] = timestamp;
+        xs[size] = x;
+        ys[size] = y;
+        headings[size] = heading;
+        size++;
+    }
+
+    /**
+     * Adds a sample to the end of the history.
+     * @param timestamp The time that the robot was at the position, in milliseconds.
+     * @param position The position of the robot.
+     */
+    public void add(long timestamp, Point2D position) {
+        add(timestamp, position.getX(), position.getY(), position.getHeading());
+    }
+
+    /**
+     * Returns the number of samples in the history.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the time of a sample, in milliseconds. Samples sent in batches carry the robot's clock; others carry the time they were received.
+     * @param index The index of the sample. Must be less than size().
+     */
+    public synchronized long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Returns the x coordinate of a sample.
+     * @param index The index of the sample. Must be less than size().
+     */
+    public synchronized double getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the y coordinate of a sample.
+     * @param index The index of the sample. Must be less than size().
+     */
+    public synchronized double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Returns the heading of a sample.
+     * @param index The index of the sample. Must be less than size().
+     */
+    public synchronized double getHeading(int index) {
+        return headings[index];
+    }
+
+    /**
+     * Returns a sample as a Point2D.
+     * @param index The index of the sample. Must be less than size().
+     */
+    public synchronized Point2D getPoint(int index) {
+        return new Point2D(xs[index], ys[index], headings[index]);
+    }
+
+    /**
+     * Forgets every sample.
+     */
+    public synchronized void clear() {
+        size = 0;
+    }
+
+    /**
+     * Doubles the capacity of the history.
+     */
+    private void grow() {
+        int newCapacity = timestamps.length * 2;
+        long[] newTimestamps = new long[newCapacity];
+        double[] newXs = new double[newCapacity];
+        double[] newYs = new double[newCapacity];
+        double[] newHeadings = new double[newCapacity];
+        System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+        System.arraycopy(xs, 0, newXs, 0, size);
+        System.arraycopy(ys, 0, newYs, 0, size);
+        System.arraycopy(headings, 0, newHeadings, 0, size);
+        timestamps = newTimestamps;
+        xs = newXs;
+        ys = newYs;
+        headings = newHeadings;
+    }
+}
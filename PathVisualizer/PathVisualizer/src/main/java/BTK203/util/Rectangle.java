@@ -48,6 +48,73 @@ public class Rectangle {
         return height;
     }
 
+    /**
+     * Returns the x-coordinate of the right edge of the rectangle.
+     */
+    public double getMaxX() {
+        return x + width;
+    }
+
+    /**
+     * Returns the y-coordinate of the far edge of the rectangle.
+     */
+    public double getMaxY() {
+        return y + height;
+    }
+
+    /**
+     * Returns the smallest rectangle that contains both this rectangle and another.
+     * @param other The other rectangle. If null, this rectangle is returned.
+     */
+    public Rectangle union(Rectangle other) {
+        if(other == null) {
+            return this;
+        }
+
+        double
+            minX = Math.min(x, other.x),
+            minY = Math.min(y, other.y),
+            maxX = Math.max(getMaxX(), other.getMaxX()),
+            maxY = Math.max(getMaxY(), other.getMaxY());
+
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Returns the smallest rectangle that contains every point of a renderable, by looking at all of them.
+     * @param renderable The renderable to measure.
+     * @return The bounds of the renderable, or null if none of its points could be read.
+     */
+    public static Rectangle around(IRenderable renderable) {
+        double
+            minX = Double.MAX_VALUE,
+            minY = Double.MAX_VALUE,
+            maxX = -Double.MAX_VALUE,
+            maxY = -Double.MAX_VALUE;
+
+        int pointCount = renderable.size();
+        for(int i=0; i<pointCount; i++) {
+            double
+                x = renderable.x(i),
+                y = renderable.y(i);
+
+            if(Double.isNaN(x)) {
+                continue;
+            }
+
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+
+        if(minX > maxX) {
+            return null;
+        }
+
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
     public String toString() {
         return "(" +
             Double.valueOf(x).toString() + ", " +
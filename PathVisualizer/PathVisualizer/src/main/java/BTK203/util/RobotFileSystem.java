@@ -1,5 +1,7 @@
 package BTK203.util;
 
+import java.util.concurrent.CompletableFuture;
+
 import BTK203.App;
 import BTK203.enumeration.MessageType;
 
@@ -8,8 +10,8 @@ import BTK203.enumeration.MessageType;
  */
 public class RobotFileSystem {
     private final String[] EMPTY = new String[0];
-    private String currentDirectory;
-    private String[] paths;
+    private volatile String currentDirectory;
+    private volatile String[] paths;
 
     /**
      * Creates a new RobotFileSystem, starting its search on directory.
@@ -21,18 +23,27 @@ public class RobotFileSystem {
     }
 
     /**
-     * Sets the file system's directory and queries the robot's files on that directory.
+     * Sets the file system's directory and queries the robot's files on that directory. This method never blocks.
      * @param directory The absolute directory to change to.
+     * @return A future that completes with all file paths in the directory, or no paths if the robot does not respond.
      */
-    public void setCurrentDirectory(String directory) {
+    public CompletableFuture<String[]> setCurrentDirectory(String directory) {
         currentDirectory = directory;
         paths = EMPTY;
 
         //query the robot's files and directories on the new directory. The robot should return a message with all files and directories separated by newlines.
-        String directoryContents = App.getManager().getSocketHelper().sendMessageAndGetResponse(MessageType.DIRECTORY_REQUEST, directory);
-        if(directoryContents.length() > 0) {
-            paths = directoryContents.split("\n");
-        }
+        return App.getManager().getSocketHelper().sendRequest(MessageType.DIRECTORY_REQUEST, "", directory).handle((directoryContents, ex) -> {
+            String[] directoryPaths = EMPTY;
+            if(ex == null && directoryContents.length() > 0) {
+                directoryPaths = directoryContents.split("\n");
+            }
+
+            if(directory.equals(currentDirectory)) { //don't let a slow reply for an old directory replace the current one
+                paths = directoryPaths;
+            }
+
+            return directoryPaths;
+        });
     }
 
     /**
@@ -0,0 +1,468 @@
+package BTK203.util;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the segments of a renderable, for finding the segments in a rectangle or the ones closest to a point without looking at every point.
+ * Segment i joins point i to point i + 1. Segments that touch an unreadable point don't exist, and points that aren't joined to anything aren't indexed.
+ * Only the cells that something passes through are stored, in a hash table, so the grid doesn't need to know its bounds up front
+ * and can keep growing with the path: update() indexes the points added since it was last called.
+ * Queries and updates are synchronized, so the grid can be built or updated in the background while it is queried.
+ */
+public class SegmentGrid {
+    private static final long EMPTY = Long.MIN_VALUE; //marks an unused slot in the cell table
+    private static final int MAX_CELLS_PER_SEGMENT = 256; //segments longer than this many cells are walked along their line instead of filling their bounding box
+
+    private IRenderable renderable;
+    private int indexedSize; //the number of points that have been indexed
+    private double
+        originX,
+        originY,
+        cellSize;
+
+    private long[] cellKeys;
+    private int[][] cellSegments;
+    private int[] cellCounts;
+    private int
+        cellCount,
+        minCellX,
+        minCellY,
+        maxCellX,
+        maxCellY;
+
+    private int[] stamps; //the query that last saw each segment, so that segments in several cells are only reported once
+    private int stamp;
+
+    /**
+     * Indexes every segment of a renderable.
+     * @param renderable The renderable to index. Points may be added to the end of it later, but the ones already there must not change.
+     */
+    public SegmentGrid(IRenderable renderable) {
+        this.renderable = renderable;
+        this.indexedSize = 0;
+        this.cellKeys = new long[16];
+        this.cellSegments = new int[16][];
+        this.cellCounts = new int[16];
+        this.cellCount = 0;
+        this.minCellX = Integer.MAX_VALUE;
+        this.minCellY = Integer.MAX_VALUE;
+        this.maxCellX = Integer.MIN_VALUE;
+        this.maxCellY = Integer.MIN_VALUE;
+        this.stamps = new int[0];
+        this.stamp = 0;
+        Arrays.fill(cellKeys, EMPTY);
+        chooseCells();
+        update();
+    }
+
+    /**
+     * Indexes the segments that end at points added to the renderable since the grid was built or last updated.
+     */
+    public synchronized void update() {
+        int size = renderable.size();
+        if(size <= indexedSize) {
+            return;
+        }
+
+        if(stamps.length < size) {
+            stamps = Arrays.copyOf(stamps, Math.max(size, stamps.length * 2));
+        }
+
+        for(int i=Math.max(0, indexedSize - 1); i<size - 1; i++) {
+            double
+                x1 = renderable.x(i),
+                y1 = renderable.y(i),
+                x2 = renderable.x(i + 1),
+                y2 = renderable.y(i + 1);
+
+            if(!Double.isNaN(x1) && !Double.isNaN(x2)) {
+                addSegment(i, x1, y1, x2, y2);
+            }
+        }
+
+        indexedSize = size;
+    }
+
+    /**
+     * Returns the number of points that have been indexed.
+     */
+    public synchronized int getIndexedSize() {
+        return indexedSize;
+    }
+
+    /**
+     * Finds the segments that pass through a rectangle, or might: a segment that only passes close to a corner may be included too.
+     * @param minX The left edge of the rectangle.
+     * @param minY The bottom edge of the rectangle.
+     * @param maxX The right edge of the rectangle.
+     * @param maxY The top edge of the rectangle.
+     * @return The indices of the segments, in order along the path.
+     */
+    public synchronized int[] query(double minX, double minY, double maxX, double maxY) {
+        if(cellCount == 0 || !(minX <= maxX && minY <= maxY)) {
+            return new int[0];
+        }
+
+        int[] found = new int[64];
+        int count = 0;
+
+        int
+            startX = Math.max(minCellX, cellX(minX)),
+            startY = Math.max(minCellY, cellY(minY)),
+            endX = Math.min(maxCellX, cellX(maxX)),
+            endY = Math.min(maxCellY, cellY(maxY));
+
+        nextStamp();
+        for(int cx=startX; cx<=endX; cx++) {
+            for(int cy=startY; cy<=endY; cy++) {
+                int slot = findCell(cx, cy);
+                if(slot < 0) {
+                    continue;
+                }
+
+                int[] segments = cellSegments[slot];
+                for(int s=0; s<cellCounts[slot]; s++) {
+                    int segment = segments[s];
+                    if(stamps[segment] == stamp || !overlaps(segment, minX, minY, maxX, maxY)) {
+                        continue;
+                    }
+
+                    stamps[segment] = stamp;
+                    if(count == found.length) {
+                        found = Arrays.copyOf(found, found.length * 2);
+                    }
+
+                    found[count++] = segment;
+                }
+            }
+        }
+
+        Arrays.sort(found, 0, count);
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Finds the segments closest to a point, searching outwards from it one ring of cells at a time.
+     * @param x The X-coordinate of the point.
+     * @param y The Y-coordinate of the point.
+     * @param k The number of segments to find.
+     * @return The indices of up to k segments, closest first.
+     */
+    public synchronized int[] nearest(double x, double y, int k) {
+        if(cellCount == 0 || k <= 0) {
+            return new int[0];
+        }
+
+        int[] best = new int[k];
+        double[] bestDistances = new double[k];
+        int found = 0;
+
+        int
+            centerX = cellX(x),
+            centerY = cellY(y),
+            firstRing = Math.max(Math.max(minCellX - centerX, centerX - maxCellX), Math.max(minCellY - centerY, centerY - maxCellY)), //rings closer than this are empty
+            lastRing = Math.max(Math.max(centerX - minCellX, maxCellX - centerX), Math.max(centerY - minCellY, maxCellY - centerY)); //rings further than this are empty
+
+        nextStamp();
+        for(int ring=Math.max(0, firstRing); ring<=lastRing; ring++) {
+            if(found == k && bestDistances[k - 1] <= (ring - 1) * cellSize) {
+                break; //everything in this ring and beyond is further away than what has been found
+            }
+
+            for(int cx=Math.max(minCellX, centerX - ring); cx<=Math.min(maxCellX, centerX + ring); cx++) {
+                int step = (cx == centerX - ring || cx == centerX + ring ? 1 : 2 * ring); //only the edge of the ring is new
+                for(int cy=centerY - ring; cy<=centerY + ring; cy+=Math.max(1, step)) {
+                    int slot = findCell(cx, cy);
+                    if(slot < 0) {
+                        continue;
+                    }
+
+                    int[] segments = cellSegments[slot];
+                    for(int s=0; s<cellCounts[slot]; s++) {
+                        int segment = segments[s];
+                        if(stamps[segment] == stamp) {
+                            continue;
+                        }
+
+                        stamps[segment] = stamp;
+                        double distance = distanceTo(segment, x, y);
+                        if(found == k && distance >= bestDistances[k - 1]) {
+                            continue;
+                        }
+
+                        int position = (found == k ? k - 1 : found++); //insert in order, dropping the furthest if full
+                        while(position > 0 && bestDistances[position - 1] > distance) {
+                            best[position] = best[position - 1];
+                            bestDistances[position] = bestDistances[position - 1];
+                            position--;
+                        }
+
+                        best[position] = segment;
+                        bestDistances[position] = distance;
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(best, found);
+    }
+
+    /**
+     * Returns the distance from a point to a segment.
+     * @param segment The index of the segment.
+     * @param x The X-coordinate of the point.
+     * @param y The Y-coordinate of the point.
+     */
+    public double distanceTo(int segment, double x, double y) {
+        double
+            x1 = renderable.x(segment),
+            y1 = renderable.y(segment),
+            dx = renderable.x(segment + 1) - x1,
+            dy = renderable.y(segment + 1) - y1,
+            lengthSquared = (dx * dx) + (dy * dy),
+            t = (lengthSquared == 0 ? 0 : (((x - x1) * dx) + ((y - y1) * dy)) / lengthSquared);
+
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (x1 + (t * dx)), y - (y1 + (t * dy)));
+    }
+
+    /**
+     * Picks the origin and size of the cells from the points already in the renderable, so that a typical cell holds a few segments.
+     */
+    private void chooseCells() {
+        int size = renderable.size();
+        double
+            minX = Double.MAX_VALUE,
+            minY = Double.MAX_VALUE,
+            maxX = -Double.MAX_VALUE,
+            maxY = -Double.MAX_VALUE,
+            totalLength = 0;
+
+        int segments = 0;
+        for(int i=0; i<size; i++) {
+            double x = renderable.x(i);
+            double y = renderable.y(i);
+            if(Double.isNaN(x)) {
+                continue;
+            }
+
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            if(i > 0 && !Double.isNaN(renderable.x(i - 1))) {
+                totalLength += Math.hypot(x - renderable.x(i - 1), y - renderable.y(i - 1));
+                segments++;
+            }
+        }
+
+        originX = (minX <= maxX ? minX : 0);
+        originY = (minY <= maxY ? minY : 0);
+        double averageLength = (segments > 0 ? totalLength / segments : 0);
+        double spread = (segments > 0 ? Math.sqrt(Math.max(maxX - minX, 0) * Math.max(maxY - minY, 0) / segments) : 0); //the size that gives about one segment per cell
+        cellSize = Math.max(averageLength, spread);
+        if(!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            cellSize = Math.max(Math.max(maxX - minX, maxY - minY), 0) / 16; //a straight line, a single point, or nothing yet
+        }
+
+        if(!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            cellSize = 1;
+        }
+    }
+
+    /**
+     * Adds a segment to every cell that it passes through.
+     * @param segment The index of the segment.
+     * @param x1 The X-coordinate of the start of the segment.
+     * @param y1 The Y-coordinate of the start of the segment.
+     * @param x2 The X-coordinate of the end of the segment.
+     * @param y2 The Y-coordinate of the end of the segment.
+     */
+    private void addSegment(int segment, double x1, double y1, double x2, double y2) {
+        int
+            startX = cellX(Math.min(x1, x2)),
+            startY = cellY(Math.min(y1, y2)),
+            endX = cellX(Math.max(x1, x2)),
+            endY = cellY(Math.max(y1, y2));
+
+        long cells = ((long) endX - startX + 1) * ((long) endY - startY + 1);
+        if(cells <= MAX_CELLS_PER_SEGMENT) {
+            for(int cx=startX; cx<=endX; cx++) {
+                for(int cy=startY; cy<=endY; cy++) {
+                    addToCell(cx, cy, segment);
+                }
+            }
+
+            return;
+        }
+
+        //a long segment: step along it in quarter cells, adding the cells around each step so that no cell it crosses is missed
+        double length = Math.hypot(x2 - x1, y2 - y1);
+        int steps = (int) Math.min(Integer.MAX_VALUE / 2, Math.ceil(length / (cellSize / 4)));
+        int lastX = Integer.MIN_VALUE;
+        int lastY = Integer.MIN_VALUE;
+        for(int s=0; s<=steps; s++) {
+            double t = (double) s / steps;
+            int cx = cellX(x1 + ((x2 - x1) * t));
+            int cy = cellY(y1 + ((y2 - y1) * t));
+            if(cx == lastX && cy == lastY) {
+                continue;
+            }
+
+            for(int nx=cx - 1; nx<=cx + 1; nx++) {
+                for(int ny=cy - 1; ny<=cy + 1; ny++) {
+                    addToCell(nx, ny, segment);
+                }
+            }
+
+            lastX = cx;
+            lastY = cy;
+        }
+    }
+
+    /**
+     * Adds a segment to a cell, unless it is already the last segment in it.
+     * @param cx The X-index of the cell.
+     * @param cy The Y-index of the cell.
+     * @param segment The index of the segment.
+     */
+    private void addToCell(int cx, int cy, int segment) {
+        int slot = findCell(cx, cy);
+        if(slot < 0) {
+            if((cellCount + 1) * 2 > cellKeys.length) {
+                growCells();
+            }
+
+            slot = slotFor(key(cx, cy));
+            cellKeys[slot] = key(cx, cy);
+            cellSegments[slot] = new int[4];
+            cellCounts[slot] = 0;
+            cellCount++;
+            minCellX = Math.min(minCellX, cx);
+            minCellY = Math.min(minCellY, cy);
+            maxCellX = Math.max(maxCellX, cx);
+            maxCellY = Math.max(maxCellY, cy);
+        }
+
+        int count = cellCounts[slot];
+        if(count > 0 && cellSegments[slot][count - 1] == segment) {
+            return;
+        }
+
+        if(count == cellSegments[slot].length) {
+            cellSegments[slot] = Arrays.copyOf(cellSegments[slot], count * 2);
+        }
+
+        cellSegments[slot][count] = segment;
+        cellCounts[slot] = count + 1;
+    }
+
+    /**
+     * Returns the slot holding a cell, or -1 if nothing passes through it.
+     * @param cx The X-index of the cell.
+     * @param cy The Y-index of the cell.
+     */
+    private int findCell(int cx, int cy) {
+        long key = key(cx, cy);
+        int slot = slotFor(key);
+        return (cellKeys[slot] == key ? slot : -1);
+    }
+
+    /**
+     * Returns the slot that holds a key, or the empty slot where it would go.
+     * @param key The key of the cell.
+     */
+    private int slotFor(long key) {
+        int mask = cellKeys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while(cellKeys[slot] != EMPTY && cellKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the cell table.
+     */
+    private void growCells() {
+        long[] oldKeys = cellKeys;
+        int[][] oldSegments = cellSegments;
+        int[] oldCounts = cellCounts;
+        cellKeys = new long[oldKeys.length * 2];
+        cellSegments = new int[cellKeys.length][];
+        cellCounts = new int[cellKeys.length];
+        Arrays.fill(cellKeys, EMPTY);
+        for(int i=0; i<oldKeys.length; i++) {
+            if(oldKeys[i] != EMPTY) {
+                int slot = slotFor(oldKeys[i]);
+                cellKeys[slot] = oldKeys[i];
+                cellSegments[slot] = oldSegments[i];
+                cellCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Returns true if a segment's bounding box overlaps a rectangle.
+     * @param segment The index of the segment.
+     * @param minX The left edge of the rectangle.
+     * @param minY The bottom edge of the rectangle.
+     * @param maxX The right edge of the rectangle.
+     * @param maxY The top edge of the rectangle.
+     */
+    private boolean overlaps(int segment, double minX, double minY, double maxX, double maxY) {
+        double
+            x1 = renderable.x(segment),
+            y1 = renderable.y(segment),
+            x2 = renderable.x(segment + 1),
+            y2 = renderable.y(segment + 1);
+
+        return Math.max(x1, x2) >= minX && Math.min(x1, x2) <= maxX && Math.max(y1, y2) >= minY && Math.min(y1, y2) <= maxY;
+    }
+
+    /**
+     * Starts a new query, so that every segment counts as unseen.
+     */
+    private void nextStamp() {
+        stamp++;
+        if(stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Returns the X-index of the cell holding an X-coordinate.
+     * @param x The X-coordinate.
+     */
+    private int cellX(double x) {
+        return clampCell(Math.floor((x - originX) / cellSize));
+    }
+
+    /**
+     * Returns the Y-index of the cell holding a Y-coordinate.
+     * @param y The Y-coordinate.
+     */
+    private int cellY(double y) {
+        return clampCell(Math.floor((y - originY) / cellSize));
+    }
+
+    /**
+     * Keeps a cell index far enough inside the range of an int that neighbouring cells can be worked out without overflowing.
+     * @param index The cell index.
+     */
+    private static int clampCell(double index) {
+        return (int) Math.max(Integer.MIN_VALUE / 2, Math.min(Integer.MAX_VALUE / 2, index));
+    }
+
+    /**
+     * Returns the key of a cell in the cell table.
+     * @param cx The X-index of the cell.
+     * @param cy The Y-index of the cell.
+     */
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,153 @@
+package BTK203.comm;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import BTK203.enumeration.MessageType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the FrameDecoder.
+ */
+class FrameDecoderTest {
+    private static final byte[] POSITION_FRAME = FrameEncoder.encodeBinary(MessageType.POSITION, "", "1.23,4.56,78.9".getBytes());
+
+    /**
+     * Frames that arrive one byte at a time should decode the same as frames that arrive all at once.
+     */
+    @Test
+    void decodesFramesSplitAcrossReads() {
+        byte[] text = FrameEncoder.encodeText(MessageType.HANDSHAKE, "", "2");
+        byte[] binary = FrameEncoder.encodeBinary(MessageType.PATH, "a]path", "1.0,2.0,3.0\n]\n".getBytes());
+        byte[] stream = new byte[text.length + binary.length + 3];
+        System.arraycopy(text, 0, stream, 2, text.length); //two bytes of garbage before the first frame
+        System.arraycopy(binary, 0, stream, text.length + 3, binary.length); //and one between the frames
+
+        FrameDecoder decoder = new FrameDecoder();
+        Message[] messages = new Message[2];
+        int received = 0;
+        for(int i=0; i<stream.length; i++) {
+            decoder.feed(stream, i, 1);
+            Message message = decoder.poll();
+            if(message != null) {
+                messages[received++] = message;
+            }
+        }
+
+        assertEquals(2, received);
+        assertEquals(MessageType.HANDSHAKE, messages[0].getType());
+        assertEquals("2", messages[0].getBodyString());
+        assertEquals(MessageType.PATH, messages[1].getType());
+        assertEquals("a]path", messages[1].getInfo());
+        assertEquals("1.0,2.0,3.0\n]\n", messages[1].getBodyString());
+        assertNull(decoder.poll());
+    }
+
+    /**
+     * Frames of a registered custom type should come out with that type, and frames of unregistered types as UNKNOWN.
+     */
+    @Test
+    void decodesCustomTypes() {
+        CustomMessageType target = CustomMessageType.register(200, "Target", message -> null);
+        assertNull(CustomMessageType.register(200, "Other", message -> null), "index is taken");
+        assertNull(CustomMessageType.register(201, "Target", message -> null), "code is taken");
+        assertNull(CustomMessageType.register(201, "Path", message -> null), "code is built in");
+        assertNull(CustomMessageType.register(MessageType.APPEND.getIndex(), "Low", message -> null), "index is kept for built-in types");
+
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] custom = FrameEncoder.encodeBinary(target, "cone", new byte[] { 1, 2, 3 });
+        byte[] unregistered = FrameEncoder.encodeBinary(CustomMessageType.register(202, "Unregistered", message -> null), "", new byte[0]);
+        unregistered[1] = (byte) 203; //a type the robot knows about but we don't
+        decoder.feed(custom, 0, custom.length);
+        decoder.feed(unregistered, 0, unregistered.length);
+
+        Message message = decoder.poll();
+        assertSame(target, message.getSubjectType());
+        assertEquals(MessageType.UNKNOWN, message.getType());
+        assertEquals("Target---cone", message.getSubject());
+        assertEquals(3, message.getBody().length);
+        assertEquals(MessageType.UNKNOWN, decoder.poll().getSubjectType());
+        assertEquals(MessageType.PATH, MessageType.fromString("Path---a]path"));
+        assertEquals(MessageType.WRITE_CHUNK, MessageType.fromIndex(7));
+        assertEquals(MessageType.UNKNOWN, MessageType.fromIndex(200));
+    }
+
+    /**
+     * Custom codes that only start with a built-in code are different codes, so they can be registered and decoded.
+     */
+    @Test
+    void registersCodesThatStartWithBuiltInCodes() {
+        String[] codes = { "PoseEstimate", "PathPlannerTrajectory", "SaveState", "DirtyFlag" };
+        for(int i=0; i<codes.length; i++) {
+            CustomMessageType type = CustomMessageType.register(210 + i, codes[i], message -> null);
+            assertNotNull(type, codes[i]);
+            assertSame(type, CustomMessageType.fromCode(codes[i]));
+        }
+
+        assertNull(CustomMessageType.register(214, "Save", message -> null), "code is built in");
+        FrameDecoder decoder = new FrameDecoder();
+        byte[] frame = FrameEncoder.encodeBinary(CustomMessageType.fromCode("PoseEstimate"), "", new byte[] { 1 });
+        decoder.feed(frame, 0, frame.length);
+        assertSame(CustomMessageType.fromCode("PoseEstimate"), decoder.poll().getSubjectType());
+        assertEquals(MessageType.SAVE, MessageType.fromCode("Save"));
+        assertEquals(MessageType.UNKNOWN, MessageType.fromCode("SaveState"));
+    }
+
+    /**
+     * The buffer should wrap around many times without corrupting frames.
+     */
+    @Test
+    void decodesFramesAcrossBufferWraps() {
+        FrameDecoder decoder = new FrameDecoder();
+        for(int i=0; i<100000; i++) {
+            decoder.feed(POSITION_FRAME, 0, POSITION_FRAME.length);
+            Message message = decoder.poll();
+            assertEquals("1.23,4.56,78.9", message.getBodyString());
+        }
+    }
+
+    /**
+     * Decoding a message should cost the same amount of memory no matter how many messages are waiting behind it.
+     */
+    @Test
+    void allocationPerMessageIsStableRegardlessOfBacklog() {
+        measureAllocationPerMessage(10000); //warm up
+        double smallBacklog = measureAllocationPerMessage(100);
+        double largeBacklog = measureAllocationPerMessage(100000);
+        System.out.println("Bytes allocated per message: " + smallBacklog + " (100 backlogged), " + largeBacklog + " (100000 backlogged)");
+        assertTrue(largeBacklog <= smallBacklog * 1.5 + 16, "allocation per message grew with backlog");
+    }
+
+    /**
+     * Fills a decoder with a backlog of position frames, then measures the bytes allocated per message while draining it.
+     * @param backlog The number of frames to queue before decoding.
+     * @return The average number of bytes allocated per decoded message.
+     */
+    private double measureAllocationPerMessage(int backlog) {
+        FrameDecoder decoder = new FrameDecoder();
+        for(int i=0; i<backlog; i++) {
+            decoder.feed(POSITION_FRAME, 0, POSITION_FRAME.length);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        int decoded = 0;
+        while(decoder.poll() != null) {
+            decoded++;
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        assertEquals(backlog, decoded);
+        System.out.println("Decoded " + decoded + " messages at " + (long) (decoded / (elapsed / 1e9)) + " messages/s");
+        return allocated / (double) decoded;
+    }
+}
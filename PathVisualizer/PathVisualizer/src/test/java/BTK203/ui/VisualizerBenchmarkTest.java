@@ -0,0 +1,167 @@
+package BTK203.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import BTK203.Constants;
+import BTK203.util.IRenderable;
+import BTK203.util.Path;
+import BTK203.util.Rectangle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares drawing paths with the PolylineBatch to the drawLine() and fillOval() per point that it replaced, on 1,000,000 point scenes.
+ * Both draw the full paths, the way they are drawn before their pyramids are built or when zoomed in.
+ * These depend on timing, so they only run when asked for: mvn test -Dbenchmark=true
+ */
+class VisualizerBenchmarkTest {
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 800;
+    private static final int POINTS = 1000000;
+    private static final int ROUNDS = 5; //the best time of this many rounds is reported, after one round of warm-up
+
+    /**
+     * Times drawing one path of a million points, and five paths of 200,000.
+     */
+    @Test
+    void drawsMillionPointScenesFasterThanPerPointCalls() {
+        assumeTrue(Boolean.getBoolean("benchmark"), "Benchmarks only run with -Dbenchmark=true");
+
+        System.out.println("Drawing " + POINTS + " points into a " + WIDTH + "x" + HEIGHT + " image, best of " + ROUNDS + ":");
+        compare("one path", randomWalks(1, POINTS));
+        compare("five paths", randomWalks(5, POINTS / 5));
+    }
+
+    /**
+     * Times drawing a scene both ways, and checks that they draw exactly the same pixels.
+     * @param description What the scene is.
+     * @param paths The paths in the scene.
+     */
+    private static void compare(String description, Path[] paths) {
+        Rectangle bounds = paths[0].getBounds();
+        for(Path path : paths) {
+            bounds = bounds.union(path.getBounds());
+        }
+
+        double xScale = (WIDTH - (3 * Constants.DEFAULT_HORIZONTAL_MARGIN)) / bounds.getWidth();
+        double yScale = (HEIGHT - (3 * Constants.DEFAULT_VERTICAL_MARGIN)) / bounds.getHeight();
+        double scale = Math.min(xScale, yScale);
+        BufferedImage legacyImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        BufferedImage batchedImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        PolylineBatch batch = new PolylineBatch();
+        long legacy = Long.MAX_VALUE;
+        long batched = Long.MAX_VALUE;
+        for(int round=0; round<=ROUNDS; round++) {
+            long start = System.nanoTime();
+            Graphics2D g = legacyImage.createGraphics();
+            paintLegacy(g, paths, bounds, scale);
+            g.dispose();
+            long legacyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            g = batchedImage.createGraphics();
+            paintBatched(g, batch, paths, bounds, scale);
+            g.dispose();
+            long batchedTime = System.nanoTime() - start;
+
+            if(round > 0) {
+                legacy = Math.min(legacy, legacyTime);
+                batched = Math.min(batched, batchedTime);
+            }
+        }
+
+        int different = 0;
+        for(int y=0; y<HEIGHT; y++) {
+            for(int x=0; x<WIDTH; x++) {
+                if(legacyImage.getRGB(x, y) != batchedImage.getRGB(x, y)) {
+                    different++;
+                }
+            }
+        }
+
+        System.out.println("  " + description + ":");
+        System.out.println("    drawLine + fillOval: " + String.format("%.1f", 1e9 / legacy) + " fps (" + (legacy / 1000000) + " ms)");
+        System.out.println("    PolylineBatch:       " + String.format("%.1f", 1e9 / batched) + " fps (" + (batched / 1000000) + " ms, " + String.format("%.1f", (double) legacy / batched) + "x faster)");
+        assertEquals(0, different, "both ways should draw the same pixels");
+    }
+
+    /**
+     * Draws paths the way the Visualizer did before the PolylineBatch.
+     * @param g The graphics to draw with.
+     * @param paths The paths to draw.
+     * @param bounds The bounds of the paths.
+     * @param scale The number of pixels per path unit.
+     */
+    private static void paintLegacy(Graphics2D g, Path[] paths, Rectangle bounds, double scale) {
+        g.setColor(Constants.SECONDARY_BACKGROUND);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        for(IRenderable path : paths) {
+            g.setColor(path.getColor());
+            for(int k=1; k<path.size(); k++) {
+                double
+                    p1ImageX = ((path.x(k-1) - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN,
+                    p1ImageY = ((path.y(k-1) - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN,
+                    p2ImageX = ((path.x(k) - bounds.getX()) * scale) + Constants.DEFAULT_HORIZONTAL_MARGIN,
+                    p2ImageY = ((path.y(k) - bounds.getY()) * scale) + Constants.DEFAULT_VERTICAL_MARGIN;
+
+                g.drawLine((int) p1ImageX, (int) p1ImageY, (int) p2ImageX, (int) p2ImageY);
+                g.fillOval((int) p2ImageX - (Constants.POINT_MARK_DIAMETER / 2), (int) p2ImageY - (Constants.POINT_MARK_DIAMETER / 2), Constants.POINT_MARK_DIAMETER, Constants.POINT_MARK_DIAMETER);
+            }
+        }
+    }
+
+    /**
+     * Draws paths the way the Visualizer draws full paths now.
+     * @param g The graphics to draw with.
+     * @param batch The batch to draw with.
+     * @param paths The paths to draw.
+     * @param bounds The bounds of the paths.
+     * @param scale The number of pixels per path unit.
+     */
+    private static void paintBatched(Graphics2D g, PolylineBatch batch, Path[] paths, Rectangle bounds, double scale) {
+        g.setColor(Constants.SECONDARY_BACKGROUND);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        for(IRenderable path : paths) {
+            batch.begin(g, path, bounds, scale, null, WIDTH, HEIGHT);
+            for(int k=1; k<path.size(); k++) {
+                if(batch.lineTo(k-1, k)) {
+                    batch.mark(k);
+                }
+            }
+
+            batch.finish();
+        }
+    }
+
+    /**
+     * Creates wandering paths that cross each other.
+     * @param count The number of paths.
+     * @param points The number of points in each path.
+     */
+    private static Path[] randomWalks(int count, int points) {
+        Random random = new Random(203);
+        Path[] paths = new Path[count];
+        for(int p=0; p<count; p++) {
+            double[] xs = new double[points];
+            double[] ys = new double[points];
+            double[] headings = new double[points];
+            double heading = 0;
+            for(int i=1; i<points; i++) {
+                heading += random.nextGaussian() * 0.2;
+                xs[i] = xs[i - 1] + Math.cos(heading) * 0.01;
+                ys[i] = ys[i - 1] + Math.sin(heading) * 0.01;
+                headings[i] = heading;
+            }
+
+            paths[p] = new Path(xs, ys, headings, Color.getHSBColor(p * Constants.NEXTCOLOR_HUE_INCREMENT, 1f, 0.75f), "walk " + p);
+        }
+
+        return paths;
+    }
+}
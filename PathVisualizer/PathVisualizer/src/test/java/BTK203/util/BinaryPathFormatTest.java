@@ -0,0 +1,172 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import BTK203.Constants;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round-trip tests for the binary path format.
+ */
+class BinaryPathFormatTest {
+    /**
+     * A text path converted to binary and back should be exactly the same file.
+     * The legacy writer truncates, and truncating twice can change a point, so the text is written exactly both times.
+     */
+    @Test
+    void textToBinaryToTextIsByteIdentical() {
+        byte[] text = new PathWriter(true).toBytes(randomPath(20000, false));
+        Path fromText = Path.fromBytes(text, 0, text.length, "text");
+
+        byte[] binary = BinaryPathFormat.toBytes(fromText);
+        Path fromBinary = Path.fromBytes(binary, 0, binary.length, "binary");
+        assertArrayEquals(text, new PathWriter(true).toBytes(fromBinary));
+        assertArrayEquals(new PathWriter().toBytes(fromText), new PathWriter().toBytes(fromBinary));
+    }
+
+    /**
+     * A binary path converted to exact text and back should be exactly the same file, down to the last bit of every double.
+     */
+    @Test
+    void binaryToTextToBinaryIsLossless() {
+        Path original = randomPath(20000, true);
+        byte[] binary = BinaryPathFormat.toBytes(original);
+        Path fromBinary = Path.fromBytes(binary, 0, binary.length, "binary");
+
+        byte[] text = new PathWriter(true).toBytes(fromBinary);
+        Path fromText = Path.fromBytes(text, 0, text.length, "text");
+        assertArrayEquals(binary, BinaryPathFormat.toBytes(fromText));
+    }
+
+    /**
+     * The header should hold the point count and the bounds of the readable points, and unreadable points should survive as NaN.
+     */
+    @Test
+    void writesHeaderAndKeepsUnreadablePoints() throws IOException {
+        Path path = new Path(new Point2D[] { new Point2D(1, -2, 3), null, new Point2D(-4, 5, 6) }, Color.BLACK, "test");
+        byte[] binary = BinaryPathFormat.toBytes(path);
+        assertEquals(BinaryPathFormat.HEADER_SIZE + (3 * 24), binary.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(binary).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(3, buffer.getInt(8));
+        Rectangle bounds = BinaryPathFormat.getBounds(buffer);
+        assertEquals(-4, bounds.getX());
+        assertEquals(-2, bounds.getY());
+        assertEquals(5, bounds.getWidth());
+        assertEquals(7, bounds.getHeight());
+
+        Path read = Path.fromBytes(binary, 0, binary.length, "test");
+        assertEquals(3, read.size());
+        assertTrue(Double.isNaN(read.x(1)));
+        assertEquals(6, read.heading(2));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BinaryPathFormat.write(path, Channels.newChannel(stream));
+        assertArrayEquals(binary, stream.toByteArray());
+    }
+
+    /**
+     * Files should be opened in the right format whatever their size, and big binary files should be mapped.
+     */
+    @Test
+    void opensBinaryFilesEagerlyAndMapped() throws IOException {
+        Path original = randomPath(Constants.MAPPED_PATH_THRESHOLD / 24 + 100, true); //just over the mapping threshold once written
+        byte[] binary = BinaryPathFormat.toBytes(original);
+        java.nio.file.Path file = Files.createTempFile("binary-path", Constants.BINARY_FILE_SUFFIX);
+        file.toFile().deleteOnExit(); //a mapped file can't be deleted on Windows until it is unmapped
+        Files.write(file, binary);
+
+        Path opened = Path.fromFile(file.toString(), Color.BLACK);
+        assertTrue(opened instanceof MappedBinaryPath);
+        assertTrue(opened.isValid());
+        assertEquals(original.size(), opened.size());
+        for(int i=0; i<opened.size(); i+=997) {
+            assertEquals(original.x(i), opened.x(i));
+            assertEquals(original.y(i), opened.y(i));
+            assertEquals(original.heading(i), opened.heading(i));
+        }
+
+        assertEquals(BinaryPathFormat.getBounds(ByteBuffer.wrap(binary).order(ByteOrder.LITTLE_ENDIAN)).getX(), ((MappedBinaryPath) opened).getBounds().getX());
+
+        java.nio.file.Path small = Files.createTempFile("binary-path", Constants.BINARY_FILE_SUFFIX);
+        small.toFile().deleteOnExit();
+        Files.write(small, Arrays.copyOf(binary, BinaryPathFormat.HEADER_SIZE + (24 * 10)));
+        Path smallOpened = Path.fromFile(small.toString(), Color.BLACK);
+        assertFalse(smallOpened instanceof MappedBinaryPath);
+        assertFalse(smallOpened.isValid(), "the header says there are many more points than the file holds");
+    }
+
+    /**
+     * Records from a later version may have more channels. Readers should skip them using the record size, and should refuse versions they don't know.
+     */
+    @Test
+    void readsLongerRecordsAndRejectsNewerVersions() {
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryPathFormat.HEADER_SIZE + (2 * 32)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(BinaryPathFormat.MAGIC).putShort((short) 1).putShort((short) 0).putInt(2).putInt(32);
+        buffer.putDouble(1).putDouble(2).putDouble(3).putDouble(4);
+        buffer.putDouble(1).putDouble(2).putDouble(99).putDouble(99);
+        buffer.putDouble(3).putDouble(4).putDouble(99).putDouble(99);
+        byte[] binary = buffer.array();
+
+        Path path = Path.fromBytes(binary, 0, binary.length, "future");
+        assertEquals(2, path.size());
+        assertEquals(3, path.x(1));
+        assertEquals(4, path.y(1));
+        assertEquals(0, path.heading(1), "no heading channel");
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            binary[4] = 2; //version 2
+            assertNull(Path.fromBytes(binary, 0, binary.length, "future"));
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Creates a path of random points.
+     * @param points The number of points.
+     * @param fullPrecision True for coordinates with every bit used, false for coordinates that are already rounded to hundredths, like text files.
+     */
+    private static Path randomPath(int points, boolean fullPrecision) {
+        Random random = new Random(203);
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        double[] headings = new double[points];
+        for(int i=0; i<points; i++) {
+            xs[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8) - 2);
+            ys[i] = (random.nextDouble() - 0.5) * 100;
+            headings[i] = random.nextDouble() * 360;
+            if(!fullPrecision) {
+                xs[i] = Util.roundTo(xs[i], 2);
+                ys[i] = Util.roundTo(ys[i], 2);
+            }
+        }
+
+        if(fullPrecision) {
+            xs[0] = -0.0;
+            ys[0] = Double.MIN_VALUE;
+            headings[0] = Double.MAX_VALUE;
+            xs[1] = 1e-300;
+        }
+
+        return new Path(xs, ys, headings, Color.BLACK, "random");
+    }
+}
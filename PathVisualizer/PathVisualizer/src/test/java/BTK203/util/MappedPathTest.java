@@ -0,0 +1,96 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import BTK203.Constants;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the MappedPath.
+ */
+class MappedPathTest {
+    /**
+     * A mapped path should read exactly the same points as a path read all at once, across many blocks, in any order.
+     */
+    @Test
+    void readsSamePointsAsEagerPath() throws IOException {
+        Random random = new Random(203);
+        int points = (Constants.MAPPED_PATH_BLOCK_SIZE * (Constants.MAPPED_PATH_CACHED_BLOCKS + 3)) + 17; //more blocks than the cache holds
+        StringBuilder contents = new StringBuilder();
+        for(int i=0; i<points; i++) {
+            if(i == 5000) {
+                contents.append("not a point\n");
+            } else {
+                contents.append(new Point2D(random.nextDouble() * 50, random.nextDouble() * 30, random.nextDouble() * 360).toString()).append(i % 3 == 0 ? "\r\n" : "\n");
+            }
+        }
+
+        java.nio.file.Path file = writeTempFile(contents.toString() + "\n\n");
+        Path eager = new Path(file.toString(), Color.BLACK);
+        MappedPath mapped = new MappedPath(file.toString(), Color.BLACK);
+        assertTrue(mapped.isValid());
+        assertEquals(eager.size(), mapped.size());
+        assertEquals(eager.getName(), mapped.getName());
+        assertTrue(Double.isNaN(mapped.x(5000)));
+
+        for(int i=mapped.size() - 1; i>=0; i-=7) { //backwards, so the cache is missed all the time
+            assertSamePoint(eager, mapped, i);
+        }
+
+        for(int k=0; k<2000; k++) {
+            assertSamePoint(eager, mapped, random.nextInt(mapped.size()));
+        }
+
+        assertEquals(eager.toString(), mapped.toString());
+    }
+
+    /**
+     * Small and odd files should be split into lines the same way as Path.fromBytes().
+     */
+    @Test
+    void splitsLinesLikeFromBytes() throws IOException {
+        String[] files = { "", "\n", "\n\n", "1,2,3", "1,2,3\n", "1,2,3\n\n4,5,6", "\n1,2,3" };
+        for(String contents : files) {
+            java.nio.file.Path file = writeTempFile(contents);
+            byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+            Path expected = Path.fromBytes(bytes, 0, bytes.length, "expected");
+            MappedPath mapped = new MappedPath(file.toString(), Color.BLACK);
+            assertEquals(expected.size(), mapped.size(), contents);
+            for(int i=0; i<mapped.size(); i++) {
+                assertSamePoint(expected, mapped, i);
+            }
+        }
+    }
+
+    /**
+     * Asserts that two paths have the same point at an index.
+     * @param expected The path with the right answer.
+     * @param actual The path being tested.
+     * @param index The index of the point.
+     */
+    private static void assertSamePoint(Path expected, Path actual, int index) {
+        assertEquals(expected.x(index), actual.x(index), "x of point " + index);
+        assertEquals(expected.y(index), actual.y(index), "y of point " + index);
+        assertEquals(expected.heading(index), actual.heading(index), "heading of point " + index);
+    }
+
+    /**
+     * Writes a temporary path file.
+     * @param contents The contents of the file.
+     * @return The location of the file.
+     */
+    private static java.nio.file.Path writeTempFile(String contents) throws IOException {
+        java.nio.file.Path file = Files.createTempFile("mapped-path", Constants.FILE_SUFFIX);
+        file.toFile().deleteOnExit(); //a mapped file can't be deleted on Windows until it is unmapped
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,173 @@
+package BTK203.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import BTK203.Constants;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the PointParser to the String.split() and Double.valueOf() parsing it replaced, on a 1,000,000 point path,
+ * and shows how the PathParser scales with the number of threads on a 4,000,000 point path.
+ * These depend on timing, so they only run when asked for: mvn test -Dbenchmark=true
+ */
+class PathParseBenchmarkTest {
+    private static final int POINTS = 1000000;
+    private static final int PARALLEL_POINTS = 4000000;
+    private static final int ROUNDS = 5; //the best time of this many rounds is reported, after one round of warm-up
+
+    /**
+     * Times reading a whole path file both ways.
+     */
+    @Test
+    void parsesMillionPointPathFasterThanSplit() {
+        assumeTrue(Boolean.getBoolean("benchmark"), "Benchmarks only run with -Dbenchmark=true");
+
+        byte[] file = createPathFile(POINTS);
+        long legacy = Long.MAX_VALUE;
+        long parser = Long.MAX_VALUE;
+        for(int round=0; round<=ROUNDS; round++) {
+            long start = System.nanoTime();
+            Point2D[] legacyPoints = parseLegacy(new String(file, StandardCharsets.UTF_8));
+            long legacyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Path path = Path.fromBytes(file, 0, file.length, "benchmark");
+            long parserTime = System.nanoTime() - start;
+
+            assertEquals(legacyPoints.length, path.size());
+            assertEquals(legacyPoints[POINTS - 1].getHeading(), path.heading(POINTS - 1));
+            if(round > 0) {
+                legacy = Math.min(legacy, legacyTime);
+                parser = Math.min(parser, parserTime);
+            }
+        }
+
+        System.out.println("Parsing " + POINTS + " points (" + file.length + " bytes), best of " + ROUNDS + ":");
+        System.out.println("  split + Double.valueOf: " + (legacy / 1000000) + " ms");
+        System.out.println("  PointParser:            " + (parser / 1000000) + " ms (" + String.format("%.1f", (double) legacy / parser) + "x faster)");
+    }
+
+    /**
+     * Times reading single points, the way text POSITION messages are read.
+     */
+    @Test
+    void parsesSinglePointsFasterThanSplit() {
+        assumeTrue(Boolean.getBoolean("benchmark"), "Benchmarks only run with -Dbenchmark=true");
+
+        byte[] file = createPathFile(POINTS);
+        String[] lines = new String(file, StandardCharsets.UTF_8).split("\n");
+        PointParser pointParser = new PointParser();
+        long legacy = Long.MAX_VALUE;
+        long parser = Long.MAX_VALUE;
+        double checksum = 0;
+        for(int round=0; round<=ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(String line : lines) {
+                checksum += parsePointLegacy(line).getX();
+            }
+
+            long legacyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(String line : lines) {
+                pointParser.parse(line, 0, line.length());
+                checksum -= pointParser.getX();
+            }
+
+            long parserTime = System.nanoTime() - start;
+            if(round > 0) {
+                legacy = Math.min(legacy, legacyTime);
+                parser = Math.min(parser, parserTime);
+            }
+        }
+
+        assertEquals(0, checksum, 1e-3);
+        System.out.println("Parsing " + POINTS + " single points, best of " + ROUNDS + ":");
+        System.out.println("  Point2D.fromString (split): " + (legacy / POINTS) + " ns/point");
+        System.out.println("  PointParser:                " + (parser / POINTS) + " ns/point");
+    }
+
+    /**
+     * Times reading a whole path file with pools of 1, 2, 4, ... threads, up to the number of cores.
+     */
+    @Test
+    void parsesInParallelOnEveryCore() {
+        assumeTrue(Boolean.getBoolean("benchmark"), "Benchmarks only run with -Dbenchmark=true");
+
+        byte[] file = createPathFile(PARALLEL_POINTS);
+        int cores = Runtime.getRuntime().availableProcessors();
+        long oneThread = 0;
+        System.out.println("Parsing " + PARALLEL_POINTS + " points (" + file.length + " bytes) in parallel, best of " + ROUNDS + ":");
+        int threads = 0;
+        while(threads < cores) {
+            threads = Math.min(cores, Math.max(1, threads * 2));
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            try {
+                for(int round=0; round<=ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    double[][] columns = PathParser.parse(file, 0, file.length, "benchmark", 0, pool, Constants.PARALLEL_PARSE_CHUNK_SIZE);
+                    long time = System.nanoTime() - start;
+                    assertEquals(PARALLEL_POINTS, columns[0].length);
+                    if(round > 0) {
+                        best = Math.min(best, time);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            if(threads == 1) {
+                oneThread = best;
+            }
+
+            System.out.println("  " + threads + " thread(s): " + (best / 1000000) + " ms (" + String.format("%.1f", (double) oneThread / best) + "x)");
+        }
+    }
+
+    /**
+     * Creates the contents of a path file, in the format written by Path.toString().
+     * @param points The number of points in the file.
+     */
+    private static byte[] createPathFile(int points) {
+        Random random = new Random(203);
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<points; i++) {
+            builder.append(new Point2D(random.nextDouble() * 50, random.nextDouble() * 30, random.nextDouble() * 360).toString()).append('\n');
+        }
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a path the way it was read before the PointParser.
+     * @param contents The contents of the path file.
+     */
+    private static Point2D[] parseLegacy(String contents) {
+        String[] pointStrings = contents.split("\n");
+        Point2D[] points = new Point2D[pointStrings.length];
+        for(int i=0; i<pointStrings.length; i++) {
+            points[i] = parsePointLegacy(pointStrings[i]);
+        }
+
+        return points;
+    }
+
+    /**
+     * Reads a point the way Point2D.fromString() did before the PointParser.
+     * @param input The point.
+     */
+    private static Point2D parsePointLegacy(String input) {
+        String[] parts = input.split(",");
+        double x = Double.valueOf(parts[0]).doubleValue();
+        double y = Double.valueOf(parts[1]).doubleValue();
+        double heading = Double.valueOf(parts[2]).doubleValue();
+        return new Point2D(x, y, heading);
+    }
+}
@@ -0,0 +1,116 @@
+package BTK203.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the PathParser.
+ */
+class PathParserTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /**
+     * Shuts down the pool used by the tests.
+     */
+    @AfterAll
+    static void shutDownPool() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Cutting a file into many tiny chunks should read exactly the same points, in the same order, as reading it in one piece.
+     */
+    @Test
+    void parsesSamePointsInChunks() {
+        Random random = new Random(203);
+        StringBuilder contents = new StringBuilder();
+        for(int i=0; i<5000; i++) {
+            if(i % 1000 == 999) {
+                contents.append("not a point\n");
+            } else {
+                contents.append(new Point2D(random.nextDouble() * 50, random.nextDouble() * 30, random.nextDouble() * 360).toString()).append(i % 3 == 0 ? "\r\n" : "\n");
+            }
+        }
+
+        byte[] data = (contents.toString() + "\n\n").getBytes(StandardCharsets.UTF_8);
+        double[][] whole = quietly(data, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        for(int chunkSize : new int[] { 1, 7, 100, 4096 }) {
+            double[][] chunked = quietly(data, Integer.MAX_VALUE, chunkSize);
+            for(int c=0; c<3; c++) {
+                assertArrayEquals(whole[c], chunked[c], "chunk size " + chunkSize);
+            }
+        }
+
+        assertEquals(5000, whole[0].length);
+        assertEquals(Double.NaN, whole[0][999]);
+    }
+
+    /**
+     * Small and odd files should be split into lines like String.split("\n"), however small the chunks are.
+     */
+    @Test
+    void splitsLinesLikeSplit() {
+        String[] files = { "", "\n", "\n\n", "1,2,3", "1,2,3\n", "1,2,3\n\n4,5,6", "\n1,2,3", "1,2,3\n4,5,6\n7,8,9\n" };
+        for(String contents : files) {
+            byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+            int expected = contents.split("\n").length;
+            for(int chunkSize : new int[] { 1, 2, Integer.MAX_VALUE }) {
+                assertEquals(expected, quietly(data, Integer.MAX_VALUE, chunkSize)[0].length, "\"" + contents + "\" in chunks of " + chunkSize);
+            }
+        }
+    }
+
+    /**
+     * Invalid lines should be counted across the whole file, not per chunk, and the first ones should be reported in order.
+     */
+    @Test
+    void countsInvalidLinesAcrossChunks() {
+        StringBuilder contents = new StringBuilder();
+        for(int i=0; i<100; i++) {
+            contents.append(i % 20 == 19 ? "bad\n" : "1,2,3\n"); //5 invalid lines, spread over many chunks
+        }
+
+        byte[] data = contents.toString().getBytes(StandardCharsets.UTF_8);
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            assertNotNull(PathParser.parse(data, 0, data.length, "test", 5, POOL, 8));
+            assertNull(PathParser.parse(data, 0, data.length, "test", 4, POOL, 8));
+        } finally {
+            System.setOut(console);
+        }
+
+        String[] lines = output.toString().split("\\R");
+        assertEquals("test: line 20 is not a valid point (expected 3 comma-separated numbers)", lines[0]);
+        assertEquals("test: line 100 is not a valid point (expected 3 comma-separated numbers)", lines[4]);
+        assertEquals("test: too many invalid points, giving up.", lines[lines.length - 1]);
+    }
+
+    /**
+     * Parses a file on the test pool without printing anything.
+     * @param data The file contents.
+     * @param maxNullPoints The most lines that may be invalid.
+     * @param chunkSize The smallest chunk size.
+     */
+    private static double[][] quietly(byte[] data, int maxNullPoints, int chunkSize) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            return PathParser.parse(data, 0, data.length, "test", maxNullPoints, POOL, chunkSize);
+        } finally {
+            System.setOut(console);
+        }
+    }
+}
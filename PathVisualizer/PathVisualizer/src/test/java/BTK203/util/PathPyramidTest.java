@@ -0,0 +1,127 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import BTK203.Constants;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the PathPyramid.
+ */
+class PathPyramidTest {
+    /**
+     * Every level should stay within its tolerance of the full path, and no point marker should be left out unless one is drawn close enough to merge with it.
+     */
+    @Test
+    void levelsStayWithinTolerance() {
+        Path path = randomWalk(20000);
+        PathPyramid pyramid = new PathPyramid(path);
+        assertTrue(pyramid.getLevelCount() > 3);
+        for(int level=0; level<pyramid.getLevelCount(); level++) {
+            double tolerance = pyramid.getTolerance(level) + 1e-5; //the pyramid works in floats
+            int[] line = pyramid.getLine(level);
+            for(int k=1; k<line.length; k++) {
+                int start = line[k - 1];
+                int end = line[k];
+                if(Double.isNaN(path.x(start)) || Double.isNaN(path.x(end))) {
+                    for(int i=start + 1; i<end; i++) {
+                        assertTrue(Double.isNaN(path.x(i)), "the line may only be broken where the path is");
+                    }
+
+                    continue;
+                }
+
+                for(int i=start + 1; i<end; i++) {
+                    assertTrue(distanceToSegment(path, i, start, end) <= tolerance, "point " + i + " at level " + level);
+                }
+            }
+
+            int[] markers = pyramid.getMarkers(level);
+            double spacing = (pyramid.getTolerance(level) * Constants.LOD_MARKER_SPACING / Constants.LOD_PIXEL_TOLERANCE) + 1e-5;
+            int next = 0;
+            for(int i=1; i<path.size(); i++) {
+                if(Double.isNaN(path.x(i)) || Double.isNaN(path.x(i - 1))) {
+                    continue;
+                }
+
+                while(next + 1 < markers.length && markers[next + 1] <= i) {
+                    next++;
+                }
+
+                assertTrue(markers[next] <= i && Math.hypot(path.x(i) - path.x(markers[next]), path.y(i) - path.y(markers[next])) <= spacing, "marker " + i + " at level " + level);
+            }
+
+            if(level > 0) {
+                assertTrue(pyramid.getTolerance(level) < pyramid.getTolerance(level - 1));
+                assertTrue(line.length >= 2 * pyramid.getLine(level - 1).length);
+            }
+        }
+    }
+
+    /**
+     * The coarsest level with a small enough tolerance should be picked, and nothing when only the full path will do.
+     */
+    @Test
+    void picksCoarsestLevelWithinTolerance() {
+        PathPyramid pyramid = new PathPyramid(randomWalk(20000));
+        assertEquals(0, pyramid.levelFor(Double.MAX_VALUE));
+        assertEquals(-1, pyramid.levelFor(0));
+        int finest = pyramid.getLevelCount() - 1;
+        assertEquals(finest, pyramid.levelFor(pyramid.getTolerance(finest)));
+        assertEquals(-1, pyramid.levelFor(pyramid.getTolerance(finest) / 2));
+    }
+
+    /**
+     * Small paths aren't worth simplifying.
+     */
+    @Test
+    void leavesSmallPathsAlone() {
+        assertEquals(0, new PathPyramid(randomWalk(10)).getLevelCount());
+    }
+
+    /**
+     * Creates a wandering path with a few gaps in it.
+     * @param points The number of points.
+     */
+    private static Path randomWalk(int points) {
+        Random random = new Random(203);
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        double[] headings = new double[points];
+        double heading = 0;
+        for(int i=1; i<points; i++) {
+            heading += random.nextGaussian() * 0.2;
+            xs[i] = xs[i - 1] + Math.cos(heading) * 0.01;
+            ys[i] = ys[i - 1] + Math.sin(heading) * 0.01;
+            headings[i] = heading;
+        }
+
+        for(int i=1000; i<points; i+=3000) {
+            xs[i] = xs[i + 1] = Double.NaN;
+            ys[i] = ys[i + 1] = Double.NaN;
+        }
+
+        return new Path(xs, ys, headings, Color.BLACK, "walk");
+    }
+
+    /**
+     * Returns the distance from a point of a path to the segment between two others.
+     * @param path The path.
+     * @param point The index of the point.
+     * @param start The index of the start of the segment.
+     * @param end The index of the end of the segment.
+     */
+    private static double distanceToSegment(Path path, int point, int start, int end) {
+        double dx = path.x(end) - path.x(start);
+        double dy = path.y(end) - path.y(start);
+        double lengthSquared = (dx * dx) + (dy * dy);
+        double t = (lengthSquared == 0 ? 0 : (((path.x(point) - path.x(start)) * dx) + ((path.y(point) - path.y(start)) * dy)) / lengthSquared);
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(path.x(point) - (path.x(start) + (t * dx)), path.y(point) - (path.y(start) + (t * dy)));
+    }
+}
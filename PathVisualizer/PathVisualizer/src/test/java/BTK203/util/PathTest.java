@@ -0,0 +1,126 @@
+package BTK203.util;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for growing a Path.
+ */
+class PathTest {
+    /**
+     * Appended points should end up after the existing ones, in order, however many times the columns have to grow.
+     */
+    @Test
+    void appendsPointsInOrder() {
+        Path path = new Path(new double[0], new double[0], new double[0], Color.BLACK, "growing");
+        assertFalse(path.isValid());
+        for(int i=0; i<10000; i+=4) {
+            path.append(new Path(new double[] { i, i + 1, Double.NaN, i + 3 }, new double[] { -i, -i - 1, Double.NaN, -i - 3 }, new double[] { 0, 1, Double.NaN, 3 }, Color.BLACK, "points"));
+        }
+
+        assertTrue(path.isValid());
+        assertEquals(10000, path.size());
+        for(int i=0; i<10000; i++) {
+            if(i % 4 == 2) {
+                assertTrue(Double.isNaN(path.x(i)));
+            } else {
+                assertEquals(i, path.x(i));
+                assertEquals(-i, path.y(i));
+            }
+        }
+
+        assertEquals(10000, path.getPoints().length);
+        assertNull(path.getPoints()[2]);
+        assertEquals(7500, path.toString().split("\n").length);
+    }
+
+    /**
+     * The point view should be rebuilt once points have been added.
+     */
+    @Test
+    void forgetsPointViewWhenAppending() {
+        Path path = new Path(new Point2D[] { new Point2D(1, 2, 3) }, Color.BLACK, "growing");
+        Point2D[] before = path.getPoints();
+        assertSame(before, path.getPoints());
+        path.append(new Path(new Point2D[] { new Point2D(4, 5, 6) }, Color.BLACK, "points"));
+        assertEquals(2, path.getPoints().length);
+        assertEquals(4, path.getPoints()[1].getX());
+    }
+
+    /**
+     * The pyramid should be rebuilt once the path has doubled, and not before, and the grid should pick up new segments when updated.
+     */
+    @Test
+    void rebuildsPyramidWhenOutgrown() {
+        Path path = new Path(new double[0], new double[0], new double[0], Color.BLACK, "growing");
+        path.append(line(0, 2000));
+        PathPyramid first = path.buildPyramid().join();
+        assertEquals(2000, first.getSize());
+
+        path.append(line(2000, 1000));
+        assertSame(first, path.buildPyramid().join());
+
+        path.append(line(3000, 1000));
+        PathPyramid second = path.buildPyramid().join();
+        assertEquals(4000, second.getSize());
+        assertSame(second, path.getPyramid());
+
+        SegmentGrid grid = path.buildSegmentGrid().join();
+        path.append(line(4000, 10));
+        grid.update();
+        assertEquals(4010, grid.getIndexedSize());
+        assertEquals(4008, grid.nearest(4008.5, Math.sin(4008.5), 1)[0]);
+    }
+
+    /**
+     * Bounds should be measured once and then follow the points that are appended, skipping unreadable ones.
+     */
+    @Test
+    void keepsBoundsWhenAppending() {
+        Path path = new Path(new double[0], new double[0], new double[0], Color.BLACK, "growing");
+        assertNull(path.getBounds());
+        path.append(new Path(new double[] { 1, Double.NaN }, new double[] { 2, Double.NaN }, new double[2], Color.BLACK, "points"));
+        assertBounds(1, 2, 1, 2, path.getBounds());
+        path.append(new Path(new double[] { -3, 5 }, new double[] { 4, -6 }, new double[2], Color.BLACK, "points"));
+        assertBounds(-3, -6, 5, 4, path.getBounds());
+
+        Path wave = line(0, 2000);
+        assertBounds(0, -1, 1999, 1, wave.getBounds());
+        wave.append(line(2000, 10));
+        Rectangle measured = Rectangle.around(wave);
+        assertBounds(measured.getX(), measured.getY(), measured.getMaxX(), measured.getMaxY(), wave.getBounds());
+    }
+
+    /**
+     * Checks the edges of a rectangle.
+     */
+    private static void assertBounds(double minX, double minY, double maxX, double maxY, Rectangle bounds) {
+        assertEquals(minX, bounds.getX(), 1e-3);
+        assertEquals(minY, bounds.getY(), 1e-3);
+        assertEquals(maxX, bounds.getMaxX(), 1e-3);
+        assertEquals(maxY, bounds.getMaxY(), 1e-3);
+    }
+
+    /**
+     * Creates a wavy line of points, one unit apart.
+     * @param start The X-coordinate of the first point.
+     * @param count The number of points.
+     */
+    private static Path line(int start, int count) {
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for(int i=0; i<count; i++) {
+            xs[i] = start + i;
+            ys[i] = Math.sin(start + i);
+        }
+
+        return new Path(xs, ys, new double[count], Color.BLACK, "line");
+    }
+}
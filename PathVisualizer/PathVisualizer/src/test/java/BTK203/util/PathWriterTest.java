@@ -0,0 +1,87 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the PathWriter.
+ */
+class PathWriterTest {
+    /**
+     * Every way of writing a path should give exactly the bytes that the old String concatenation did.
+     */
+    @Test
+    void writesSameBytesAsStringConcatenation() throws IOException {
+        Random random = new Random(203);
+        Point2D[] points = new Point2D[50000];
+        for(int i=0; i<points.length; i++) {
+            double scale = Math.pow(10, random.nextInt(10) - 3);
+            points[i] = new Point2D((random.nextDouble() - 0.5) * scale, (random.nextDouble() - 0.5) * scale, (random.nextDouble() - 0.5) * 720);
+        }
+
+        points[3] = new Point2D(-0.0, 1e-9, Double.MIN_VALUE);
+        points[4] = new Point2D(1e7, -2.5e6, 1e300);
+        Path path = new Path(points, Color.BLACK, "test");
+        String expected = formatLegacy(points);
+        assertEquals(expected, path.toString());
+        assertWritesAs(expected, path);
+    }
+
+    /**
+     * Points that could not be read should be left out, and a Position should be written without a newline, just like their toString() methods.
+     */
+    @Test
+    void matchesToStringOfEveryRenderable() throws IOException {
+        Path path = Path.fromString("1,2,3\nnot a point\n4.567,8.912,3.4\n", "test");
+        assertWritesAs("1.0,2.0,3.0\n4.56,8.91,3.4\n", path);
+        assertWritesAs(path.toString(), path);
+
+        Position position = new Position(new Point2D(1.239, -4.5, 90), Color.BLACK, "robot");
+        assertWritesAs("1.23,-4.5,90.0", position);
+        assertWritesAs(position.toString(), position);
+    }
+
+    /**
+     * Asserts that every way of writing a renderable gives the expected text.
+     * @param expected The text that should be written.
+     * @param renderable The renderable to write.
+     */
+    private static void assertWritesAs(String expected, IRenderable renderable) throws IOException {
+        PathWriter writer = new PathWriter();
+        byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expectedBytes, writer.toBytes(renderable));
+
+        StringWriter stringWriter = new StringWriter();
+        writer.write(renderable, stringWriter);
+        assertEquals(expected, stringWriter.toString());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.write(renderable, Channels.newChannel(stream));
+        assertArrayEquals(expectedBytes, stream.toByteArray());
+    }
+
+    /**
+     * Formats points the way Path.toString() did before the PathWriter.
+     * @param points The points to format.
+     */
+    private static String formatLegacy(Point2D[] points) {
+        StringBuilder builder = new StringBuilder();
+        for(Point2D point : points) {
+            double roundedX = Util.roundTo(point.getX(), 2);
+            double roundedY = Util.roundTo(point.getY(), 2);
+            builder.append(Double.valueOf(roundedX).toString() + "," + Double.valueOf(roundedY).toString() + "," + Double.valueOf(point.getHeading()).toString()).append("\n");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package BTK203.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the PointParser.
+ */
+class PointParserTest {
+    /**
+     * Every number in the output of Point2D.toString() should read back as exactly the double that Double.valueOf() gives.
+     */
+    @Test
+    void matchesDoubleValueOfOnPointToStringOutput() {
+        Random random = new Random(203);
+        PointParser parser = new PointParser();
+        for(int i=0; i<200000; i++) {
+            double scale = Math.pow(10, random.nextInt(12) - 4);
+            Point2D point = new Point2D((random.nextDouble() - 0.5) * scale, (random.nextDouble() - 0.5) * scale, (random.nextDouble() - 0.5) * 720);
+            String text = point.toString();
+            String[] parts = text.split(",");
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+            assertTrue(parser.parse(bytes, 0, bytes.length), text);
+            assertSameDouble(Double.valueOf(parts[0]), parser.getX(), text);
+            assertSameDouble(Double.valueOf(parts[1]), parser.getY(), text);
+            assertSameDouble(Double.valueOf(parts[2]), parser.getHeading(), text);
+
+            assertTrue(parser.parse(text, 0, text.length()), text);
+            assertSameDouble(Double.valueOf(parts[2]), parser.getHeading(), text);
+        }
+    }
+
+    /**
+     * Unusual numbers that Double.valueOf() accepts should be accepted too, with the same result.
+     */
+    @Test
+    void acceptsEverythingDoubleValueOfAccepts() {
+        String[] numbers = {
+            "0", "-0.0", "+1", "1.", ".5", "007.50", " 1.5 ", "1.5\r", "1e3", "1.0E-5", "-2.5e+2", "1.5f", "2D",
+            "4.9E-324", "1.7976931348623157E308", "1e400", "1e-400", "123456789012345678901234567890",
+            "0.1000000000000000055511151231257827", "9007199254740993", "NaN", "-Infinity", "0x1p3"
+        };
+
+        PointParser parser = new PointParser();
+        for(String number : numbers) {
+            String text = number + "," + number + "," + number;
+            assertTrue(parser.parse(text, 0, text.length()), text);
+            assertSameDouble(Double.valueOf(number), parser.getX(), text);
+            assertSameDouble(Double.valueOf(number), parser.getHeading(), text);
+        }
+
+        assertTrue(parser.parse("1,2,3,extra", 0, 11), "anything after a third comma is ignored, like String.split()");
+        assertSameDouble(3, parser.getHeading(), "1,2,3,extra");
+    }
+
+    /**
+     * Text that is not a point should be rejected with a reason.
+     */
+    @Test
+    void rejectsMalformedPoints() {
+        String[] points = { "", "1", "1,2", "1,,3", "a,2,3", "1,2,3x", "1,2,-", "1,2,1e", "1.2.3,2,3", "1,2,\u00e93" };
+        PointParser parser = new PointParser();
+        for(String point : points) {
+            assertFalse(parser.parse(point, 0, point.length()), point);
+            assertNotNull(parser.getError(), point);
+
+            byte[] bytes = point.getBytes(StandardCharsets.UTF_8);
+            assertFalse(parser.parse(bytes, 0, bytes.length), point);
+            assertNull(Point2D.fromString(point), point);
+        }
+    }
+
+    /**
+     * Paths should say which lines they could not read.
+     */
+    @Test
+    void pathsReportMalformedLinesByLineNumber() {
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            Path path = Path.fromString("1,2,3\n4,5,6\nfour,5,6\n7,8,9\n", "test.hpt");
+            assertEquals(4, path.size());
+            assertTrue(Double.isNaN(path.x(2)));
+            assertSameDouble(7, path.x(3), "line 4");
+        } finally {
+            System.setOut(console);
+        }
+
+        String report = output.toString();
+        assertTrue(report.contains("test.hpt: line 3 "), report);
+        assertTrue(report.contains("four"), report);
+    }
+
+    /**
+     * Asserts that two doubles have exactly the same bits.
+     * @param expected The expected value.
+     * @param actual The actual value.
+     * @param input The text that was parsed, for the failure message.
+     */
+    private static void assertSameDouble(double expected, double actual, String input) {
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual), input);
+    }
+}
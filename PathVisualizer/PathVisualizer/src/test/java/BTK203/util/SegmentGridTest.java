@@ -0,0 +1,170 @@
+package BTK203.util;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the SegmentGrid.
+ */
+class SegmentGridTest {
+    /**
+     * Rectangle queries should find exactly the segments whose bounding boxes overlap the rectangle, in order.
+     */
+    @Test
+    void findsSegmentsInRectangles() {
+        GrowingPath path = randomWalk(20000);
+        SegmentGrid grid = new SegmentGrid(path);
+        Random random = new Random(1);
+        for(int q=0; q<200; q++) {
+            double x = (random.nextDouble() * 4) - 2;
+            double y = (random.nextDouble() * 4) - 2;
+            double size = random.nextDouble() * (q < 100 ? 0.2 : 3);
+            assertArrayEquals(scan(path, x, y, x + size, y + size), grid.query(x, y, x + size, y + size));
+        }
+
+        assertEquals(0, grid.query(100, 100, 101, 101).length);
+    }
+
+    /**
+     * Nearest queries should agree with looking at every segment, even far outside the path.
+     */
+    @Test
+    void findsNearestSegments() {
+        GrowingPath path = randomWalk(20000);
+        SegmentGrid grid = new SegmentGrid(path);
+        Random random = new Random(2);
+        for(int q=0; q<200; q++) {
+            double spread = (q < 190 ? 4 : 400);
+            double x = (random.nextDouble() - 0.5) * spread;
+            double y = (random.nextDouble() - 0.5) * spread;
+            int[] nearest = grid.nearest(x, y, 5);
+            double[] expected = nearestDistances(path, grid, x, y, 5);
+            assertEquals(5, nearest.length);
+            for(int i=0; i<nearest.length; i++) {
+                assertEquals(expected[i], grid.distanceTo(nearest[i], x, y), 1e-12);
+            }
+        }
+    }
+
+    /**
+     * Points added to the end of a path should be findable after an update, without the grid being rebuilt.
+     */
+    @Test
+    void indexesPointsAddedLater() {
+        GrowingPath full = randomWalk(20000);
+        GrowingPath growing = new GrowingPath(0);
+        for(int i=0; i<100; i++) {
+            growing.add(full.x(i), full.y(i));
+        }
+
+        SegmentGrid grid = new SegmentGrid(growing);
+        for(int i=100; i<full.size(); i++) {
+            growing.add(full.x(i), full.y(i));
+            if(i % 5000 == 0 || i == full.size() - 1) {
+                grid.update();
+            }
+        }
+
+        assertEquals(full.size(), grid.getIndexedSize());
+        assertArrayEquals(scan(full, -1, -1, 1, 1), grid.query(-1, -1, 1, 1));
+        assertArrayEquals(scan(full, -50, -50, 50, 50), grid.query(-50, -50, 50, 50));
+    }
+
+    /**
+     * Finds the segments whose bounding boxes overlap a rectangle by looking at every one.
+     */
+    private static int[] scan(IRenderable path, double minX, double minY, double maxX, double maxY) {
+        int[] found = new int[path.size()];
+        int count = 0;
+        for(int i=0; i<path.size() - 1; i++) {
+            double x1 = path.x(i), y1 = path.y(i), x2 = path.x(i + 1), y2 = path.y(i + 1);
+            if(!Double.isNaN(x1) && !Double.isNaN(x2) && Math.max(x1, x2) >= minX && Math.min(x1, x2) <= maxX && Math.max(y1, y2) >= minY && Math.min(y1, y2) <= maxY) {
+                found[count++] = i;
+            }
+        }
+
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Finds the distances to the closest segments by looking at every one.
+     */
+    private static double[] nearestDistances(IRenderable path, SegmentGrid grid, double x, double y, int k) {
+        double[] distances = new double[path.size()];
+        int count = 0;
+        for(int i=0; i<path.size() - 1; i++) {
+            if(!Double.isNaN(path.x(i)) && !Double.isNaN(path.x(i + 1))) {
+                distances[count++] = grid.distanceTo(i, x, y);
+            }
+        }
+
+        Arrays.sort(distances, 0, count);
+        return Arrays.copyOf(distances, k);
+    }
+
+    /**
+     * Creates a wandering path with a few gaps and one long jump in it.
+     * @param points The number of points.
+     */
+    private static GrowingPath randomWalk(int points) {
+        Random random = new Random(203);
+        GrowingPath path = new GrowingPath(points);
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for(int i=0; i<points; i++) {
+            heading += random.nextGaussian() * 0.3;
+            x += Math.cos(heading) * 0.01;
+            y += Math.sin(heading) * 0.01;
+            if(i == 12345) {
+                x += 30; //far across many cells
+            }
+
+            path.add((i % 4000 == 3999 ? Double.NaN : x), y);
+        }
+
+        return path;
+    }
+
+    /**
+     * A renderable that points can be added to, like a path being streamed from the robot.
+     */
+    private static class GrowingPath implements IRenderable {
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private int size = 0;
+
+        GrowingPath(int capacity) {
+            xs = new double[Math.max(16, capacity)];
+            ys = new double[xs.length];
+        }
+
+        void add(double x, double y) {
+            if(size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        public Point2D[] getPoints() { return null; }
+        public int size() { return size; }
+        public double x(int index) { return xs[index]; }
+        public double y(int index) { return ys[index]; }
+        public double heading(int index) { return 0; }
+        public Color getColor() { return Color.BLACK; }
+        public boolean isVisible() { return true; }
+        public boolean isValid() { return true; }
+        public void setVisible(boolean visible) { }
+        public String getName() { return "growing"; }
+    }
+}
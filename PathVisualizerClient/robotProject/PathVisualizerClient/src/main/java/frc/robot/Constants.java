@@ -14,7 +14,23 @@ package frc.robot;
  */
 public final class Constants {
     public static final int
-        SOCKET_BUFFER_SIZE = 128000;
+        SOCKET_BUFFER_SIZE = 128000,
+        TRANSFER_CHUNK_SIZE = 16000, //16 kB. Largest piece of a file or path sent in one frame, so position updates never wait long behind it.
+        HOST_WORKER_THREADS = 3, //threads that PVHost uses for file work, so requests from the client can overlap
+        MAX_FRAGMENT_SIZE = 8192, //8 kB. Largest piece of a reply sent before waiting positions get a turn
+        HOST_SEND_BUFFER_SIZE = 16384; //16 kB. Socket send buffer. Bulk data already handed to the socket can't be overtaken, so this is kept small
+
+    /**
+     * Position encoding defaults. The client reads the resolutions from each keyframe, so these can be changed freely.
+     */
+    public static final double
+        POSITION_LINEAR_RESOLUTION  = 0.001, //1 mm if the robot works in meters
+        POSITION_ANGULAR_RESOLUTION = 0.01;  //0.01 degrees
+
+    public static final int
+        POSITION_KEYFRAME_INTERVAL = 50,  //one keyframe every second at 50 hz
+        POSITION_BATCH_SIZE        = 25,  //most positions sent in one frame. Half a second at 50 hz
+        POSITION_FLUSH_INTERVAL    = 100; //ms between position frames. 0 sends every position as soon as it arrives
 
     /**
      * Message Format Constants. These should exactly match those from the PathVisualizer code.
@@ -24,4 +40,19 @@ public final class Constants {
         END_SEQUENCE = "]",
         SPLIT_SEQUENCE = ":::",
         SUBJECT_SEQUENCE = "---";
+
+    /**
+     * Binary (v2) protocol constants. These should exactly match those from the PathVisualizer code.
+     * Binary frames are formatted as such: [magic byte] [type index] [flags] [payload length (int)] [payload]
+     */
+    public static final int
+        TEXT_PROTOCOL_VERSION   = 1,
+        BINARY_PROTOCOL_VERSION = 2,
+        FRAME_HEADER_SIZE       = 7,
+        MAX_FRAME_PAYLOAD       = 64000000, //64 MB. Anything bigger than this is assumed to be a corrupted header.
+        MESSAGE_TYPE_COUNT      = 256, //number of type indices that fit in a frame header
+        FIRST_CUSTOM_MESSAGE_TYPE = 64; //indices below this are kept for built-in MessageTypes. Custom types use the rest
+
+    public static final byte
+        FRAME_MAGIC = (byte) 0xB7; //never valid as the first byte of a text frame, so both framings can share a stream.
 }
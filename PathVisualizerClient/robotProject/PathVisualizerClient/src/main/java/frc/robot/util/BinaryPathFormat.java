@@ -0,0 +1,143 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Reads and writes the binary path format (.hptb), which stores points as raw doubles so they can be read without any parsing.
+ * This must exactly match the format used by the PathVisualizer client.
+ * Everything is little-endian. The file starts with a fixed-size header:
+ * [magic (4 bytes)] [version (short)] [channel flags (short)] [point count (int)] [record size (int)] [min x] [min y] [max x] [max y]
+ * followed by one fixed-size record per point: [x] [y] [heading, if FLAG_HEADING is set]. All coordinates are doubles.
+ * Readers must use the record size from the header, so that later versions can add channels to the end of each record.
+ */
+public class BinaryPathFormat {
+    public static final byte[] MAGIC = { (byte) 0x89, 'H', 'P', 'B' }; //0x89 can never start a text point, so the formats can't be confused
+    public static final int
+        VERSION      = 1,
+        HEADER_SIZE  = 48,
+        FLAG_HEADING = 0x01; //records have a heading after x and y
+
+    private static final int
+        VERSION_OFFSET     = 4,
+        FLAGS_OFFSET       = 6,
+        COUNT_OFFSET       = 8,
+        RECORD_SIZE_OFFSET = 12;
+
+    /**
+     * Returns true if the data starts with the binary path magic.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     */
+    public static boolean isBinary(byte[] data, int offset, int length) {
+        if(length < MAGIC.length) {
+            return false;
+        }
+
+        for(int i=0; i<MAGIC.length; i++) {
+            if(data[offset + i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Encodes a path in the binary format.
+     * @param path The path to encode.
+     * @return The file contents.
+     */
+    public static byte[] toBytes(Path path) {
+        int size = path.size();
+        double
+            minX = Double.NaN,
+            minY = Double.NaN,
+            maxX = Double.NaN,
+            maxY = Double.NaN;
+
+        for(int i=0; i<size; i++) {
+            double x = path.x(i);
+            double y = path.y(i);
+            if(Double.isNaN(x)) {
+                continue;
+            }
+
+            if(Double.isNaN(minX)) {
+                minX = maxX = x;
+                minY = maxY = y;
+            } else {
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (size * 24)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) FLAG_HEADING);
+        buffer.putInt(size);
+        buffer.putInt(24);
+        buffer.putDouble(minX);
+        buffer.putDouble(minY);
+        buffer.putDouble(maxX);
+        buffer.putDouble(maxY);
+        for(int i=0; i<size; i++) {
+            buffer.putDouble(path.x(i));
+            buffer.putDouble(path.y(i));
+            buffer.putDouble(path.heading(i));
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Reads the points of a binary path file.
+     * @param data The array holding the file contents.
+     * @param offset The index of the first byte of the file.
+     * @param length The number of bytes in the file.
+     * @return The X-coordinates, Y-coordinates and headings of the points, in that order, or null if the file is not a valid binary path.
+     */
+    public static double[][] readColumns(byte[] data, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+        if(length < HEADER_SIZE || !isBinary(data, offset, length)) {
+            DriverStation.reportError("Path: not a binary path file!", false);
+            return null;
+        }
+
+        int version = buffer.getShort(VERSION_OFFSET) & 0xFFFF;
+        if(version > VERSION) {
+            DriverStation.reportError("Path: binary path version " + version + " is newer than this robot understands (" + VERSION + ")!", false);
+            return null;
+        }
+
+        boolean hasHeading = (buffer.getShort(FLAGS_OFFSET) & FLAG_HEADING) != 0;
+        int count = buffer.getInt(COUNT_OFFSET);
+        int recordSize = buffer.getInt(RECORD_SIZE_OFFSET);
+        if(count < 0 || recordSize < (hasHeading ? 24 : 16) || (long) HEADER_SIZE + ((long) count * recordSize) > length) {
+            DriverStation.reportError("Path: binary path file is corrupted or cut short!", false);
+            return null;
+        }
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] headings = new double[count];
+        for(int i=0; i<count; i++) {
+            int record = HEADER_SIZE + (i * recordSize);
+            xs[i] = buffer.getDouble(record);
+            ys[i] = buffer.getDouble(record + 8);
+            headings[i] = (hasHeading ? buffer.getDouble(record + 16) : 0);
+        }
+
+        return new double[][] { xs, ys, headings };
+    }
+}
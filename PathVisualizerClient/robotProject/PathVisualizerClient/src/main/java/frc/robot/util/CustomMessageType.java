@@ -0,0 +1,110 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants;
+
+/**
+ * A message type that isn't built into PathVisualizer, such as a vision target or a planned trajectory.
+ * Values are turned into message bodies by the Encoder given here, and sent with PVHost.send().
+ * PathVisualizer must register a type with the same index and code, along with a codec that decodes the bodies into something it can draw.
+ * @param <T> The type of value that messages of this type carry.
+ */
+public class CustomMessageType<T> implements IMessageType {
+    private static final CustomMessageType<?>[] TYPES_BY_INDEX = new CustomMessageType<?>[Constants.MESSAGE_TYPE_COUNT];
+    private static final ConcurrentHashMap<String, CustomMessageType<?>> TYPES_BY_CODE = new ConcurrentHashMap<String, CustomMessageType<?>>();
+
+    private final int index;
+    private final String code;
+    private final Encoder<T> encoder;
+
+    /**
+     * Turns a value into the body of a message.
+     * @param <T> The type of value to encode.
+     */
+    public interface Encoder<T> {
+        /**
+         * Encodes a value. Runs on the thread that sends it.
+         * @param value The value to encode.
+         * @return The body of the message.
+         */
+        public byte[] encode(T value);
+    }
+
+    /**
+     * Creates a new CustomMessageType. Use register() instead.
+     * @param index The index of the type.
+     * @param code The code of the type.
+     * @param encoder The encoder that turns values into message bodies.
+     */
+    private CustomMessageType(int index, String code, Encoder<T> encoder) {
+        this.index = index;
+        this.code = code;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Registers a new type, so that values can be sent to PathVisualizer with it.
+     * @param <T> The type of value that messages of this type carry.
+     * @param index The index of the type, from Constants.FIRST_CUSTOM_MESSAGE_TYPE to Constants.MESSAGE_TYPE_COUNT - 1.
+     * @param code The code of the type. Must not be used by any other type.
+     * @param encoder The encoder that turns values into message bodies.
+     * @return The registered type, or null if the index or code was invalid or already taken.
+     */
+    public static synchronized <T> CustomMessageType<T> register(int index, String code, Encoder<T> encoder) {
+        if(index < Constants.FIRST_CUSTOM_MESSAGE_TYPE || index >= Constants.MESSAGE_TYPE_COUNT) {
+            DriverStation.reportError("Could not register message type \"" + code + "\": index " + index + " is out of range!", false);
+            return null;
+        }
+
+        if(TYPES_BY_INDEX[index] != null) {
+            DriverStation.reportError("Could not register message type \"" + code + "\": index " + index + " is already used by \"" + TYPES_BY_INDEX[index].getCode() + "\"!", false);
+            return null;
+        }
+
+        if(code.isEmpty() || code.contains(Constants.SUBJECT_SEQUENCE) || code.contains(Constants.SPLIT_SEQUENCE) || code.contains(Constants.END_SEQUENCE)) {
+            DriverStation.reportError("Could not register message type \"" + code + "\": the code is not valid!", false);
+            return null;
+        }
+
+        if(TYPES_BY_CODE.containsKey(code) || MessageType.fromCode(code) != MessageType.UNKNOWN) {
+            DriverStation.reportError("Could not register message type \"" + code + "\": the code is already used!", false);
+            return null;
+        }
+
+        CustomMessageType<T> type = new CustomMessageType<T>(index, code, encoder);
+        TYPES_BY_CODE.put(code, type);
+        TYPES_BY_INDEX[index] = type;
+        return type;
+    }
+
+    /**
+     * Gets the index of the type.
+     * @return The index, which identifies the type in binary frames.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the code of the type.
+     * @return The code, which identifies the type in text frames and error messages.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Encodes a value of this type.
+     * @param value The value to encode.
+     * @return The body of the message.
+     */
+    public byte[] encode(T value) {
+        return encoder.encode(value);
+    }
+}
@@ -0,0 +1,231 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import frc.robot.Constants;
+
+/**
+ * Pulls complete messages out of the raw bytes received from the client.
+ * Text (v1) and binary (v2) frames may be mixed freely in the same stream; the first byte of each frame tells them apart.
+ * The decoder remembers how far it got, so a frame that is split across many reads is only ever scanned once.
+ */
+public class FrameDecoder {
+    private static final byte
+        START_BYTE = (byte) Constants.START_SEQUENCE.charAt(0),
+        END_BYTE   = (byte) Constants.END_SEQUENCE.charAt(0);
+
+    /**
+     * What the decoder is waiting for.
+     */
+    private enum State {
+        FRAME_START,    //skipping bytes until a start sequence or magic byte
+        TEXT_FRAME,     //scanning a text frame for its end sequence
+        BINARY_HEADER,  //waiting for the rest of a binary header
+        BINARY_PAYLOAD; //waiting for the rest of a binary payload
+    }
+
+    private RingBuffer buffer;
+    private State state;
+    private int
+        scanned, //number of bytes of the current text frame that have already been searched for the end sequence
+        flags,
+        type,
+        payloadLength;
+
+    private byte[] scratch; //reused to hold text frames while they are turned into Strings
+
+    /**
+     * Creates a new FrameDecoder.
+     */
+    public FrameDecoder() {
+        buffer = new RingBuffer(Constants.SOCKET_BUFFER_SIZE);
+        scratch = new byte[256];
+        reset();
+    }
+
+    /**
+     * Adds received bytes to the decoder.
+     * @param bytes The array holding the received bytes.
+     * @param offset The index of the first received byte.
+     * @param count The number of bytes received.
+     */
+    public void feed(byte[] bytes, int offset, int count) {
+        buffer.write(bytes, offset, count);
+    }
+
+    /**
+     * Reads whatever is available from the stream directly into the decoder.
+     * @param stream The stream to read from.
+     * @return The number of bytes read, or -1 if the stream has ended.
+     */
+    public int readFrom(InputStream stream) throws IOException {
+        return buffer.readFrom(stream);
+    }
+
+    /**
+     * Reads whatever is available from the channel directly into the decoder.
+     * @param channel The channel to read from.
+     * @return The number of bytes read, or -1 if the channel has reached end-of-stream.
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        return buffer.readFrom(channel);
+    }
+
+    /**
+     * Returns the next complete message, or null if there isn't one yet.
+     */
+    public Message poll() {
+        while(true) {
+            switch(state) {
+                case FRAME_START: {
+                        if(buffer.size() == 0) {
+                            return null;
+                        }
+
+                        byte first = buffer.get(0);
+                        if(first == START_BYTE) {
+                            state = State.TEXT_FRAME;
+                            scanned = 1;
+                        } else if(first == Constants.FRAME_MAGIC) {
+                            state = State.BINARY_HEADER;
+                        } else {
+                            buffer.skip(1); //garbage between frames
+                        }
+                    }
+                    break;
+                case TEXT_FRAME: {
+                        int end = buffer.indexOf(END_BYTE, scanned);
+                        if(end < 0) {
+                            scanned = buffer.size(); //next time, only look at the new bytes
+                            return null;
+                        }
+
+                        Message message = decodeText(end);
+                        buffer.skip(end + 1);
+                        state = State.FRAME_START;
+                        if(message != null) {
+                            return message;
+                        }
+                    }
+                    break;
+                case BINARY_HEADER: {
+                        if(buffer.size() < Constants.FRAME_HEADER_SIZE) {
+                            return null;
+                        }
+
+                        type = buffer.get(1) & 0xFF;
+                        flags = buffer.get(2) & 0xFF;
+                        payloadLength = buffer.getInt(3);
+                        if(payloadLength < 0 || payloadLength > Constants.MAX_FRAME_PAYLOAD) {
+                            buffer.skip(1); //not actually a frame. Skip the magic byte and keep looking.
+                            state = State.FRAME_START;
+                            break;
+                        }
+
+                        buffer.ensureCapacity(Constants.FRAME_HEADER_SIZE + payloadLength);
+                        state = State.BINARY_PAYLOAD;
+                    }
+                    break;
+                case BINARY_PAYLOAD: {
+                        if(buffer.size() < Constants.FRAME_HEADER_SIZE + payloadLength) {
+                            return null;
+                        }
+
+                        Message message = decodeBinary();
+                        buffer.skip(Constants.FRAME_HEADER_SIZE + payloadLength);
+                        state = State.FRAME_START;
+                        if(message != null) {
+                            return message;
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Discards all buffered data. Use this when the connection is reset.
+     */
+    public void reset() {
+        buffer.clear();
+        state = State.FRAME_START;
+        scanned = 0;
+    }
+
+    /**
+     * Decodes the text frame at the head of the buffer.
+     * @param end The offset of the end sequence.
+     * @return The decoded message, or null if the frame was incomplete.
+     */
+    private Message decodeText(int end) {
+        int frameLength = end - 1;
+        if(scratch.length < frameLength) {
+            scratch = new byte[Math.max(scratch.length * 2, frameLength)];
+        }
+
+        buffer.copyTo(1, scratch, 0, frameLength);
+        String frame = new String(scratch, 0, frameLength);
+        int splitSequenceIndex = frame.indexOf(Constants.SPLIT_SEQUENCE);
+        if(splitSequenceIndex < 0) {
+            return null;
+        }
+
+        String subject = frame.substring(0, splitSequenceIndex);
+        String body = frame.substring(splitSequenceIndex + Constants.SPLIT_SEQUENCE.length());
+        String info = "";
+        if(subject.contains(Constants.SUBJECT_SEQUENCE)) {
+            info = subject.substring(subject.indexOf(Constants.SUBJECT_SEQUENCE) + Constants.SUBJECT_SEQUENCE.length());
+        }
+
+        return new Message(MessageType.fromString(subject), 0, info, body.getBytes());
+    }
+
+    /**
+     * Decodes the payload of the binary frame at the head of the buffer.
+     * @return The decoded message, or null if the payload was invalid.
+     */
+    private Message decodeBinary() {
+        int position = Constants.FRAME_HEADER_SIZE;
+        int end = Constants.FRAME_HEADER_SIZE + payloadLength;
+        String info = "";
+        if((flags & Message.FLAG_INFO) != 0) {
+            if(payloadLength < 2) {
+                return null;
+            }
+
+            int infoLength = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+            if(infoLength > payloadLength - 2) {
+                return null; //info runs off the end of the frame. Data was invalid!
+            }
+
+            if(scratch.length < infoLength) {
+                scratch = new byte[Math.max(scratch.length * 2, infoLength)];
+            }
+
+            buffer.copyTo(position + 2, scratch, 0, infoLength);
+            info = new String(scratch, 0, infoLength, StandardCharsets.UTF_8);
+            position += 2 + infoLength;
+        }
+
+        int requestId = 0;
+        if((flags & Message.FLAG_REQUEST_ID) != 0) {
+            if(end - position < 4) {
+                return null;
+            }
+
+            requestId = buffer.getInt(position);
+            position += 4;
+        }
+
+        byte[] body = new byte[end - position];
+        buffer.copyTo(position, body, 0, body.length);
+        return new Message(MessageType.fromIndex(type), flags, requestId, info, body);
+    }
+}
@@ -0,0 +1,140 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import frc.robot.Constants;
+
+/**
+ * Turns messages into bytes that can be sent to the client, in either the text (v1) or binary (v2) framing.
+ */
+public class FrameEncoder {
+    private FrameEncoder() {
+    }
+
+    /**
+     * Creates a properly formatted text message for the client.
+     * Format: "[start sequence] [subject] [subject sequence if there is info] [info] [split sequence] [message] [end sequence]"
+     * @param subject The subject of the message.
+     * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+     * @param message The contents of the message.
+     * @return The encoded message.
+     */
+    public static byte[] encodeText(IMessageType subject, String info, String message) {
+        return (Constants.START_SEQUENCE + composeSubject(subject, info) + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE).getBytes();
+    }
+
+    /**
+     * Creates a properly formatted binary frame for the client.
+     * Format: [magic byte] [type index] [flags] [payload length] [info length (short)] [info] [body]
+     * The info length and info are only present if info is not empty.
+     * @param subject The subject of the message.
+     * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+     * @param body The raw body of the message.
+     * @return The encoded frame.
+     */
+    public static byte[] encodeBinary(IMessageType subject, String info, byte[] body) {
+        return encodeBinary(subject, 0, info, body, body.length);
+    }
+
+    /**
+     * Creates a properly formatted binary frame for the client.
+     * @param subject The subject of the message.
+     * @param flags Flags describing the body (see Message). FLAG_INFO is added automatically if info is not empty.
+     * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+     * @param body An array holding the raw body of the message.
+     * @param bodyLength The number of bytes of body to send.
+     * @return The encoded frame.
+     */
+    public static byte[] encodeBinary(IMessageType subject, int flags, String info, byte[] body, int bodyLength) {
+        return encodeBinary(subject, flags, 0, info, body, bodyLength);
+    }
+
+    /**
+     * Creates a properly formatted binary frame for the client, tagged with a request id.
+     * Format: [magic byte] [type index] [flags] [payload length] [info length (short)] [info] [request id (int)] [body]
+     * @param subject The subject of the message.
+     * @param flags Flags describing the body (see Message). FLAG_INFO and FLAG_REQUEST_ID are added automatically.
+     * @param requestId The id of the request that the message is or answers. If 0, the message is not tagged.
+     * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+     * @param body An array holding the raw body of the message.
+     * @param bodyLength The number of bytes of body to send.
+     * @return The encoded frame.
+     */
+    public static byte[] encodeBinary(IMessageType subject, int flags, int requestId, String info, byte[] body, int bodyLength) {
+        byte[] header = encodeHeader(subject, flags, requestId, info, bodyLength);
+        byte[] frame = Arrays.copyOf(header, header.length + bodyLength);
+        System.arraycopy(body, 0, frame, header.length, bodyLength);
+        return frame;
+    }
+
+    /**
+     * Creates everything in a binary frame that comes before the body, so that the body can be sent separately (for example, straight from a file).
+     * Exactly bodyLength bytes of body must be sent right after the header.
+     * @param subject The subject of the message.
+     * @param flags Flags describing the body (see Message). FLAG_INFO and FLAG_REQUEST_ID are added automatically.
+     * @param requestId The id of the request that the message is or answers. If 0, the message is not tagged.
+     * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+     * @param bodyLength The number of bytes of body that will follow the header.
+     * @return The encoded header: [magic byte] [type index] [flags] [payload length] [info length (short)] [info] [request id (int)]
+     */
+    public static byte[] encodeHeader(IMessageType subject, int flags, int requestId, String info, int bodyLength) {
+        byte[] infoBytes = info.getBytes(StandardCharsets.UTF_8);
+        int prefixLength = 0;
+        if(infoBytes.length > 0) {
+            flags |= Message.FLAG_INFO;
+            prefixLength += 2 + infoBytes.length;
+        }
+
+        if(requestId != 0) {
+            flags |= Message.FLAG_REQUEST_ID;
+            prefixLength += 4;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(Constants.FRAME_HEADER_SIZE + prefixLength);
+        header.put(Constants.FRAME_MAGIC);
+        header.put((byte) subject.getIndex());
+        header.put((byte) flags);
+        header.putInt(prefixLength + bodyLength);
+        if(infoBytes.length > 0) {
+            header.putShort((short) infoBytes.length);
+            header.put(infoBytes);
+        }
+
+        if(requestId != 0) {
+            header.putInt(requestId);
+        }
+
+        return header.array();
+    }
+
+    /**
+     * Creates everything in a text message that comes before the message itself, so that the message can be sent separately (for example, straight from a file).
+     * The message must be followed by Constants.END_SEQUENCE.
+     * @param subject The subject of the message.
+     * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+     * @return The encoded header: "[start sequence] [subject] [subject sequence if there is info] [info] [split sequence]"
+     */
+    public static byte[] encodeTextHeader(IMessageType subject, String info) {
+        return (Constants.START_SEQUENCE + composeSubject(subject, info) + Constants.SPLIT_SEQUENCE).getBytes();
+    }
+
+    /**
+     * Creates the subject of a message as it appears in a text frame.
+     * @param subject The type of the message.
+     * @param info The subject info of the message. May be empty.
+     * @return The subject String.
+     */
+    public static String composeSubject(IMessageType subject, String info) {
+        if(info.isEmpty()) {
+            return subject.getCode();
+        }
+
+        return subject.getCode() + Constants.SUBJECT_SEQUENCE + info;
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Anything that can be the subject of a message: one of the built-in MessageTypes, or a type that was registered at runtime.
+ */
+public interface IMessageType {
+    /**
+     * Gets the index of the type. This is how binary frames identify their type, and must match the PathVisualizer code.
+     * @return Index of the type. -1 is unknown.
+     */
+    public int getIndex();
+
+    /**
+     * Gets the string code that represents the type.
+     * @return String code to use. Sent as the subject of text messages.
+     */
+    public String getCode();
+}
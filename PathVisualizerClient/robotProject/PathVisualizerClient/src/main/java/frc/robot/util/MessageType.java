@@ -1,12 +1,39 @@
 package frc.robot.util;
 
-public enum MessageType {
+import java.util.HashMap;
+
+import frc.robot.Constants;
+
+public enum MessageType implements IMessageType {
     UNKNOWN("UNKNOWN", -1),      //MESSAGE FORMATS BY TYPE:
     POSITION("Pos", 0),          //Pos:[point]
     PATH("Path", 1),             //Path-[dir]:[path]
     DIRECTORY_REQUEST("Dir", 2), //Dir:[dir]
     LOAD("Load", 3),             //Load:[path]
-    SAVE("Save", 4);             //save-[path]:[file]
+    SAVE("Save", 4),             //save-[path]:[file]
+    HANDSHAKE("Hello", 5),       //Hello:[highest protocol version supported by sender]
+    READ_CHUNK("ReadChunk", 6),  //ReadChunk-[path]:[transfer id][sequence][offset][length] (binary only, see FileTransfer)
+    WRITE_CHUNK("WriteChunk", 7), //WriteChunk-[path]:[transfer id][sequence][offset][total length][data] (binary only, see FileTransfer)
+    APPEND("Append", 8);         //Append-[name]:[points to add to the end of the path sent with that name]
+
+    private static final MessageType[] TYPES_BY_INDEX; //built-in types by index. Every index fits in the type byte of a binary frame
+    private static final HashMap<String, MessageType> TYPES_BY_CODE;
+
+    static {
+        int maxIndex = 0;
+        for(MessageType type : values()) {
+            maxIndex = Math.max(maxIndex, type.index);
+        }
+
+        TYPES_BY_INDEX = new MessageType[maxIndex + 1];
+        TYPES_BY_CODE = new HashMap<String, MessageType>();
+        for(MessageType type : values()) {
+            if(type.index >= 0) {
+                TYPES_BY_INDEX[type.index] = type;
+                TYPES_BY_CODE.put(type.code, type);
+            }
+        }
+    }
 
     private final String code;
     private final int index;
@@ -40,16 +67,46 @@ public enum MessageType {
 
     /**
      * Returns a MessageType based on the contents of the code.
-     * @param code A MessageType code.
+     * @param code A MessageType code, optionally followed by the subject sequence and info.
      * @return A MessageType corresponding to the value of the code.
      */
     public static MessageType fromString(String code) {
-        for(MessageType type : MessageType.values()) {
-            if(code.startsWith(type.getCode())) {
-                return type;
+        int end = code.indexOf(Constants.SUBJECT_SEQUENCE);
+        MessageType type = TYPES_BY_CODE.get(end < 0 ? code : code.substring(0, end));
+        if(type != null) {
+            return type;
+        }
+
+        //not an exact match. Old senders were only ever matched by prefix, so fall back to that.
+        for(MessageType candidate : values()) {
+            if(code.startsWith(candidate.getCode())) {
+                return candidate;
             }
         }
 
         return UNKNOWN;
     }
+
+    /**
+     * Returns the built-in MessageType with exactly the given code. Unlike fromString(), codes that only start with a built-in code don't match.
+     * @param code A MessageType code, without the subject sequence or info.
+     * @return The MessageType with the code, or UNKNOWN if no built-in type has it.
+     */
+    public static MessageType fromCode(String code) {
+        MessageType type = TYPES_BY_CODE.get(code);
+        return (type != null ? type : UNKNOWN);
+    }
+
+    /**
+     * Returns a MessageType based on its index. This is how binary frames identify their type.
+     * @param index A MessageType index.
+     * @return A MessageType corresponding to the index, or UNKNOWN if it isn't a built-in type.
+     */
+    public static MessageType fromIndex(int index) {
+        if(index < 0 || index >= TYPES_BY_INDEX.length || TYPES_BY_INDEX[index] == null) {
+            return UNKNOWN;
+        }
+
+        return TYPES_BY_INDEX[index];
+    }
 }
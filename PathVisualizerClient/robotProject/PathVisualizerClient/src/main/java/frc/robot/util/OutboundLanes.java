@@ -0,0 +1,336 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import frc.robot.Constants;
+
+/**
+ * Multiplexes everything that PVHost sends over the single connection to the client, using two lanes with different priorities.
+ * The telemetry lane (positions and handshakes) always goes first. The bulk lane (replies and paths) is sent one bounded fragment at a time,
+ * and waiting telemetry is sent between every fragment, so a big file never holds up the robot position for longer than one fragment takes to send.
+ * Waiting bulk messages take turns, one fragment each, so a short reply never waits behind a big file and several files go out together.
+ * Every fragment of a reply is tagged with the request id of its request, and the client puts each reply back together by that id.
+ * Messages without a request id (paths and appends) are put back together by subject and must arrive in order, so they are chained and take their turns one after another.
+ * Text messages can't be split, so each one is sent whole in its turn.
+ * All writing is done by one writer thread, so the threads that queue messages never block on the network.
+ */
+public class OutboundLanes {
+    /**
+     * A message for the bulk lane. The body is an array of bytes, optionally followed by part of a file, which is copied straight from disk to the socket.
+     * In binary framing, bodies bigger than one fragment are split into frames with the FLAG_PARTIAL flag, which the client puts back together.
+     */
+    public static class BulkMessage {
+        private IMessageType type;
+        private int requestId;
+        private String info;
+        private boolean text;
+        private byte[] prefix;
+        private FileChannel file;
+        private long filePosition;
+        private int
+            fileLength,
+            sent; //number of body bytes sent so far
+        private boolean cancelled; //set when the connection is dropped while the writer is sending the message. Guarded by laneLock
+        private BulkMessage next; //the message without a request id that was queued after this one, and waits for this one to finish. Guarded by laneLock
+
+        /**
+         * Creates a new BulkMessage with a body held in memory.
+         * @param type The subject of the message.
+         * @param requestId The id of the request that the message answers, or 0 if there is none.
+         * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+         * @param text True to send the message in the text (v1) framing. Text messages can't be split, so they are sent whole.
+         * @param body The body of the message.
+         */
+        public BulkMessage(IMessageType type, int requestId, String info, boolean text, byte[] body) {
+            this(type, requestId, info, text, body, null, 0, 0);
+        }
+
+        /**
+         * Creates a new BulkMessage whose body ends with part of a file. The message takes ownership of the file, and closes it once it has been sent or dropped.
+         * @param type The subject of the message.
+         * @param requestId The id of the request that the message answers, or 0 if there is none.
+         * @param info Additional info needed for the client to carry out the task depicted by the message. May be empty.
+         * @param text True to send the message in the text (v1) framing. Text messages can't be split, so they are sent whole.
+         * @param prefix Bytes to send before the file contents. May be empty.
+         * @param file The file to send from. May be null if length is 0.
+         * @param position The offset in the file of the first byte to send.
+         * @param length The number of bytes of the file to send.
+         */
+        public BulkMessage(IMessageType type, int requestId, String info, boolean text, byte[] prefix, FileChannel file, long position, int length) {
+            this.type = type;
+            this.requestId = requestId;
+            this.info = info;
+            this.text = text;
+            this.prefix = prefix;
+            this.file = file;
+            this.filePosition = position;
+            this.fileLength = length;
+            this.sent = 0;
+        }
+
+        /**
+         * Sends the next fragment of the message.
+         * @param channel The channel to write to.
+         * @param maxFragmentSize The largest body that one binary frame may hold.
+         * @return True if the whole message has now been sent.
+         */
+        private boolean writeFragment(SocketChannel channel, int maxFragmentSize) throws IOException {
+            int total = prefix.length + fileLength;
+            int length = (text ? total - sent : Math.min(maxFragmentSize, total - sent));
+            boolean last = (sent + length >= total);
+            if(text) {
+                writeFully(channel, ByteBuffer.wrap(FrameEncoder.encodeTextHeader(type, info)));
+            } else {
+                writeFully(channel, ByteBuffer.wrap(FrameEncoder.encodeHeader(type, (last ? 0 : Message.FLAG_PARTIAL), requestId, info, length)));
+            }
+
+            int end = sent + length;
+            if(sent < prefix.length) {
+                int prefixLength = Math.min(end, prefix.length) - sent;
+                writeFully(channel, ByteBuffer.wrap(prefix, sent, prefixLength));
+                sent += prefixLength;
+            }
+
+            while(sent < end) {
+                long transferred = file.transferTo(filePosition + sent - prefix.length, end - sent, channel);
+                if(transferred <= 0) {
+                    throw new IOException("File ended early"); //the frame can't be finished, so the stream is broken
+                }
+
+                sent += transferred;
+            }
+
+            if(text) {
+                writeFully(channel, ByteBuffer.wrap(Constants.END_SEQUENCE.getBytes()));
+            }
+
+            return last;
+        }
+
+        /**
+         * Closes the file that the message was sending from, if any.
+         */
+        private void close() {
+            if(file == null) {
+                return;
+            }
+
+            try {
+                file.close();
+            } catch(IOException ex) {
+                //nothing more can go wrong with a file that we were only reading.
+            }
+        }
+    }
+
+    private final Object laneLock = new Object(); //guards everything below
+    private ArrayDeque<byte[]> telemetryLane;
+    private ArrayDeque<BulkMessage> bulkLane;
+    private SocketChannel channel; //the connection that is being written to, or null if there is none
+    private BulkMessage sending; //the bulk message that the writer is sending a fragment of, or null. The writer closes it, not clearLanes()
+    private BulkMessage lastUntagged; //the last message without a request id that hasn't finished sending, or null
+    private int maxFragmentSize;
+
+    /**
+     * Creates new OutboundLanes and starts the writer thread.
+     * @param maxFragmentSize The largest body that one bulk frame may hold. Telemetry waits for at most one fragment.
+     */
+    public OutboundLanes(int maxFragmentSize) {
+        this.maxFragmentSize = maxFragmentSize;
+        telemetryLane = new ArrayDeque<byte[]>();
+        bulkLane = new ArrayDeque<BulkMessage>();
+        channel = null;
+
+        Thread writerThread = new Thread(this::runWriter, "PVHost Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Starts writing to a new connection. Anything still queued for the old connection is dropped.
+     * @param newChannel The channel of the new connection.
+     */
+    public void connect(SocketChannel newChannel) {
+        synchronized(laneLock) {
+            clearLanes();
+            channel = newChannel;
+        }
+    }
+
+    /**
+     * Stops writing to a connection. Anything still queued for it is dropped.
+     * @param oldChannel The channel of the connection. If it is not the current connection, nothing happens.
+     */
+    public void disconnect(SocketChannel oldChannel) {
+        synchronized(laneLock) {
+            if(oldChannel == channel) {
+                clearLanes();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Queues a frame on the telemetry lane. This method never blocks.
+     * @param destination The connection that the frame is meant for. If it is no longer connected, the frame is dropped.
+     * @param frame The encoded frame.
+     */
+    public void sendTelemetry(SocketChannel destination, byte[] frame) {
+        synchronized(laneLock) {
+            if(destination == null || destination != channel) {
+                return;
+            }
+
+            telemetryLane.add(frame);
+            laneLock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues a message on the bulk lane. This method never blocks.
+     * @param destination The connection that the message is meant for. If it is no longer connected, the message is dropped.
+     * @param message The message.
+     */
+    public void sendBulk(SocketChannel destination, BulkMessage message) {
+        synchronized(laneLock) {
+            if(destination == null || destination != channel) {
+                message.close();
+                return;
+            }
+
+            if(message.requestId != 0) {
+                bulkLane.add(message);
+            } else {
+                //keep messages without a request id in order behind each other
+                if(lastUntagged != null) {
+                    lastUntagged.next = message;
+                } else {
+                    bulkLane.add(message);
+                }
+
+                lastUntagged = message;
+            }
+
+            laneLock.notifyAll();
+        }
+    }
+
+    /**
+     * The writer thread. Sends all waiting telemetry, then one fragment of the bulk message at the head of the lane, and repeats.
+     * A message that isn't finished goes back to the tail of the lane, so every waiting message gets a turn.
+     */
+    private void runWriter() {
+        while(true) {
+            SocketChannel destination;
+            byte[] frame;
+            BulkMessage message;
+            synchronized(laneLock) {
+                while(telemetryLane.isEmpty() && bulkLane.isEmpty()) {
+                    try {
+                        laneLock.wait();
+                    } catch(InterruptedException ex) {
+                        return;
+                    }
+                }
+
+                destination = channel;
+                frame = telemetryLane.poll();
+                message = (frame == null ? bulkLane.poll() : null);
+                sending = message;
+            }
+
+            try {
+                if(frame != null) {
+                    writeFully(destination, ByteBuffer.wrap(frame));
+                } else {
+                    boolean finished = message.writeFragment(destination, maxFragmentSize);
+                    synchronized(laneLock) {
+                        sending = null;
+                        if(!message.cancelled) {
+                            if(finished) {
+                                startNext(message);
+                            } else {
+                                bulkLane.add(message); //back of the line
+                                message = null;
+                            }
+                        }
+                    }
+
+                    if(message != null) {
+                        message.close();
+                    }
+                }
+            } catch(IOException ex) {
+                //the connection is broken, and half a frame may have been sent. Close it; the connection thread will clean up and wait for the client to come back.
+                try {
+                    destination.close();
+                } catch(IOException closeEx) {
+                }
+
+                disconnect(destination);
+                if(message != null) {
+                    synchronized(laneLock) {
+                        sending = null;
+                    }
+
+                    message.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops everything in both lanes. Must be called while holding laneLock.
+     * The message that the writer is in the middle of sending is only marked as cancelled, and the writer closes it once its fragment is done.
+     */
+    private void clearLanes() {
+        telemetryLane.clear();
+        for(BulkMessage message : bulkLane) {
+            for(BulkMessage chained = message; chained != null; chained = chained.next) {
+                chained.close();
+            }
+        }
+
+        bulkLane.clear();
+        lastUntagged = null;
+        if(sending != null) {
+            sending.cancelled = true;
+            for(BulkMessage chained = sending.next; chained != null; chained = chained.next) {
+                chained.close();
+            }
+
+            sending.next = null;
+        }
+    }
+
+    /**
+     * Lets the message that was chained behind a finished message take its turns. Must be called while holding laneLock.
+     * @param finished The message that has finished sending.
+     */
+    private void startNext(BulkMessage finished) {
+        if(finished.next != null) {
+            bulkLane.add(finished.next);
+        } else if(lastUntagged == finished) {
+            lastUntagged = null;
+        }
+    }
+
+    /**
+     * Writes all of a buffer to a channel.
+     * @param channel The channel to write to. Must be in blocking mode.
+     * @param buffer The bytes to write.
+     */
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
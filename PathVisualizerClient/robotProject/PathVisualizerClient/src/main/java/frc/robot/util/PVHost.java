@@ -5,36 +5,108 @@
 package frc.robot.util;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.Constants;
 
 /** 
  * Robot code host for the PathVisualizer application.
+ * The robot thread only ever sends positions and paths. Requests from the client are read on a separate connection thread,
+ * and file work is done on a small pool of worker threads, so slow file operations never hold up the robot loop or each other.
+ * Files are sent straight from disk to the socket, so loading a file never needs memory proportional to its size.
+ * Everything sent to the client goes through OutboundLanes, so positions are never stuck behind a big reply.
  */
 public class PVHost {
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private boolean connected;
-    private String currentData;
+    private ServerSocketChannel serverChannel;
+    private volatile SocketChannel clientChannel;
+    private volatile boolean keyframeNeeded; //set when the client has nothing to apply position deltas to
+    private OutboundLanes lanes;
+    private FrameDecoder decoder; //only touched by the connection thread
+    private PositionEncoder positionEncoder; //only touched by the robot thread
+    private long lastFlushTime; //when the last batch of positions was sent. Only touched by the robot thread
+    private volatile long flushInterval;
+    private ExecutorService workers;
+    private ConcurrentHashMap<String, CompletableFuture<Void>> fileLanes; //the last chunk operation queued for each file, so that chunks of one file are handled in order
+    private volatile int protocolVersion; //the framing that the client has agreed to. Text framing until the client offers a handshake.
+    private MessageHandler[] handlers; //what to do with each type of message from the client, by type index
+
+    /**
+     * Does something with every message of one type.
+     */
+    private interface MessageHandler {
+        /**
+         * Handles a message. Runs on the connection thread.
+         * @param message The message.
+         */
+        public void handle(Message message);
+    }
 
     /**
      * Creates a new PVHost. It will listen for connections on the specified port.
      * @param port The port that the host will operate on. The port you enter in PathVisualizer should match the one passed here.
      */
     public PVHost(int port) {
+        this(port, Constants.POSITION_LINEAR_RESOLUTION, Constants.POSITION_ANGULAR_RESOLUTION);
+    }
+
+    /**
+     * Creates a new PVHost with a custom position precision. It will listen for connections on the specified port.
+     * @param port The port that the host will operate on. The port you enter in PathVisualizer should match the one passed here.
+     * @param linearResolution The smallest change in robot x or y that will be sent to the client.
+     * @param angularResolution The smallest change in robot heading that will be sent to the client.
+     */
+    public PVHost(int port, double linearResolution, double angularResolution) {
+        decoder = new FrameDecoder();
+        lanes = new OutboundLanes(Constants.MAX_FRAGMENT_SIZE);
+        positionEncoder = new PositionEncoder(linearResolution, angularResolution, Constants.POSITION_KEYFRAME_INTERVAL, Constants.POSITION_BATCH_SIZE);
+        lastFlushTime = 0;
+        flushInterval = Constants.POSITION_FLUSH_INTERVAL;
+        fileLanes = new ConcurrentHashMap<String, CompletableFuture<Void>>();
+
+        //every type index has a handler, so dispatch is one array lookup no matter how many types there are.
+        MessageHandler unknownHandler = this::rejectMessage;
+        MessageHandler requestHandler = this::dispatchRequest;
+        handlers = new MessageHandler[Constants.MESSAGE_TYPE_COUNT];
+        Arrays.fill(handlers, unknownHandler);
+        handlers[MessageType.HANDSHAKE.getIndex()] = this::handleHandshake;
+        handlers[MessageType.DIRECTORY_REQUEST.getIndex()] = requestHandler;
+        handlers[MessageType.LOAD.getIndex()] = requestHandler;
+        handlers[MessageType.SAVE.getIndex()] = requestHandler;
+        handlers[MessageType.READ_CHUNK.getIndex()] = requestHandler;
+        handlers[MessageType.WRITE_CHUNK.getIndex()] = requestHandler;
+        workers = Executors.newFixedThreadPool(Constants.HOST_WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "PVHost Worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
         try {
-            serverSocket = new ServerSocket(port);
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
         } catch(IOException ex) {
             DriverStation.reportError("PVHost could not create a ServerSocket!\n" + ex.getMessage(), true);
+            return;
         }
 
-        attemptToConnectSocket();
+        Thread connectionThread = new Thread(this::runConnection, "PVHost Connection");
+        connectionThread.setDaemon(true);
+        connectionThread.start();
     }
 
     /**
@@ -42,9 +114,39 @@ public class PVHost {
      * @param robotPosition The current robot position.
      */
     public void update(Point2D robotPosition) {
-        String message = composeMessage(MessageType.POSITION, robotPosition.toString());
-        sendMessage(message);
-        handleIncomingMessages();
+        update(robotPosition, System.currentTimeMillis());
+    }
+
+    /**
+     * Sends the specified robot position to the PathVisualizer client, along with the time it was measured.
+     * Positions are collected and sent together every so often (see setPositionFlushInterval()), but the client still receives every one of them.
+     * @param robotPosition The current robot position.
+     * @param timestamp The time that the robot was at the position, in milliseconds. Any clock works, as long as it only goes forwards.
+     */
+    public void update(Point2D robotPosition, long timestamp) {
+        if(keyframeNeeded) {
+            keyframeNeeded = false;
+            positionEncoder.reset();
+        }
+
+        if(protocolVersion >= Constants.BINARY_PROTOCOL_VERSION) {
+            boolean batchFull = positionEncoder.add(timestamp, robotPosition);
+            long now = System.currentTimeMillis();
+            if(batchFull || now - lastFlushTime >= flushInterval) {
+                lastFlushTime = now;
+                sendTelemetry(positionEncoder.flush());
+            }
+        } else {
+            sendTelemetry(FrameEncoder.encodeText(MessageType.POSITION, "", robotPosition.toString()));
+        }
+    }
+
+    /**
+     * Sets how often collected positions are sent to the client. Longer intervals mean fewer, bigger frames.
+     * @param millis The time between position frames, in milliseconds. 0 sends every position as soon as it arrives.
+     */
+    public void setPositionFlushInterval(long millis) {
+        flushInterval = Math.max(0, millis);
     }
 
     /**
@@ -53,183 +155,391 @@ public class PVHost {
      * @param name The name of the path. Will appear on the manifest with that name.
      */
     public void sendPath(Path path, String name) {
-        if(path.isValid()) {
-            String message = composeMessage(MessageType.PATH, name, path.toString());
-            sendMessage(message);
-        } else {
+        if(!path.isValid()) {
             DriverStation.reportError("PVHost could not send a path because it was invalid!", false);
+            return;
         }
+
+        //big paths are sent in pieces on the bulk lane, so that the position stream keeps flowing.
+        boolean text = (protocolVersion < Constants.BINARY_PROTOCOL_VERSION);
+        lanes.sendBulk(clientChannel, new OutboundLanes.BulkMessage(MessageType.PATH, 0, name, text, new PathWriter().toBytes(path)));
     }
 
     /**
-     * Attempts to connect the host to the client.
-     * This method starts a new Thread, so it will return immediately, but the socket may not be connected.
-     * Use this.connected to check if the client is connected.
+     * Adds points to the end of a path that was sent with sendPath(), so that a path can be watched as it is recorded
+     * without sending the whole thing again. If the client doesn't have a path with that name, it starts a new one.
+     * @param points The points to add.
+     * @param name The name that the path was sent with.
      */
-    private void attemptToConnectSocket() {
-        connected = false;
-        new Thread(
-            () -> {
-                try {
-                    clientSocket = serverSocket.accept();
-                    connected = true;
-                } catch(IOException ex) {
-                    DriverStation.reportError("PVHost could not connect to client!\n" + ex.getMessage(), true);
-                }
-            }
-        ).start();
+    public void appendToPath(Path points, String name) {
+        if(!points.isValid()) {
+            DriverStation.reportError("PVHost could not append to a path because the points were invalid!", false);
+            return;
+        }
+
+        //appends go on the bulk lane too, so that they always arrive after the path they add to.
+        boolean text = (protocolVersion < Constants.BINARY_PROTOCOL_VERSION);
+        lanes.sendBulk(clientChannel, new OutboundLanes.BulkMessage(MessageType.APPEND, 0, name, text, new PathWriter().toBytes(points)));
+    }
+
+    /**
+     * Adds a point to the end of a path that was sent with sendPath(). If the client doesn't have a path with that name, it starts a new one.
+     * @param point The point to add.
+     * @param name The name that the path was sent with.
+     */
+    public void appendToPath(Point2D point, String name) {
+        appendToPath(new Path(new Point2D[] { point }), name);
     }
 
-    private void redoConnection() {
-        //likely due to the client disconnecting. Terminate connection and try to get it going again
+    /**
+     * Sends a value of a custom message type to the PathVisualizer client, which decodes it with the codec it registered for the type.
+     * Clients that haven't agreed to the binary protocol are too old to know about custom types, so nothing is sent to them.
+     * @param <T> The type of value that the message type carries.
+     * @param type The registered message type.
+     * @param name The name of the value. Will appear on the manifest with that name, and replaces the last value sent with that name.
+     * @param value The value to send.
+     */
+    public <T> void send(CustomMessageType<T> type, String name, T value) {
+        if(protocolVersion < Constants.BINARY_PROTOCOL_VERSION) {
+            return;
+        }
+
+        byte[] body;
         try {
-            clientSocket.close();
-        } catch(IOException ex2) {
-            DriverStation.reportError("PVHost could not close client socket!\n" + ex2.getMessage(), true);
+            body = type.encode(value);
+        } catch(RuntimeException ex) {
+            DriverStation.reportError("PVHost could not encode message of type \"" + type.getCode() + "\"!\n" + ex.getMessage(), false);
+            return;
         }
 
-        attemptToConnectSocket();
+        //bulk lane, so that custom messages stay in order with paths and can be as big as they need to be.
+        lanes.sendBulk(clientChannel, new OutboundLanes.BulkMessage(type, 0, name, false, body));
     }
 
     /**
-     * Sends a message to the client. The message should be formatted using composeMessage().
-     * @param message The message to send (should be formatted).
+     * The connection thread. Waits for the client to connect, then reads and dispatches its requests until it disconnects.
      */
-    private void sendMessage(String message) {
-        if(connected) {
+    private void runConnection() {
+        while(serverChannel.isOpen()) {
+            SocketChannel channel;
             try {
-                clientSocket.getOutputStream().write(message.getBytes());
-            } catch(SocketException ex) {
-                redoConnection();
+                channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true); //positions are small, and should not wait to be combined with anything
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, Constants.HOST_SEND_BUFFER_SIZE); //limits how much bulk data can be queued up ahead of a position
             } catch(IOException ex) {
-                DriverStation.reportError("PVHost could not send message!\n" + ex.getMessage(), true);
+                DriverStation.reportError("PVHost could not connect to client!\n" + ex.getMessage(), true);
+                return;
             }
+
+            protocolVersion = Constants.TEXT_PROTOCOL_VERSION;
+            decoder.reset();
+            keyframeNeeded = true;
+            lanes.connect(channel);
+            clientChannel = channel;
+
+            try {
+                //pull out and handle every complete message. Text and binary frames are both accepted, regardless of the negotiated protocol.
+                while(decoder.readFrom(channel) >= 0) {
+                    Message message = decoder.poll();
+                    while(message != null) {
+                        handleMessage(message);
+                        message = decoder.poll();
+                    }
+                }
+            } catch(IOException ex) {
+                //usually caused by the client disconnecting or some other comms problem.
+            }
+
+            //client is gone. Terminate the connection and wait for it to come back.
+            closeConnection(channel); //anything still queued is dropped. The client throws away half-received messages when the connection drops
         }
     }
 
     /**
-     * Receives messages from the client and handles them.
+     * Closes a connection to the client. Anything still queued for it is dropped.
+     * @param channel The channel of the connection to close.
      */
-    private void handleIncomingMessages() {
-        if(!connected) {
+    private void closeConnection(SocketChannel channel) {
+        lanes.disconnect(channel);
+        try {
+            channel.close();
+        } catch(IOException ex) {
+            DriverStation.reportError("PVHost could not close client socket!\n" + ex.getMessage(), true);
+        }
+    }
+
+    /**
+     * Answers a request from the client. If the request was tagged with a request id, the reply is tagged with the same id.
+     * @param requester The channel of the client that sent the request. If the client has since reconnected, the reply is dropped.
+     * @param request The request being answered.
+     * @param subject The subject of the reply.
+     * @param info additional information needed for the client to carry out the task depicted by the reply. May be empty.
+     * @param message The body of the reply.
+     */
+    private void sendReply(SocketChannel requester, Message request, MessageType subject, String info, String message) {
+        sendReply(requester, request, subject, info, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Answers a request from the client with a raw body. If the request was tagged with a request id, the reply is tagged with the same id.
+     * @param requester The channel of the client that sent the request. If the client has since reconnected, the reply is dropped.
+     * @param request The request being answered.
+     * @param subject The subject of the reply.
+     * @param info additional information needed for the client to carry out the task depicted by the reply. May be empty.
+     * @param body The raw body of the reply.
+     */
+    private void sendReply(SocketChannel requester, Message request, MessageType subject, String info, byte[] body) {
+        lanes.sendBulk(requester, new OutboundLanes.BulkMessage(subject, request.getRequestId(), info, needsTextReply(request), body));
+    }
+
+    /**
+     * Answers a request from the client with part of a file. The file is copied straight from disk to the socket by the operating system,
+     * so the contents of the file never pass through the heap.
+     * If the request was tagged with a request id, the reply is tagged with the same id.
+     * @param requester The channel of the client that sent the request. If the client has since reconnected, the reply is dropped.
+     * @param request The request being answered.
+     * @param subject The subject of the reply.
+     * @param prefix Bytes to send between the header and the file contents. May be empty.
+     * @param file The file to send from. It is closed once the reply has been sent or dropped.
+     * @param position The offset in the file of the first byte to send.
+     * @param length The number of bytes of the file to send.
+     */
+    private void sendFileReply(SocketChannel requester, Message request, MessageType subject, byte[] prefix, FileChannel file, long position, int length) {
+        lanes.sendBulk(requester, new OutboundLanes.BulkMessage(subject, request.getRequestId(), "", needsTextReply(request), prefix, file, position, length));
+    }
+
+    /**
+     * Returns true if the reply to a request must use the text framing, because the client hasn't agreed to anything else.
+     * @param request The request being answered.
+     */
+    private boolean needsTextReply(Message request) {
+        return request.getRequestId() == 0 && protocolVersion < Constants.BINARY_PROTOCOL_VERSION;
+    }
+
+    /**
+     * Sends a position or handshake to the client ahead of any replies that are waiting. The message should be formatted using FrameEncoder.
+     * @param message The message to send (should be formatted).
+     */
+    private void sendTelemetry(byte[] message) {
+        lanes.sendTelemetry(clientChannel, message);
+    }
+
+    /**
+     * Handles a singular message. Runs on the connection thread.
+     * @param message The message to handle.
+     */
+    private void handleMessage(Message message) {
+        int index = message.getType().getIndex();
+        if(index < 0) {
+            rejectMessage(message);
             return;
         }
 
+        handlers[index].handle(message);
+    }
+
+    /**
+     * Handles a handshake. The client is offering binary framing, so reply with the highest version we both understand.
+     * @param message The HANDSHAKE message.
+     */
+    private void handleHandshake(Message message) {
         try {
-            //add previously received data to currentData.
-            if(clientSocket.getInputStream().available() < 1) {
-                return;
-            }
+            int clientVersion = Integer.valueOf(message.getBodyString().trim()).intValue();
+            int agreedVersion = Math.min(clientVersion, Constants.BINARY_PROTOCOL_VERSION);
 
-            byte[] buffer = new byte[Constants.SOCKET_BUFFER_SIZE];
-            clientSocket.getInputStream().read(buffer);
-            currentData += new String(buffer);
-
-            //parse data and look for messages.
-            //message formatted as such: "[start sequence] [subject] [subject sequence if there is one] [subject contents if applicable] [split sequence] [contents of message] [end sequence]"
-            while(currentData.indexOf(Constants.START_SEQUENCE) > -1 && currentData.indexOf(Constants.END_SEQUENCE) > -1) {
-                int
-                    startSequenceIndex = currentData.indexOf(Constants.START_SEQUENCE),
-                    endSequenceIndex = currentData.indexOf(Constants.END_SEQUENCE);
-                    
-                String relavantData = currentData.substring(startSequenceIndex, endSequenceIndex);
-                currentData = currentData.substring(endSequenceIndex + 1);
-
-                String[] completedMessages = relavantData.split(Constants.END_SEQUENCE);
-                for(int i=0; i<completedMessages.length; i++) {
-                    String completedMessage = completedMessages[i];
-
-                    int splitSequenceIndex = completedMessage.indexOf(Constants.SPLIT_SEQUENCE);
-                    if(splitSequenceIndex > -1) { //now it is defintely a full message
-                        String subject = completedMessage.substring(0, splitSequenceIndex);
-                        String message = completedMessage.substring(splitSequenceIndex + Constants.SPLIT_SEQUENCE.length());
-                        String extraInfo = "";
-
-                        if(subject.startsWith(Constants.START_SEQUENCE)) {
-                            subject = subject.substring(Constants.START_SEQUENCE.length()); //substring off "("
-                        }
-
-                        if(subject.contains(Constants.SUBJECT_SEQUENCE)) {
-                            extraInfo = subject.substring(subject.indexOf(Constants.SUBJECT_SEQUENCE) + Constants.SUBJECT_SEQUENCE.length());
-                        }
-
-                        handleMessage(subject, message, extraInfo);
-                    }
-                }
-            }
-        } catch(SocketException ex) {
-            redoConnection(); //SocketExceptions are usually caused by the host disconnecting or some other comms problem.
-        } catch(SocketTimeoutException ex) { //to stop if from printing a stack trace every time the read times out
-        } catch(IOException ex) {
-            DriverStation.reportError("PVHost could not read the client data!", true);
+            //the reply still goes out in the old framing so that the client can read it no matter what.
+            sendTelemetry(FrameEncoder.encodeText(MessageType.HANDSHAKE, "", Integer.toString(agreedVersion)));
+            protocolVersion = agreedVersion;
+            keyframeNeeded = true; //the client has nothing to apply deltas to yet
+        } catch(NumberFormatException ex) {
+            DriverStation.reportWarning("PVHost received an invalid handshake! Staying with text framing.", false);
         }
     }
 
     /**
-     * Handles a singular message.
-     * @param subject The subject of the message in string form.
-     * @param message The body of the message.
+     * Hands a request to the thread that should carry it out.
+     * @param message The DIRECTORY_REQUEST, LOAD, SAVE, READ_CHUNK or WRITE_CHUNK request.
      */
-    private void handleMessage(String subject, String message, String extraInfo) {
-        MessageType messageType = MessageType.fromString(subject);
-        switch(messageType) {
+    private void dispatchRequest(Message message) {
+        MessageType messageType = message.getType();
+        SocketChannel requester = clientChannel;
+        if(message.getRequestId() == 0) {
+            handleRequest(requester, message); //untagged replies are matched up in order, so they can't be reordered
+        } else if(messageType == MessageType.READ_CHUNK || messageType == MessageType.WRITE_CHUNK) {
+            runInFileLane(message.getInfo(), () -> handleRequest(requester, message));
+        } else {
+            workers.execute(() -> handleRequest(requester, message));
+        }
+    }
+
+    /**
+     * Reports a message that the host doesn't know what to do with.
+     * @param message The message.
+     */
+    private void rejectMessage(Message message) {
+        DriverStation.reportError("PVHost could not handle message of type \"" + message.getType().getCode() + "\"!", false);
+    }
+
+    /**
+     * Runs a chunk operation on the worker pool after every operation already queued for the same file.
+     * Different files are worked on at the same time.
+     * @param file The path of the file that the operation works on.
+     * @param task The operation.
+     */
+    private void runInFileLane(String file, Runnable task) {
+        CompletableFuture<Void> operation = fileLanes.compute(file, (key, previous) -> {
+            if(previous == null) {
+                return CompletableFuture.runAsync(task, workers);
+            }
+
+            return previous.exceptionally(ex -> null).thenRunAsync(task, workers);
+        });
+
+        operation.whenComplete((result, ex) -> fileLanes.remove(file, operation));
+    }
+
+    /**
+     * Carries out a request from the client and sends the reply. Runs on a worker thread for tagged requests.
+     * @param requester The channel of the client that sent the request.
+     * @param message The request.
+     */
+    private void handleRequest(SocketChannel requester, Message message) {
+        switch(message.getType()) {
             case DIRECTORY_REQUEST: { //return a message with all contents of the directory separated by newlines
-                    String[] paths = PVUtils.getFilesInDirectory(message, true);
+                    String[] paths = PVUtils.getFilesInDirectory(message.getBodyString(), true);
                     String returnMessage = "";
                     for(String path : paths) {
                         returnMessage += path + "\n";
                     }
 
-                    sendMessage(composeMessage(MessageType.DIRECTORY_REQUEST, returnMessage));
+                    sendReply(requester, message, MessageType.DIRECTORY_REQUEST, "", returnMessage);
                 }
                 break;
             case LOAD: {
-                    if(!Files.exists(java.nio.file.Path.of(message))) {
-                        sendMessage(composeMessage(MessageType.LOAD, "ERR"));
-                        break;
-                    }
-
+                    java.nio.file.Path filePath = java.nio.file.Path.of(message.getBodyString());
+                    FileChannel file = null;
                     try {
-                        sendMessage(composeMessage(MessageType.LOAD, Files.readString(java.nio.file.Path.of(message))));
+                        file = FileChannel.open(filePath, StandardOpenOption.READ);
+                        sendFileReply(requester, message, MessageType.LOAD, new byte[0], file, 0, (int) file.size());
                     } catch(IOException ex) {
-                        sendMessage(composeMessage(MessageType.LOAD, "ERR"));
+                        closeQuietly(file);
+                        sendReply(requester, message, MessageType.LOAD, "", "ERR");
                     }
                 }
                 break;
             case SAVE: {
-                    String fileContents = message;
-                    java.nio.file.Path filePath = java.nio.file.Path.of(extraInfo);
-
+                    java.nio.file.Path filePath = java.nio.file.Path.of(message.getInfo());
                     try {
-                        Files.writeString(filePath, fileContents);
-                        sendMessage(composeMessage(MessageType.SAVE, extraInfo, "OK"));
+                        Files.write(filePath, message.getBody()); //written as received, so binary files aren't mangled by decoding them
+                        sendReply(requester, message, MessageType.SAVE, message.getInfo(), "OK");
                     } catch(IOException ex) {
-                        sendMessage(composeMessage(MessageType.SAVE, extraInfo, "ERR"));
+                        sendReply(requester, message, MessageType.SAVE, message.getInfo(), "ERR");
+                    }
+                }
+                break;
+            case READ_CHUNK: {
+                    try {
+                        readChunk(requester, message);
+                    } catch(BufferUnderflowException ex) {
+                        DriverStation.reportError("PVHost received an invalid chunk request!", false);
+                    }
+                }
+                break;
+            case WRITE_CHUNK: {
+                    try {
+                        sendReply(requester, message, MessageType.WRITE_CHUNK, "", writeChunk(message));
+                    } catch(BufferUnderflowException ex) {
+                        DriverStation.reportError("PVHost received an invalid chunk!", false);
                     }
                 }
                 break;
             default:
-                DriverStation.reportError("PVHost could not handle message of type \"" + messageType.getCode() + "\"!", false);
-                return;
+                break;
+        }
+    }
+
+    /**
+     * Sends a piece of a file to the client.
+     * Request: [transfer id] [sequence] [offset] [length], with the file path as the info.
+     * Reply: [transfer id] [sequence] [offset] [file length, or -1 on error] [data]
+     * @param requester The channel of the client that sent the request.
+     * @param message The READ_CHUNK request.
+     */
+    private void readChunk(SocketChannel requester, Message message) {
+        ByteBuffer request = ByteBuffer.wrap(message.getBody());
+        int transferId = request.getInt();
+        int sequence = request.getInt();
+        int offset = request.getInt();
+        int length = Math.max(0, Math.min(request.getInt(), Constants.TRANSFER_CHUNK_SIZE));
+
+        java.nio.file.Path filePath = java.nio.file.Path.of(message.getInfo());
+        FileChannel file = null;
+        try {
+            file = FileChannel.open(filePath, StandardOpenOption.READ);
+            int fileLength = (int) file.size();
+            length = Math.max(0, Math.min(length, fileLength - offset));
+            byte[] prefix = ByteBuffer.allocate(16).putInt(transferId).putInt(sequence).putInt(offset).putInt(fileLength).array();
+            sendFileReply(requester, message, MessageType.READ_CHUNK, prefix, file, offset, length);
+        } catch(IOException ex) {
+            closeQuietly(file);
+            sendReply(requester, message, MessageType.READ_CHUNK, "", ByteBuffer.allocate(16).putInt(transferId).putInt(sequence).putInt(offset).putInt(-1).array());
         }
     }
 
     /**
-     * Formats a message into a format that the client can read.
-     * @param subject The subject of the message. Should be "Pos" if sending a position, or "Path-[pathname] if sending a path."
-     * @param message The body of the message.
+     * Writes a piece of a file from the client. Pieces go into a ".part" file, which replaces the real file once the last piece arrives.
+     * If a piece arrives for an offset past the end of the ".part" file (because earlier pieces were lost), it is ignored, and the reply tells the client where to resume from.
+     * Request: [transfer id] [sequence] [offset] [total length] [data], with the file path as the info.
+     * @param message The WRITE_CHUNK request.
+     * @return The reply: [transfer id] [sequence] [bytes written so far, or -1 on error]
      */
-    private String composeMessage(MessageType subject, String message) {
-        return Constants.START_SEQUENCE + subject.getCode() + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE;
+    private byte[] writeChunk(Message message) {
+        ByteBuffer request = ByteBuffer.wrap(message.getBody());
+        int transferId = request.getInt();
+        int sequence = request.getInt();
+        int offset = request.getInt();
+        int totalLength = request.getInt();
+
+        java.nio.file.Path filePath = java.nio.file.Path.of(message.getInfo());
+        java.nio.file.Path partPath = java.nio.file.Path.of(message.getInfo() + ".part");
+        int written = -1;
+        try {
+            try(FileChannel part = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                written = (int) part.size();
+                if(offset <= written) {
+                    part.truncate(offset);
+                    part.position(offset);
+                    while(request.hasRemaining()) {
+                        part.write(request);
+                    }
+
+                    written = (int) part.size();
+                }
+            }
+
+            if(written >= totalLength) {
+                Files.move(partPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException ex) {
+            written = -1;
+        }
+
+        return ByteBuffer.allocate(12).putInt(transferId).putInt(sequence).putInt(written).array();
     }
 
     /**
-     * Formats a message into a format that the client can read.
-     * @param subject The subject of the message. Should be "Pos" if sending a position, or "Path-[pathname] if sending a path."
-     * @param subjectInfo additional information needed for the client to carry out the task depicted by the message.
-     * @param message The body of the message.
+     * Closes a file that failed to be read, if it was opened at all.
+     * @param file The file to close. May be null.
      */
-    private String composeMessage(MessageType subject, String subjectInfo, String message) {
-        return Constants.START_SEQUENCE + subject.getCode() + Constants.SUBJECT_SEQUENCE + subjectInfo + Constants.SPLIT_SEQUENCE + message + Constants.END_SEQUENCE;
+    private static void closeQuietly(FileChannel file) {
+        if(file == null) {
+            return;
+        }
+
+        try {
+            file.close();
+        } catch(IOException ex) {
+            //nothing more can go wrong with a file that we were only reading.
+        }
     }
 }
@@ -11,51 +11,155 @@ import edu.wpi.first.wpilibj.DriverStation;
 
 /**
  * Represents a Path that can be rendered on the screen.
+ * Points are stored as columns of coordinates rather than as Point2D objects, so big paths take much less memory.
  */
 public class Path {
-    private Point2D[] points;
+    private double[]
+        xs,
+        ys,
+        headings;
+
+    private Point2D[] pointsView; //built the first time getPoints() is called
     private boolean valid;
 
     /**
-     * Creates a new path from the given file path.
+     * Creates a new path from the given file path. The file may be in the text (.hpt) or the binary (.hptb) format.
      * @param file The path to the file to read from.
-     * @param color The color of the path.
      */
     public Path(String file) {
         this.valid = false;
+        setColumns(new double[0], new double[0], new double[0]);
         try {
-            String fileContents = Files.readString(java.nio.file.Path.of(file));
-            String[] pointStrings = fileContents.split("\n");
-            points = new Point2D[pointStrings.length];
-            for(int i=0; i<pointStrings.length; i++) {
-                points[i] = Point2D.fromString(pointStrings[i]);
+            byte[] fileContents = Files.readAllBytes(java.nio.file.Path.of(file));
+            if(BinaryPathFormat.isBinary(fileContents, 0, fileContents.length)) {
+                double[][] columns = BinaryPathFormat.readColumns(fileContents, 0, fileContents.length);
+                if(columns != null) {
+                    setColumns(columns[0], columns[1], columns[2]);
+                    valid = true;
+                }
+
+                return;
+            }
+
+            int end = fileContents.length;
+            while(end > 0 && fileContents[end - 1] == '\n') {
+                end--; //like String.split(), trailing empty lines are ignored
+            }
+
+            int lineCount = (end > 0 || fileContents.length == 0 ? 1 : 0);
+            for(int i=0; i<end; i++) {
+                if(fileContents[i] == '\n') {
+                    lineCount++;
+                }
             }
 
+            double[] xs = new double[lineCount];
+            double[] ys = new double[lineCount];
+            double[] headings = new double[lineCount];
+            PointParser parser = new PointParser();
+            int lineStart = 0;
+            for(int i=0; i<lineCount; i++) {
+                int lineEnd = lineStart;
+                while(lineEnd < end && fileContents[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+
+                if(!parser.parse(fileContents, lineStart, lineEnd)) {
+                    throw new NumberFormatException("line " + (i + 1) + " is not a valid point (" + parser.getError() + ")");
+                }
+
+                xs[i] = parser.getX();
+                ys[i] = parser.getY();
+                headings[i] = parser.getHeading();
+                lineStart = lineEnd + 1;
+            }
+
+            setColumns(xs, ys, headings);
             valid = true;
         } catch (IOException ex) {
             ex.printStackTrace();
         } catch (NumberFormatException ex) {
-            DriverStation.reportError("Path: Invalid File!", true);
+            DriverStation.reportError("Path: Invalid File! " + ex.getMessage(), true);
         }
     }
 
     /**
      * Creates a new Path.
      * @param points An array of points describing the path.
-     * @param color The color of the path.
      */
     public Path(Point2D[] points) {
-        this.points = points;
+        double[] xs = new double[points.length];
+        double[] ys = new double[points.length];
+        double[] headings = new double[points.length];
+        for(int i=0; i<points.length; i++) {
+            xs[i] = points[i].getX();
+            ys[i] = points[i].getY();
+            headings[i] = points[i].getHeading();
+        }
+
+        setColumns(xs, ys, headings);
+        this.valid = true;
+    }
+
+    /**
+     * Creates a new Path from columns of coordinates. The arrays are used as-is, not copied.
+     * @param xs The X-coordinates of the points.
+     * @param ys The Y-coordinates of the points. Must be the same length as xs.
+     * @param headings The headings of the points. Must be the same length as xs.
+     */
+    public Path(double[] xs, double[] ys, double[] headings) {
+        setColumns(xs, ys, headings);
         this.valid = true;
     }
 
     /**
-     * Returns the Path's points.
+     * Returns the Path's points. The array is built from the coordinates the first time it is asked for, so prefer size(), x(), y() and heading() where possible.
      */
     public Point2D[] getPoints() {
+        Point2D[] points = pointsView;
+        if(points == null) {
+            points = new Point2D[xs.length];
+            for(int i=0; i<points.length; i++) {
+                points[i] = new Point2D(xs[i], ys[i], headings[i]);
+            }
+
+            pointsView = points;
+        }
+
         return points;
     }
 
+    /**
+     * Returns the number of points in the Path.
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the X-coordinate of a point.
+     * @param index The index of the point.
+     */
+    public double x(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the Y-coordinate of a point.
+     * @param index The index of the point.
+     */
+    public double y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Returns the heading of a point.
+     * @param index The index of the point.
+     */
+    public double heading(int index) {
+        return headings[index];
+    }
+
     /**
      * Returns true if this Path was initalized correctly, false otherwise.
      */
@@ -64,15 +168,29 @@ public class Path {
     }
 
     /**
-     * Converts the Path into a user (and computer) readable String.
+     * Converts the Path into a user (and computer) readable String. To send a Path somewhere, use a PathWriter instead.
      * @return The string representation of the Path.
      */
     public String toString() {
-        String pathString = "";
-        for(Point2D point : points) {
-            pathString += point.toString() + "\n";
+        StringBuilder pathString = new StringBuilder(xs.length * 24);
+        for(int i=0; i<xs.length; i++) {
+            PathWriter.appendPoint(pathString, xs[i], ys[i], headings[i]);
+            pathString.append('\n');
         }
 
-        return pathString;
+        return pathString.toString();
+    }
+
+    /**
+     * Replaces the coordinates of the Path.
+     * @param xs The X-coordinates of the points.
+     * @param ys The Y-coordinates of the points.
+     * @param headings The headings of the points.
+     */
+    private void setColumns(double[] xs, double[] ys, double[] headings) {
+        this.xs = xs;
+        this.ys = ys;
+        this.headings = headings;
+        this.pointsView = null;
     }
 }
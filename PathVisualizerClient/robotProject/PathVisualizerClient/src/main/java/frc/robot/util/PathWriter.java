@@ -0,0 +1,129 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes paths in the path file format ([x],[y],[heading] per line, as in Point2D.toString()) straight to where they are going,
+ * without building a String for every point or for the whole file. The output is exactly the same as Path.toString().
+ * A PathWriter reuses its buffers between calls, so it is not thread safe. Give each thread its own.
+ */
+public class PathWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private StringBuilder line; //the point being written
+    private ByteBuffer buffer; //created the first time a channel is written to
+
+    /**
+     * Creates a new PathWriter.
+     */
+    public PathWriter() {
+        line = new StringBuilder(64);
+        buffer = null;
+    }
+
+    /**
+     * Writes a path to an Appendable, such as a StringBuilder or a Writer.
+     * @param path The path to write.
+     * @param out Where to write it.
+     * @throws IOException If the Appendable can't be written to.
+     */
+    public void write(Path path, Appendable out) throws IOException {
+        int size = path.size();
+        for(int i=0; i<size; i++) {
+            formatLine(path, i);
+            out.append(line);
+        }
+    }
+
+    /**
+     * Writes a path to a channel, such as a FileChannel, through a reusable buffer.
+     * @param path The path to write.
+     * @param channel Where to write it. Must be in blocking mode.
+     * @throws IOException If the channel can't be written to.
+     */
+    public void write(Path path, WritableByteChannel channel) throws IOException {
+        if(buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        buffer.clear();
+        int size = path.size();
+        for(int i=0; i<size; i++) {
+            formatLine(path, i);
+            if(buffer.remaining() < line.length()) {
+                flush(channel);
+            }
+
+            for(int k=0; k<line.length(); k++) {
+                buffer.put((byte) line.charAt(k)); //the format is plain ASCII
+            }
+        }
+
+        flush(channel);
+    }
+
+    /**
+     * Writes a path into a new byte array, for sending it somewhere that needs the whole file at once.
+     * @param path The path to write.
+     * @return The file contents, exactly as long as they need to be.
+     */
+    public byte[] toBytes(Path path) {
+        int size = path.size();
+        byte[] bytes = new byte[Math.max(64, size * 24)]; //a typical line is about 24 bytes
+        int length = 0;
+        for(int i=0; i<size; i++) {
+            formatLine(path, i);
+            if(length + line.length() > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + line.length()));
+            }
+
+            for(int k=0; k<line.length(); k++) {
+                bytes[length++] = (byte) line.charAt(k);
+            }
+        }
+
+        return (length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * Appends a point to a StringBuilder in the format used by Point2D.toString(). Appending a double formats it exactly like Double.toString(), without creating a String.
+     * @param builder The StringBuilder to append to.
+     * @param x The X-coordinate of the point.
+     * @param y The Y-coordinate of the point.
+     * @param heading The heading of the point.
+     */
+    public static void appendPoint(StringBuilder builder, double x, double y, double heading) {
+        builder.append(Util.roundTo(x, 2)).append(',').append(Util.roundTo(y, 2)).append(',').append(heading);
+    }
+
+    /**
+     * Formats one line of a path into the line buffer.
+     * @param path The path being written.
+     * @param index The index of the point to format.
+     */
+    private void formatLine(Path path, int index) {
+        line.setLength(0);
+        appendPoint(line, path.x(index), path.y(index), path.heading(index));
+        line.append('\n');
+    }
+
+    /**
+     * Writes everything in the buffer to a channel and empties it.
+     * @param channel The channel to write to.
+     */
+    private void flush(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
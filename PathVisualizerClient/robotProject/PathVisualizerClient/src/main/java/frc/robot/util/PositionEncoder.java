@@ -0,0 +1,181 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+/**
+ * Turns a stream of timestamped robot positions into compact binary POSITION frames.
+ * Positions are collected into batches so that many of them share one frame, and are encoded as they are added, so a batch never holds more than its bytes.
+ * Positions are rounded to a fixed resolution and sent as the difference from the previous position, packed as zig-zag varints.
+ * Every so often a batch starts with a keyframe holding the full position (and the resolution) instead, so the client can pick up the stream at any time.
+ * Keyframe: [linear resolution (float)] [angular resolution (float)] [timestamp] [x] [y] [heading]
+ * Delta: [timestamp - previous timestamp] [x - previous x] [y - previous y] [heading - previous heading]
+ * A batch is either a keyframe or a delta, followed by any number of deltas. Only the first position of a batch can be a keyframe.
+ * All values except the resolutions are zig-zag varints in units of the resolution. Timestamps are in milliseconds.
+ */
+public class PositionEncoder {
+    private static final int
+        MAX_KEYFRAME_SIZE = 8 + (4 * 10), //two floats and four 64-bit varints
+        MAX_DELTA_SIZE    = 4 * 10;       //four 64-bit varints
+
+    private double
+        linearResolution,
+        angularResolution;
+
+    private int
+        keyframeInterval,
+        framesSinceKeyframe,
+        batchSize,
+        batchCapacity,
+        batchFlags;
+
+    private boolean hasPrevious;
+    private long
+        previousTimestamp,
+        previousX,
+        previousY,
+        previousHeading;
+
+    private byte[] body;
+    private int bodyLength;
+
+    /**
+     * Creates a new PositionEncoder.
+     * @param linearResolution The smallest change in x or y that will be sent (for example, 0.001 for 1 mm if the robot works in meters).
+     * @param angularResolution The smallest change in heading that will be sent (for example, 0.01 for 0.01 degrees).
+     * @param keyframeInterval The number of positions to send between keyframes.
+     * @param batchCapacity The most positions that one batch can hold.
+     */
+    public PositionEncoder(double linearResolution, double angularResolution, int keyframeInterval, int batchCapacity) {
+        this.linearResolution = linearResolution;
+        this.angularResolution = angularResolution;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.batchCapacity = Math.max(1, batchCapacity);
+        body = new byte[MAX_KEYFRAME_SIZE + (this.batchCapacity - 1) * MAX_DELTA_SIZE];
+        reset();
+    }
+
+    /**
+     * Adds a position to the current batch.
+     * @param timestamp The time that the robot was at the position, in milliseconds.
+     * @param position The position to add.
+     * @return True if the batch is now full and should be flushed.
+     */
+    public boolean add(long timestamp, Point2D position) {
+        if(isFull()) {
+            return true; //caller should have flushed. Drop the position rather than overflow the body.
+        }
+
+        long x = quantize(position.getX(), linearResolution);
+        long y = quantize(position.getY(), linearResolution);
+        long heading = quantize(position.getHeading(), angularResolution);
+
+        if(batchSize == 0 && (!hasPrevious || framesSinceKeyframe >= keyframeInterval)) {
+            batchFlags |= Message.FLAG_KEYFRAME;
+            writeFloat((float) linearResolution);
+            writeFloat((float) angularResolution);
+            writeVarLong(timestamp);
+            writeVarLong(x);
+            writeVarLong(y);
+            writeVarLong(heading);
+            framesSinceKeyframe = 0;
+        } else {
+            writeVarLong(timestamp - previousTimestamp);
+            writeVarLong(x - previousX);
+            writeVarLong(y - previousY);
+            writeVarLong(heading - previousHeading);
+        }
+
+        batchSize++;
+        framesSinceKeyframe++;
+        hasPrevious = true;
+        previousTimestamp = timestamp;
+        previousX = x;
+        previousY = y;
+        previousHeading = heading;
+        return isFull();
+    }
+
+    /**
+     * Returns the number of positions in the current batch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns true if the current batch can't hold any more positions.
+     */
+    public boolean isFull() {
+        return batchSize >= batchCapacity;
+    }
+
+    /**
+     * Encodes the current batch into a binary POSITION frame ready to be sent to the client, and starts a new batch.
+     * @return The encoded frame, or null if the batch is empty.
+     */
+    public byte[] flush() {
+        if(batchSize == 0) {
+            return null;
+        }
+
+        byte[] frame = FrameEncoder.encodeBinary(MessageType.POSITION, batchFlags, "", body, bodyLength);
+        startBatch();
+        return frame;
+    }
+
+    /**
+     * Forgets the previous position and throws away the current batch, so that the next position is sent as a keyframe. Use this when the connection is reset.
+     */
+    public void reset() {
+        hasPrevious = false;
+        framesSinceKeyframe = 0;
+        startBatch();
+    }
+
+    /**
+     * Empties the batch.
+     */
+    private void startBatch() {
+        batchSize = 0;
+        batchFlags = Message.FLAG_QUANTIZED | Message.FLAG_BATCH;
+        bodyLength = 0;
+    }
+
+    /**
+     * Rounds a value to the nearest multiple of the resolution.
+     * @param value The value to round.
+     * @param resolution The resolution to round to.
+     * @return The number of resolution steps in the value.
+     */
+    private static long quantize(double value, double resolution) {
+        return Math.round(value / (float) resolution); //the client divides by the float it receives, so we must too
+    }
+
+    /**
+     * Appends a float to the body.
+     * @param value The float to write.
+     */
+    private void writeFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        body[bodyLength++] = (byte) (bits >>> 24);
+        body[bodyLength++] = (byte) (bits >>> 16);
+        body[bodyLength++] = (byte) (bits >>> 8);
+        body[bodyLength++] = (byte) bits;
+    }
+
+    /**
+     * Appends a zig-zag varint to the body. Small numbers (positive or negative) take fewer bytes.
+     * @param value The number to write.
+     */
+    private void writeVarLong(long value) {
+        long zigZag = (value << 1) ^ (value >> 63); //moves the sign to the lowest bit so small negatives stay small
+        while((zigZag & ~0x7FL) != 0) {
+            body[bodyLength++] = (byte) ((zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+
+        body[bodyLength++] = (byte) zigZag;
+    }
+}
@@ -0,0 +1,359 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.util;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import frc.robot.Constants;
+
+/**
+ * Benchmarks for PVHost. These depend on timing, so they only run when asked for: ./gradlew test -Pbenchmark
+ */
+public class PVHostBenchmark {
+    private static final int
+        FILE_SIZE = 4000000,
+        SMALL_FILE_SIZE = 200000; //loaded along with the largest file, like directory listings and short paths
+    private static final int ROUNDS = 10; //the best time of this many rounds is reported, after one round of warm-up
+    private static final int
+        ROBOT_LOOP_PERIOD = 20,      //ms
+        LINK_BYTES_PER_SECOND = 4000000; //the client reads no faster than this, like a real (fast) robot radio
+
+    private FrameDecoder decoder = new FrameDecoder();
+    private int nextRequestId = 1;
+
+    /**
+     * Measures how long several LOAD requests take when they are all sent at once, compared to the largest one alone.
+     * The replies take turns on the connection one fragment at a time, so the whole batch should finish in roughly the time of the largest file,
+     * and the small files should not have to wait for the largest one to finish even though it was asked for first.
+     */
+    @Test
+    public void parallelLoadsFinishInAboutTheTimeOfTheLargest() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+
+        java.nio.file.Path directory = Files.createTempDirectory("pvhost-benchmark");
+        String[] files = new String[Constants.HOST_WORKER_THREADS];
+        for(int i=0; i<files.length; i++) {
+            files[i] = createPathFile(directory, "path" + i + ".hpt", (i == 0 ? FILE_SIZE : SMALL_FILE_SIZE)); //the largest is asked for first
+        }
+
+        int port;
+        try(ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        PVHost host = new PVHost(port);
+        Thread robotLoop = startRobotLoop(host);
+        try(Socket socket = new Socket("localhost", port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+            output.write(FrameEncoder.encodeText(MessageType.HANDSHAKE, "", Integer.toString(Constants.BINARY_PROTOCOL_VERSION)));
+            awaitReplies(input, MessageType.HANDSHAKE, 1, null);
+
+            String[] largest = { files[0] };
+            long alone = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            long smallest = Long.MAX_VALUE; //the latest that any small file finished, in the best round
+            long sequential = Long.MAX_VALUE;
+            double[] ratios = new double[ROUNDS]; //how much longer all files took than the largest alone, in each round
+            double[] smallRatios = new double[ROUNDS];
+            for(int round=0; round<=ROUNDS; round++) {
+                long aloneTime = timeLoads(output, input, largest)[0];
+                long[] finished = timeLoads(output, input, files);
+                long parallelTime = 0;
+                long smallTime = 0;
+                for(int i=0; i<finished.length; i++) {
+                    parallelTime = Math.max(parallelTime, finished[i]);
+                    if(i > 0) {
+                        smallTime = Math.max(smallTime, finished[i]);
+                    }
+                }
+
+                long sequentialTime = 0;
+                for(String file : files) {
+                    sequentialTime += timeLoads(output, input, new String[] { file })[0];
+                }
+
+                if(round > 0) {
+                    ratios[round - 1] = (double) parallelTime / aloneTime;
+                    smallRatios[round - 1] = (double) smallTime / aloneTime;
+                    alone = Math.min(alone, aloneTime);
+                    sequential = Math.min(sequential, sequentialTime);
+                    if(parallelTime < parallel) {
+                        parallel = parallelTime;
+                        smallest = smallTime;
+                    }
+                }
+            }
+
+            System.out.println("PVHost LOAD benchmark (one " + FILE_SIZE + " byte file and " + (files.length - 1) + " of " + SMALL_FILE_SIZE + " bytes, " + Constants.HOST_WORKER_THREADS + " workers, best of " + ROUNDS + "):");
+            System.out.println("  largest file alone:  " + alone / 1000000.0 + " ms");
+            System.out.println("  all files in a row:  " + sequential / 1000000.0 + " ms");
+            System.out.println("  all files at once:   " + parallel / 1000000.0 + " ms (small files done after " + smallest / 1000000.0 + " ms)");
+
+            //compare within rounds, and take the median, so that one slow round on a busy machine doesn't decide the result
+            java.util.Arrays.sort(ratios);
+            java.util.Arrays.sort(smallRatios);
+            double ratio = ratios[ROUNDS / 2];
+            double smallRatio = smallRatios[ROUNDS / 2];
+            System.out.println("  median ratio to the largest alone: " + String.format("%.2f", ratio) + " for all files, " + String.format("%.2f", smallRatio) + " for the small files");
+            assertTrue("Parallel LOADs usually took " + ratio + " times as long as the largest alone", ratio < 1.5);
+            assertTrue("Small LOADs usually took " + smallRatio + " times as long as the largest alone, so they waited behind it", smallRatio < 0.5);
+        } finally {
+            robotLoop.interrupt();
+            for(String file : files) {
+                Files.deleteIfExists(java.nio.file.Path.of(file));
+            }
+
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Measures how late robot positions arrive while several megabytes of files are streaming to the client over a slow link.
+     * Positions go out on their own lane between bounded pieces of the files, so none should arrive more than one robot loop late.
+     */
+    @Test
+    public void positionLatencyStaysUnderOneLoopDuringTransfer() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+
+        java.nio.file.Path directory = Files.createTempDirectory("pvhost-benchmark");
+        String file = createPathFile(directory, "big.hpt", FILE_SIZE);
+        int port;
+        try(ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        PVHost host = new PVHost(port);
+        host.setPositionFlushInterval(0); //send every position right away, so that any delay is the transfer's fault
+        Thread robotLoop = startRobotLoop(host);
+        try(Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(Constants.HOST_SEND_BUFFER_SIZE); //a real link doesn't have the huge buffers of localhost
+            socket.connect(new java.net.InetSocketAddress("localhost", port));
+            socket.setTcpNoDelay(true);
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+            output.write(FrameEncoder.encodeText(MessageType.HANDSHAKE, "", Integer.toString(Constants.BINARY_PROTOCOL_VERSION)));
+            awaitReplies(input, MessageType.HANDSHAKE, 1, null);
+
+            int loads = 2;
+            for(int i=0; i<loads; i++) {
+                byte[] body = file.getBytes(StandardCharsets.UTF_8);
+                output.write(FrameEncoder.encodeBinary(MessageType.LOAD, 0, nextRequestId++, "", body, body.length));
+            }
+
+            //read at the speed of the link, and note how late each position is
+            long[] latencies = new long[100000];
+            int positions = 0;
+            int loaded = 0;
+            long timestamp = 0;
+            byte[] readBuffer = new byte[4096];
+            long start = System.nanoTime();
+            long bytesRead = 0;
+            while(loaded < loads) {
+                Message message = decoder.poll();
+                if(message == null) {
+                    int count = input.read(readBuffer);
+                    if(count < 0) {
+                        throw new IOException("Host closed the connection.");
+                    }
+
+                    decoder.feed(readBuffer, 0, count);
+                    bytesRead += count;
+                    long aheadOfLink = (bytesRead * 1000000000L / LINK_BYTES_PER_SECOND) - (System.nanoTime() - start);
+                    if(aheadOfLink > 0) {
+                        Thread.sleep(aheadOfLink / 1000000, (int) (aheadOfLink % 1000000));
+                    }
+
+                    continue;
+                }
+
+                if(message.getType() == MessageType.POSITION && message.hasFlag(Message.FLAG_QUANTIZED)) {
+                    timestamp = readBatchTimestamp(message, timestamp);
+                    if(positions < latencies.length) {
+                        latencies[positions++] = System.currentTimeMillis() - timestamp;
+                    }
+                } else if(message.getType() == MessageType.LOAD && !message.hasFlag(Message.FLAG_PARTIAL)) {
+                    loaded++;
+                }
+            }
+
+            long seconds = (System.nanoTime() - start) / 1000000;
+            java.util.Arrays.sort(latencies, 0, positions);
+            long worst = latencies[positions - 1];
+            System.out.println("PVHost position latency during " + (loads * FILE_SIZE / 1000000) + " MB of LOADs at " + (LINK_BYTES_PER_SECOND / 1000000) + " MB/s (" + seconds + " ms, " + positions + " positions):");
+            System.out.println("  median: " + latencies[positions / 2] + " ms");
+            System.out.println("  99th percentile: " + latencies[(int) (positions * 0.99)] + " ms");
+            System.out.println("  worst: " + worst + " ms");
+            assertTrue("Worst position latency was " + worst + " ms", worst < ROBOT_LOOP_PERIOD);
+        } finally {
+            robotLoop.interrupt();
+            Files.deleteIfExists(java.nio.file.Path.of(file));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Starts a thread that sends a position to the host every robot loop, like a robot would.
+     * @param host The host to send positions to.
+     * @return The thread. Interrupt it to stop it.
+     */
+    private static Thread startRobotLoop(PVHost host) {
+        Thread robotLoop = new Thread(() -> {
+            while(!Thread.currentThread().isInterrupted()) {
+                host.update(new Point2D(1, 2, 3), System.currentTimeMillis());
+                try {
+                    Thread.sleep(ROBOT_LOOP_PERIOD);
+                } catch(InterruptedException ex) {
+                    return;
+                }
+            }
+        });
+
+        robotLoop.setDaemon(true);
+        robotLoop.start();
+        return robotLoop;
+    }
+
+    /**
+     * Returns the timestamp of the last position in a batched POSITION frame.
+     * @param message The POSITION frame.
+     * @param previous The timestamp of the last position received before this frame.
+     */
+    private static long readBatchTimestamp(Message message, long previous) {
+        ByteBuffer body = ByteBuffer.wrap(message.getBody());
+        long timestamp = previous;
+        boolean first = true;
+        while(body.hasRemaining()) {
+            if(first && message.hasFlag(Message.FLAG_KEYFRAME)) {
+                body.position(body.position() + 8); //skip the resolutions
+                timestamp = readVarLong(body);
+            } else {
+                timestamp += readVarLong(body);
+            }
+
+            for(int i=0; i<3; i++) {
+                readVarLong(body); //x, y and heading
+            }
+
+            first = false;
+        }
+
+        return timestamp;
+    }
+
+    /**
+     * Reads a zig-zag varint.
+     * @param body The buffer to read from.
+     */
+    private static long readVarLong(ByteBuffer body) {
+        long zigZag = 0;
+        for(int shift=0; shift<64; shift+=7) {
+            byte b = body.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                break;
+            }
+        }
+
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /**
+     * Sends a LOAD request for every file at once and waits for all of the replies.
+     * @param output The stream to the host.
+     * @param input The stream from the host.
+     * @param files The files to load.
+     * @return How long each reply took to finish arriving, in nanoseconds, in the order of the files.
+     */
+    private long[] timeLoads(OutputStream output, InputStream input, String[] files) throws IOException {
+        int firstRequestId = nextRequestId;
+        long start = System.nanoTime();
+        for(String file : files) {
+            byte[] body = file.getBytes(StandardCharsets.UTF_8);
+            output.write(FrameEncoder.encodeBinary(MessageType.LOAD, 0, nextRequestId++, "", body, body.length));
+        }
+
+        Map<Integer, Long> finishedAt = new HashMap<Integer, Long>();
+        Map<Integer, Integer> replies = awaitReplies(input, MessageType.LOAD, files.length, finishedAt);
+        for(int replyLength : replies.values()) {
+            assertTrue("Host could not load a file", replyLength > 3);
+        }
+
+        long[] times = new long[files.length];
+        for(int i=0; i<files.length; i++) {
+            times[i] = finishedAt.get(firstRequestId + i) - start;
+        }
+
+        return times;
+    }
+
+    /**
+     * Reads from the host until the given number of messages of a type have fully arrived. Positions are skipped.
+     * @param input The stream from the host.
+     * @param type The type of message to wait for.
+     * @param count The number of messages to wait for.
+     * @param finishedAt If not null, gets the System.nanoTime() at which the last piece of each message arrived, by request id.
+     * @return The total body length of each message, by request id.
+     */
+    private Map<Integer, Integer> awaitReplies(InputStream input, MessageType type, int count, Map<Integer, Long> finishedAt) throws IOException {
+        Map<Integer, Integer> replies = new HashMap<Integer, Integer>();
+        int received = 0;
+        while(received < count) {
+            Message message = decoder.poll();
+            if(message == null) {
+                if(decoder.readFrom(input) < 0) {
+                    throw new IOException("Host closed the connection.");
+                }
+
+                continue;
+            }
+
+            if(message.getType() == type) {
+                replies.merge(message.getRequestId(), message.getBody().length, Integer::sum);
+                if(!message.hasFlag(Message.FLAG_PARTIAL)) {
+                    received++; //big replies arrive in pieces
+                    if(finishedAt != null) {
+                        finishedAt.put(message.getRequestId(), System.nanoTime());
+                    }
+                }
+            }
+        }
+
+        return replies;
+    }
+
+    /**
+     * Writes a path file of roughly the given size.
+     * @param directory The directory to put the file in.
+     * @param name The name of the file.
+     * @param size The approximate size of the file in bytes.
+     * @return The absolute path of the file.
+     */
+    private static String createPathFile(java.nio.file.Path directory, String name, int size) throws IOException {
+        StringBuilder contents = new StringBuilder(size + 64);
+        for(int i=0; contents.length() < size; i++) {
+            contents.append(i * 0.01).append(',').append(i * 0.02).append(',').append(i % 360).append('\n');
+        }
+
+        java.nio.file.Path file = directory.resolve(name);
+        Files.writeString(file, contents);
+        return file.toAbsolutePath().toString();
+    }
+}